@@ -0,0 +1,46 @@
+package com.tsingye.benchmarks;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * the entity of the MongoDao benchmarks, its payload makes the document size
+ */
+@Document(collection = "benchDocument")
+public class BenchDocument {
+
+    @Id
+    private String id;
+
+    private int seq;
+
+    private long createdAt;
+
+    private String payload;
+
+    public BenchDocument() {
+    }
+
+    public BenchDocument(String id, int seq, String payload) {
+        this.id = id;
+        this.seq = seq;
+        this.createdAt = System.currentTimeMillis();
+        this.payload = payload;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getSeq() {
+        return seq;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+}
@@ -0,0 +1,106 @@
+package com.tsingye.benchmarks;
+
+import com.tsingye.util.BlockingQueueSplitter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * throughput of {@link BlockingQueueSplitter#drainingStream} at several producer and consumer counts, each
+ * invocation moves {@link #ITEMS} elements through a bounded queue, ended by a poison pill.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlockingQueueSplitterBenchmark {
+
+    private static final int ITEMS = 100_000;
+
+    /**
+     * never produced, the items are in [0, ITEMS)
+     */
+    private static final Integer POISON_PILL = Integer.valueOf(Integer.MIN_VALUE);
+
+    @Param({"1", "4"})
+    private int producers;
+
+    /**
+     * 1 for a sequential stream, more for a parallel one in a pool of this size
+     */
+    @Param({"1", "4"})
+    private int consumers;
+
+    private BlockingQueue<Integer> queue;
+
+    private ExecutorService producerPool;
+
+    private ForkJoinPool consumerPool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        queue = new ArrayBlockingQueue<>(4096);
+        producerPool = Executors.newFixedThreadPool(producers + 1);
+        consumerPool = new ForkJoinPool(consumers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        producerPool.shutdownNow();
+        consumerPool.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public long drainingStream() throws Exception {
+        CountDownLatch produced = new CountDownLatch(producers);
+        int share = ITEMS / producers;
+        for (int p = 0; p < producers; p++) {
+            producerPool.execute(() -> {
+                try {
+                    for (int i = 0; i < share; i++) {
+                        queue.put(i);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    produced.countDown();
+                }
+            });
+        }
+        producerPool.execute(() -> {
+            try {
+                produced.await();
+                queue.put(POISON_PILL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        boolean parallel = consumers > 1;
+        return consumerPool.submit(() -> BlockingQueueSplitter
+                .drainingStream(queue, 512, 10, TimeUnit.SECONDS, POISON_PILL, null, parallel, false)
+                .mapToLong(Integer::longValue)
+                .sum()).get();
+    }
+}
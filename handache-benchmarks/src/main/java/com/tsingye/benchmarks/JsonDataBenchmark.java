@@ -0,0 +1,121 @@
+package com.tsingye.benchmarks;
+
+import com.tsingye.common.JsonData;
+import com.tsingye.common.JsonWriter;
+import com.tsingye.common.RawJsonData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * build, read, putAll and write of {@link JsonData}.
+ * <p>Run with {@code -prof gc}: gc.alloc.rate.norm of {@link #build()} is the memory footprint of one map,
+ * compared with {@link #buildHashMap()}.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonDataBenchmark {
+
+    @Param({"4", "16"})
+    private int fields;
+
+    private String[] keys;
+
+    private JsonData data;
+
+    private Map<String, Object> source;
+
+    private byte[] json;
+
+    private final JsonWriter writer = new JsonWriter();
+
+    @Setup
+    public void setUp() throws IOException {
+        keys = new String[fields];
+        source = new HashMap<>();
+        for (int i = 0; i < fields; i++) {
+            keys[i] = "field" + i;
+            source.put(keys[i], i % 2 == 0 ? (Object) ("value" + i) : (Object) (long) i);
+        }
+        data = build();
+        json = writer.toBytes(data);
+    }
+
+    @Benchmark
+    public JsonData build() {
+        JsonData built = new JsonData();
+        for (int i = 0; i < keys.length; i++) {
+            if (i % 2 == 0) {
+                built.append(keys[i], "value" + i);
+            } else {
+                built.append(keys[i], (long) i);
+            }
+        }
+        return built;
+    }
+
+    @Benchmark
+    public Map<String, Object> buildHashMap() {
+        Map<String, Object> built = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            built.put(keys[i], i % 2 == 0 ? (Object) ("value" + i) : (Object) (long) i);
+        }
+        return built;
+    }
+
+    @Benchmark
+    public void get(Blackhole blackhole) {
+        for (String key : keys) {
+            blackhole.consume(data.get(key));
+        }
+    }
+
+    @Benchmark
+    public long getLong() {
+        long sum = 0L;
+        for (int i = 1; i < keys.length; i += 2) {
+            sum += data.getLong(keys[i], 0L);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public JsonData putAll() {
+        JsonData copy = new JsonData();
+        copy.putAll(source);
+        return copy;
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        return writer.toBytes(data);
+    }
+
+    @Benchmark
+    public Object parseLazyAndGet() {
+        return RawJsonData.of(json).get(keys[keys.length - 1]);
+    }
+
+    @Benchmark
+    public byte[] parseLazyAndWrite() throws IOException {
+        return writer.toBytes(RawJsonData.of(json));
+    }
+}
@@ -0,0 +1,125 @@
+package com.tsingye.benchmarks;
+
+import com.tsingye.util.MathUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * hex encode and decode, byte conversion, rounding and distances of {@link MathUtils}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MathUtilsBenchmark {
+
+    @Param({"16", "1024"})
+    private int size;
+
+    private byte[] bytes;
+
+    private char[] hexChars;
+
+    private String hexString;
+
+    private byte[] decoded;
+
+    private long value;
+
+    private double raw;
+
+    private double lng1;
+
+    private double lat1;
+
+    private double lng2;
+
+    private double lat2;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(17L);
+        bytes = new byte[size];
+        random.nextBytes(bytes);
+        hexString = MathUtils.toHexString(bytes);
+        hexChars = hexString.toCharArray();
+        decoded = new byte[size];
+        value = random.nextLong();
+        raw = random.nextDouble() * 1000D;
+        lng1 = 116.3 + random.nextDouble();
+        lat1 = 39.9 + random.nextDouble();
+        lng2 = 121.4 + random.nextDouble();
+        lat2 = 31.2 + random.nextDouble();
+    }
+
+    @Benchmark
+    public String toHexString() {
+        return MathUtils.toHexString(bytes);
+    }
+
+    @Benchmark
+    public char[] encodeHex() {
+        MathUtils.encodeHex(bytes, 0, bytes.length, hexChars, 0);
+        return hexChars;
+    }
+
+    @Benchmark
+    public byte[] toByteArrayFromHex() {
+        return MathUtils.toByteArray(hexString);
+    }
+
+    @Benchmark
+    public byte[] decodeHex() {
+        MathUtils.decodeHex(hexChars, 0, hexChars.length, decoded, 0);
+        return decoded;
+    }
+
+    @Benchmark
+    public long putGetLong() {
+        MathUtils.putLong(decoded, 0, value);
+        return MathUtils.getLong(decoded, 0);
+    }
+
+    @Benchmark
+    public long putGetLongLE() {
+        MathUtils.putLongLE(decoded, 0, value);
+        return MathUtils.getLongLE(decoded, 0);
+    }
+
+    @Benchmark
+    public byte[] toByteArrayFromLong() {
+        return MathUtils.toByteArray(value);
+    }
+
+    @Benchmark
+    public void round(Blackhole blackhole) {
+        blackhole.consume(MathUtils.roundDown(raw, 2));
+        blackhole.consume(MathUtils.roundUp(raw, 2));
+        blackhole.consume(MathUtils.roundHalfUp(raw, 2));
+    }
+
+    @Benchmark
+    public double calcDistance() {
+        return MathUtils.calcDistance(lng1, lat1, lng2, lat2);
+    }
+
+    @Benchmark
+    public double calcDistanceApprox() {
+        return MathUtils.calcDistanceApprox(lng1, lat1, lng2, lat2);
+    }
+}
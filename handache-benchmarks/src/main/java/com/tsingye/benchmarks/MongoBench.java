@@ -0,0 +1,56 @@
+package com.tsingye.benchmarks;
+
+import com.mongodb.MongoClientURI;
+import com.tsingye.mongo.MongoDao;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * shared setup of the MongoDao benchmarks, against the mongod of the system property {@value #URI_PROPERTY}
+ */
+final class MongoBench {
+
+    static final String URI_PROPERTY = "handache.bench.mongoUri";
+
+    private static final String DEFAULT_URI = "mongodb://localhost:27017/handacheBench";
+
+    private MongoBench() {
+    }
+
+    /**
+     * @return a dao over an emptied database
+     */
+    static MongoDao connect() throws UnknownHostException {
+        MongoClientURI uri = new MongoClientURI(System.getProperty(URI_PROPERTY, DEFAULT_URI));
+        MongoTemplate mongoTemplate = new MongoTemplate(new SimpleMongoDbFactory(uri));
+        mongoTemplate.getDb().dropDatabase();
+        return new MongoDao(mongoTemplate);
+    }
+
+    static void disconnect(MongoDao mongoDao) {
+        mongoDao.getMongoTemplate().getDb().dropDatabase();
+        mongoDao.getMongoTemplate().getDb().getMongo().close();
+    }
+
+    /**
+     * @param size chars of the payload, about the bytes of the document
+     */
+    static String payloadOf(int size) {
+        char[] chars = new char[size];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+
+    static List<BenchDocument> documents(String idPrefix, int count, String payload) {
+        List<BenchDocument> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            documents.add(new BenchDocument(idPrefix + i, i, payload));
+        }
+        return documents;
+    }
+}
@@ -0,0 +1,65 @@
+package com.tsingye.benchmarks;
+
+import com.tsingye.mongo.MongoDao;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * the cursor stream of {@link MongoDao} per batch size, against a local mongod, see {@link MongoBench#URI_PROPERTY}.
+ * <p>Apart from {@link MongoReadBenchmark} so that only this one runs once per batch size. An operation reads all
+ * docCount documents.</p>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MongoCursorBenchmark {
+
+    @Param({"256", "4096"})
+    private int docSize;
+
+    @Param({"10000"})
+    private int docCount;
+
+    /**
+     * of the cursor stream, 0 for the server's default
+     */
+    @Param({"0", "1000"})
+    private int batchSize;
+
+    private MongoDao mongoDao;
+
+    @Setup
+    public void setUp() throws Exception {
+        mongoDao = MongoBench.connect();
+        mongoDao.insert(MongoBench.documents("doc", docCount, MongoBench.payloadOf(docSize)), BenchDocument.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        MongoBench.disconnect(mongoDao);
+    }
+
+    @Benchmark
+    public long streamByCursor() {
+        try (Stream<BenchDocument> stream = mongoDao.stream(new Query(), false, batchSize, BenchDocument.class)) {
+            return stream.count();
+        }
+    }
+}
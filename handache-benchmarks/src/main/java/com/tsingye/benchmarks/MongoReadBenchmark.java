@@ -0,0 +1,84 @@
+package com.tsingye.benchmarks;
+
+import com.tsingye.mongo.MongoDao;
+import com.tsingye.mongo.RawBsonData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * read paths of {@link MongoDao} against a local mongod, see {@link MongoBench#URI_PROPERTY}.
+ * <p>Throughput and the latency percentiles (p50, p99, p999 of the sample time mode) per operation, run with
+ * {@code -prof gc} for the allocation per operation. A stream operation reads all docCount documents. The cursor
+ * stream of a batch size is in {@link MongoCursorBenchmark}.</p>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MongoReadBenchmark {
+
+    @Param({"256", "4096"})
+    private int docSize;
+
+    @Param({"10000"})
+    private int docCount;
+
+    private MongoDao mongoDao;
+
+    @Setup
+    public void setUp() throws Exception {
+        mongoDao = MongoBench.connect();
+        mongoDao.insert(MongoBench.documents("doc", docCount, MongoBench.payloadOf(docSize)), BenchDocument.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        MongoBench.disconnect(mongoDao);
+    }
+
+    @Benchmark
+    public BenchDocument getModel() {
+        return mongoDao.getModel("doc" + ThreadLocalRandom.current().nextInt(docCount), BenchDocument.class);
+    }
+
+    @Benchmark
+    public RawBsonData getRawData() {
+        Query query = Query.query(Criteria.where("_id").is("doc" + ThreadLocalRandom.current().nextInt(docCount)));
+        return mongoDao.getRawData(query, BenchDocument.class);
+    }
+
+    /**
+     * the template's stream, batch size is not applied
+     */
+    @Benchmark
+    public long stream() {
+        try (Stream<BenchDocument> stream = mongoDao.stream(new Query(), false, BenchDocument.class)) {
+            return stream.count();
+        }
+    }
+
+    @Benchmark
+    public long streamRaw() {
+        try (Stream<RawBsonData> stream = mongoDao.streamRaw(new Query(), false, BenchDocument.class)) {
+            return stream.count();
+        }
+    }
+}
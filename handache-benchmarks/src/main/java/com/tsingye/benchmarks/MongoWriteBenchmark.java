@@ -0,0 +1,92 @@
+package com.tsingye.benchmarks;
+
+import com.tsingye.mongo.MongoDao;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * write paths of {@link MongoDao} against a local mongod, see {@link MongoBench#URI_PROPERTY}.
+ * <p>An operation writes batchSize documents: one insert of them all, against a loop of saves or upserts.
+ * Throughput and latency percentiles per operation, {@code -prof gc} for the allocation.</p>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MongoWriteBenchmark {
+
+    @Param({"256", "4096"})
+    private int docSize;
+
+    @Param({"1", "100"})
+    private int batchSize;
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private MongoDao mongoDao;
+
+    private String payload;
+
+    @Setup
+    public void setUp() throws Exception {
+        mongoDao = MongoBench.connect();
+        payload = MongoBench.payloadOf(docSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        MongoBench.disconnect(mongoDao);
+    }
+
+    /**
+     * keep the collection from growing through the iterations
+     */
+    @TearDown(Level.Iteration)
+    public void clear() {
+        mongoDao.remove(new Query(), BenchDocument.class);
+    }
+
+    private List<BenchDocument> nextBatch() {
+        return MongoBench.documents("b" + batches.incrementAndGet() + "-", batchSize, payload);
+    }
+
+    @Benchmark
+    public void insert() {
+        mongoDao.insert(nextBatch(), BenchDocument.class);
+    }
+
+    @Benchmark
+    public void saveLoop() {
+        for (BenchDocument document : nextBatch()) {
+            mongoDao.save(document);
+        }
+    }
+
+    @Benchmark
+    public void upsertLoop() {
+        for (BenchDocument document : nextBatch()) {
+            Update update = new Update().set("seq", document.getSeq()).set("payload", document.getPayload());
+            mongoDao.upsert(Query.query(Criteria.where("_id").is(document.getId())), update, BenchDocument.class);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.tsingye.benchmarks;
+
+import com.tsingye.util.ObjectUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ObjectUtils#isEmpty(Object)} of each kind it checks, in the order it checks them
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ObjectUtilsBenchmark {
+
+    private Object string = "handache";
+
+    private Object optional = Optional.of(1);
+
+    private Object array = new int[8];
+
+    private Object list = Arrays.asList(1, 2, 3);
+
+    private Object map = Collections.singletonMap("k", "v");
+
+    private Object other = 42L;
+
+    private final List<Object> mixed = Arrays.asList(string, optional, array, list, map, other, null);
+
+    @Benchmark
+    public boolean isEmptyString() {
+        return ObjectUtils.isEmpty(string);
+    }
+
+    @Benchmark
+    public boolean isEmptyArray() {
+        return ObjectUtils.isEmpty(array);
+    }
+
+    @Benchmark
+    public boolean isEmptyMap() {
+        return ObjectUtils.isEmpty(map);
+    }
+
+    @Benchmark
+    public boolean isEmptyOther() {
+        return ObjectUtils.isEmpty(other);
+    }
+
+    /**
+     * a megamorphic call site, as in real code
+     */
+    @Benchmark
+    public int isEmptyMixed() {
+        int empty = 0;
+        for (Object o : mixed) {
+            if (ObjectUtils.isEmpty(o)) {
+                empty++;
+            }
+        }
+        return empty;
+    }
+}
@@ -0,0 +1,110 @@
+package com.tsingye.benchmarks;
+
+import com.tsingye.util.ThreeTenUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * format, parse, epoch conversion and the pattern cache of {@link ThreeTenUtils}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ThreeTenUtilsBenchmark {
+
+    private static final String PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+    /**
+     * not of the fixed-width fast path, so it goes through the formatter cache
+     */
+    private static final String GENERAL_PATTERN = "uuuu-MM-dd'T'HH:mm";
+
+    private static final String[] PATTERNS = {"yyyy-MM-dd", "yyyyMMdd", "HH:mm:ss", "yyyy/MM/dd HH:mm",
+            "uuuu-MM-dd'T'HH:mm", "dd.MM.yyyy", "yyyy-MM-dd HH:mm:ss", "MM/dd/yyyy"};
+
+    private LocalDateTime dateTime;
+
+    private long epochMilli;
+
+    private String text;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        dateTime = LocalDateTime.of(2017, 3, 20, 16, 53, 20);
+        epochMilli = ThreeTenUtils.toEpochMilli(dateTime);
+        text = ThreeTenUtils.format(dateTime, PATTERN);
+    }
+
+    @Benchmark
+    public String formatLocalDateTime() {
+        return ThreeTenUtils.format(dateTime, PATTERN);
+    }
+
+    @Benchmark
+    public String formatEpochMilli() {
+        return ThreeTenUtils.format(epochMilli, PATTERN);
+    }
+
+    @Benchmark
+    public String formatGeneralPattern() {
+        return ThreeTenUtils.format(dateTime, GENERAL_PATTERN);
+    }
+
+    @Benchmark
+    public String formatJdk() {
+        return DateTimeFormatter.ofPattern(PATTERN).format(dateTime);
+    }
+
+    @Benchmark
+    public LocalDateTime parseDateTime() {
+        return ThreeTenUtils.parseDateTime(text, PATTERN);
+    }
+
+    @Benchmark
+    public long parseEpochMilli() {
+        return ThreeTenUtils.parseEpochMilli(text, PATTERN);
+    }
+
+    @Benchmark
+    public long toEpochMilli() {
+        return ThreeTenUtils.toEpochMilli(dateTime);
+    }
+
+    @Benchmark
+    public long toEpochMilliOfFields() {
+        return ThreeTenUtils.toEpochMilli(2017, 3, 20, 16, 53, 20, 0);
+    }
+
+    @Benchmark
+    public LocalDateTime localDateTimeOf() {
+        return ThreeTenUtils.localDateTimeOf(epochMilli);
+    }
+
+    /**
+     * all threads look up a few patterns at once
+     */
+    @Benchmark
+    @Threads(8)
+    public DateTimeFormatter ofPatternContended() {
+        next = (next + 1) & (PATTERNS.length - 1);
+        return ThreeTenUtils.ofPattern(PATTERNS[next]);
+    }
+}
@@ -0,0 +1,117 @@
+package com.tsingye.common;
+
+import com.tsingye.util.BoundedCache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * an immutable response without result, serialized once: {@code {"status":0,"message":"OK"}}, the same as
+ * {@link ErrorResponse}.
+ * <p>Responses of {@link StatusCode}s are cached by {@link #of(StatusCode)}, so answering with one is a buffer
+ * write instead of building and serializing an object. {@link JsonWriter} writes the bytes as they are, Jackson
+ * sees the getters.</p>
+ */
+public final class EncodedResponse {
+
+    private static final int MAX_CACHED_CODES = 1024;
+
+    private static final BoundedCache<StatusCode, EncodedResponse> RESPONSES = new BoundedCache<>(MAX_CACHED_CODES);
+
+    public static final EncodedResponse OK = new EncodedResponse(0, "OK");
+
+    public static final EncodedResponse ERROR = new EncodedResponse(-1, "Error");
+
+    private final int status;
+
+    private final String message;
+
+    private final byte[] json;
+
+    private EncodedResponse(int status, String message) {
+        this.status = status;
+        this.message = message;
+        try {
+            this.json = new JsonWriter().toBytes(new ErrorResponse(status, message));
+        } catch (IOException e) {
+            // never, an ErrorResponse needs no fallback
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param statusCode the status code
+     * @return the response, cached per status code
+     */
+    public static EncodedResponse of(StatusCode statusCode) {
+        if (statusCode == null) {
+            throw new IllegalArgumentException("statusCode should not be null!");
+        }
+        return RESPONSES.get(statusCode, code -> new EncodedResponse(code.statusCode(), code.message()));
+    }
+
+    /**
+     * @param status  the status
+     * @param message the message
+     * @return a new response, not cached, keep it if it is used again
+     */
+    public static EncodedResponse of(int status, String message) {
+        return new EncodedResponse(status, message);
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return length of the JSON bytes
+     */
+    public int length() {
+        return json.length;
+    }
+
+    /**
+     * @return a read-only buffer over the JSON bytes
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(json).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return a copy of the JSON bytes
+     */
+    public byte[] toBytes() {
+        return json.clone();
+    }
+
+    /**
+     * @param out where to write the JSON bytes, not closed
+     * @throws IOException if failed to write
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(json);
+    }
+
+    /**
+     * @param dst where to put the JSON bytes
+     * @throws java.nio.BufferOverflowException if dst has not enough space, nothing is put then
+     */
+    public void writeTo(ByteBuffer dst) {
+        dst.put(json);
+    }
+
+    byte[] bytes() {
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return new String(json, StandardCharsets.UTF_8);
+    }
+}
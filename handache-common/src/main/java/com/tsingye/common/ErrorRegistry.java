@@ -0,0 +1,261 @@
+package com.tsingye.common;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * counts {@link RestException}s per {@link StatusCode}, and decides whether they capture a stack trace.
+ * <p>Recording is lock-free: a {@link LongAdder} for the total, and per-second buckets of the last minute for the
+ * rate. Exceptions of a {@link StatusCode#stackless()} code skip {@link Throwable#fillInStackTrace()}, except one
+ * in {@link #getStackSampling()} picked at random, for debugging. It is configured by the system property
+ * {@value #STACK_SAMPLING_PROPERTY} or at runtime, also through JMX.</p>
+ */
+public final class ErrorRegistry {
+
+    public static final String STACK_SAMPLING_PROPERTY = "handache.error.stackSampling";
+
+    public static final String OBJECT_NAME = "com.tsingye.common:type=ErrorRegistry";
+
+    /**
+     * codes counted separately at most, the rest are counted together as "other"
+     */
+    private static final int MAX_CODES = 1024;
+
+    /**
+     * seconds the rate is over
+     */
+    private static final int WINDOW = 60;
+
+    private static final ConcurrentHashMap<StatusCode, Counter> COUNTERS = new ConcurrentHashMap<>();
+
+    private static final Counter OTHER = new Counter("other");
+
+    private static volatile int stackSampling = Math.max(0, Integer.getInteger(STACK_SAMPLING_PROPERTY, 0));
+
+    private ErrorRegistry() {
+    }
+
+    /**
+     * count an error
+     *
+     * @param statusCode the status code, nothing is counted if null
+     * @return true if the exception should capture a stack trace
+     */
+    static boolean record(StatusCode statusCode) {
+        if (statusCode == null) {
+            return true;
+        }
+        counterOf(statusCode).record(System.currentTimeMillis() / 1000L);
+        if (!statusCode.stackless()) {
+            return true;
+        }
+        int sampling = stackSampling;
+        return sampling == 1 || (sampling > 1 && ThreadLocalRandom.current().nextInt(sampling) == 0);
+    }
+
+    private static Counter counterOf(StatusCode statusCode) {
+        Counter counter = COUNTERS.get(statusCode);
+        if (counter != null) {
+            return counter;
+        }
+        if (COUNTERS.size() >= MAX_CODES) {
+            return OTHER;
+        }
+        return COUNTERS.computeIfAbsent(statusCode, code -> new Counter(nameOf(code)));
+    }
+
+    private static String nameOf(StatusCode statusCode) {
+        String name = statusCode instanceof Enum ? ((Enum<?>) statusCode).name() : statusCode.message();
+        return statusCode.statusCode() + " " + name;
+    }
+
+    /**
+     * @param statusCode the status code
+     * @return count of errors of it since started or reset
+     */
+    public static long count(StatusCode statusCode) {
+        Counter counter = COUNTERS.get(statusCode);
+        return counter == null ? 0L : counter.total.sum();
+    }
+
+    /**
+     * @param statusCode the status code
+     * @return errors of it per second in the last minute
+     */
+    public static double rate(StatusCode statusCode) {
+        Counter counter = COUNTERS.get(statusCode);
+        return counter == null ? 0D : counter.rate(System.currentTimeMillis() / 1000L);
+    }
+
+    /**
+     * @return total count of errors per status code
+     */
+    public static Map<String, Long> counts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Counter counter : COUNTERS.values()) {
+            counts.merge(counter.name, counter.total.sum(), Long::sum);
+        }
+        if (OTHER.total.sum() > 0) {
+            counts.put(OTHER.name, OTHER.total.sum());
+        }
+        return counts;
+    }
+
+    /**
+     * @return errors per second in the last minute per status code
+     */
+    public static Map<String, Double> rates() {
+        long now = System.currentTimeMillis() / 1000L;
+        Map<String, Double> rates = new LinkedHashMap<>();
+        for (Counter counter : COUNTERS.values()) {
+            rates.merge(counter.name, counter.rate(now), Double::sum);
+        }
+        if (OTHER.total.sum() > 0) {
+            rates.put(OTHER.name, OTHER.rate(now));
+        }
+        return rates;
+    }
+
+    /**
+     * @return one in how many exceptions of stackless codes capture the stack trace, 0 for none
+     */
+    public static int getStackSampling() {
+        return stackSampling;
+    }
+
+    /**
+     * @param sampling one in how many exceptions of stackless codes capture the stack trace, 0 for none, 1 for all
+     */
+    public static void setStackSampling(int sampling) {
+        if (sampling < 0) {
+            throw new IllegalArgumentException("stackSampling " + sampling + " should not be negative!");
+        }
+        stackSampling = sampling;
+    }
+
+    /**
+     * forget all counts
+     */
+    public static void reset() {
+        COUNTERS.clear();
+        OTHER.clear();
+    }
+
+    /**
+     * register the {@link ErrorRegistryMXBean} as {@value #OBJECT_NAME} into the platform MBean server, once
+     *
+     * @return the object name
+     * @throws IllegalStateException if failed to register
+     */
+    public static ObjectName registerMBean() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), name);
+            return name;
+        } catch (InstanceAlreadyExistsException e) {
+            try {
+                return new ObjectName(OBJECT_NAME);
+            } catch (JMException never) {
+                throw new IllegalStateException(never);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to register " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * the count of one status code
+     */
+    private static final class Counter {
+
+        private final String name;
+
+        private final LongAdder total = new LongAdder();
+
+        /**
+         * the epoch second each bucket is counting for
+         */
+        private final AtomicLongArray seconds = new AtomicLongArray(WINDOW);
+
+        private final AtomicLongArray counts = new AtomicLongArray(WINDOW);
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        void record(long second) {
+            total.increment();
+            int index = (int) (second % WINDOW);
+            long stamp = seconds.get(index);
+            if (stamp != second && seconds.compareAndSet(index, stamp, second)) {
+                // a bucket a minute old is reused, a few counts racing with it may be lost, fine for a rate
+                counts.set(index, 0L);
+            }
+            counts.incrementAndGet(index);
+        }
+
+        double rate(long now) {
+            long sum = 0L;
+            for (int i = 0; i < WINDOW; i++) {
+                long age = now - seconds.get(i);
+                if (age >= 0 && age < WINDOW) {
+                    sum += counts.get(i);
+                }
+            }
+            return (double) sum / WINDOW;
+        }
+
+        void clear() {
+            total.reset();
+            for (int i = 0; i < WINDOW; i++) {
+                seconds.set(i, 0L);
+                counts.set(i, 0L);
+            }
+        }
+    }
+
+    private static final class Bean implements ErrorRegistryMXBean {
+
+        @Override
+        public Map<String, Long> getCounts() {
+            return counts();
+        }
+
+        @Override
+        public Map<String, Double> getRates() {
+            return rates();
+        }
+
+        @Override
+        public long getTotalCount() {
+            long total = OTHER.total.sum();
+            for (Counter counter : COUNTERS.values()) {
+                total += counter.total.sum();
+            }
+            return total;
+        }
+
+        @Override
+        public int getStackSampling() {
+            return ErrorRegistry.getStackSampling();
+        }
+
+        @Override
+        public void setStackSampling(int stackSampling) {
+            ErrorRegistry.setStackSampling(stackSampling);
+        }
+
+        @Override
+        public void reset() {
+            ErrorRegistry.reset();
+        }
+    }
+}
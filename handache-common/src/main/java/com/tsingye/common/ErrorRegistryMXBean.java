@@ -0,0 +1,27 @@
+package com.tsingye.common;
+
+import java.util.Map;
+
+/**
+ * the JMX view of {@link ErrorRegistry}, registered by {@link ErrorRegistry#registerMBean()}
+ */
+public interface ErrorRegistryMXBean {
+
+    /**
+     * @return total count of errors per status code, keyed as "404 NOT_FOUND"
+     */
+    Map<String, Long> getCounts();
+
+    /**
+     * @return errors per second in the last minute per status code
+     */
+    Map<String, Double> getRates();
+
+    long getTotalCount();
+
+    int getStackSampling();
+
+    void setStackSampling(int stackSampling);
+
+    void reset();
+}
@@ -1,22 +1,61 @@
 package com.tsingye.common;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
- *
+ * an insertion ordered String keyed map, compact in memory.
+ * <p>Maps of the same keys share one interned {@link Shape} (key to slot), each one only keeps its values in a flat
+ * array. Values put through {@link #append(String, int)}, {@link #append(String, long)} and
+ * {@link #append(String, double)} are kept unboxed, and read without boxing by {@link #getInt(String, int)},
+ * {@link #getLong(String, long)} and {@link #getDouble(String, double)}. A map of too many or too dynamic keys falls
+ * back to a {@link LinkedHashMap}.</p>
+ * <p>Not thread safe, as {@link LinkedHashMap}.</p>
  * Created by tsingye on 16-6-21.
  */
-public class JsonData extends LinkedHashMap<String, Object> {
+public class JsonData extends AbstractMap<String, Object> implements Cloneable, Serializable {
 
-    private static final long serialVersionUID = 3727722387481308026L;
+    private static final long serialVersionUID = -5210987466310471452L;
+
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private transient Shape shape = Shape.EMPTY;
+
+    /**
+     * values by slot, an {@link Unboxed} marks the value is in {@link #primitives}
+     */
+    private transient Object[] slots = NO_VALUES;
+
+    private transient long[] primitives;
+
+    /**
+     * not null once given up sharing shapes
+     */
+    private transient LinkedHashMap<String, Object> dictionary;
+
+    private transient int modCount;
 
     public JsonData() {
     }
 
     public JsonData(final int size) {
-        super(size);
+        if (size < 0) {
+            throw new IllegalArgumentException("Illegal initial capacity: " + size);
+        }
+        if (size > 0) {
+            slots = new Object[Math.min(size, Shape.MAX_KEYS)];
+        }
     }
 
     public JsonData(String key, Object value) {
@@ -27,6 +66,21 @@ public class JsonData extends LinkedHashMap<String, Object> {
         return new JsonData(key, value);
     }
 
+    /**
+     * @return key layouts shared by the maps alive
+     */
+    public static int sharedLayouts() {
+        return Shape.count();
+    }
+
+    /**
+     * @return times a map fell back to a {@link LinkedHashMap} as the shared layouts were too many, growing on means
+     * the keys are too dynamic to share
+     */
+    public static long layoutFallbacks() {
+        return Shape.fallbacks();
+    }
+
     /**
      * Creates a DBObject from a map.
      *
@@ -34,7 +88,8 @@ public class JsonData extends LinkedHashMap<String, Object> {
      */
     @SuppressWarnings("unchecked")
     public JsonData(Map m) {
-        super(m);
+        this(m.size());
+        putAll(m);
     }
 
     public Map<String, Object> toMap() {
@@ -47,12 +102,12 @@ public class JsonData extends LinkedHashMap<String, Object> {
     }
 
     public boolean containsField(String field) {
-        return super.containsKey(field);
+        return containsKey(field);
     }
 
     public <T> T get(String key) {
         //noinspection unchecked
-        return (T)super.get(key);
+        return (T) get((Object) key);
     }
 
     public Object get(String key, Object defaultValue) {
@@ -85,6 +140,66 @@ public class JsonData extends LinkedHashMap<String, Object> {
         return o == null ? defaultValue : o.toString();
     }
 
+    /**
+     * read an int without boxing
+     *
+     * @param key          the key
+     * @param defaultValue returned if absent or null
+     * @return the value
+     * @throws ClassCastException if the value is not an int
+     */
+    public int getInt(String key, int defaultValue) {
+        int slot = slotOf(key);
+        if (slot >= 0 && slots[slot] == Unboxed.INT) {
+            return (int) primitives[slot];
+        }
+        Object o = slot >= 0 ? slots[slot] : dictionary != null ? dictionary.get(key) : null;
+        return o == null ? defaultValue : (Integer) o;
+    }
+
+    /**
+     * read a long without boxing, an int is widened
+     *
+     * @param key          the key
+     * @param defaultValue returned if absent or null
+     * @return the value
+     * @throws ClassCastException if the value is neither a long nor an int
+     */
+    public long getLong(String key, long defaultValue) {
+        int slot = slotOf(key);
+        if (slot >= 0 && (slots[slot] == Unboxed.LONG || slots[slot] == Unboxed.INT)) {
+            return primitives[slot];
+        }
+        Object o = slot >= 0 ? slots[slot] : dictionary != null ? dictionary.get(key) : null;
+        if (o == null) {
+            return defaultValue;
+        }
+        return o instanceof Integer ? (Integer) o : (Long) o;
+    }
+
+    /**
+     * read a double without boxing, any other number is converted
+     *
+     * @param key          the key
+     * @param defaultValue returned if absent or null
+     * @return the value
+     * @throws ClassCastException if the value is not a number
+     */
+    public double getDouble(String key, double defaultValue) {
+        int slot = slotOf(key);
+        if (slot >= 0) {
+            Object o = slots[slot];
+            if (o == Unboxed.DOUBLE) {
+                return Double.longBitsToDouble(primitives[slot]);
+            }
+            if (o == Unboxed.LONG || o == Unboxed.INT) {
+                return primitives[slot];
+            }
+        }
+        Object o = slot >= 0 ? slots[slot] : dictionary != null ? dictionary.get(key) : null;
+        return o == null ? defaultValue : ((Number) o).doubleValue();
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public void putAll(final Map m) {
@@ -106,4 +221,541 @@ public class JsonData extends LinkedHashMap<String, Object> {
         put(key, val);
         return this;
     }
+
+    /**
+     * put an int, kept unboxed
+     */
+    public JsonData append(String key, int val) {
+        putPrimitive(key, Unboxed.INT, val);
+        return this;
+    }
+
+    /**
+     * put a long, kept unboxed
+     */
+    public JsonData append(String key, long val) {
+        putPrimitive(key, Unboxed.LONG, val);
+        return this;
+    }
+
+    /**
+     * put a double, kept unboxed
+     */
+    public JsonData append(String key, double val) {
+        putPrimitive(key, Unboxed.DOUBLE, Double.doubleToRawLongBits(val));
+        return this;
+    }
+
+    /**
+     * put a Character, as before the primitive overloads, not widened to int
+     */
+    public JsonData append(String key, char val) {
+        return append(key, (Object) val);
+    }
+
+    /**
+     * put a Byte, not widened to int
+     */
+    public JsonData append(String key, byte val) {
+        return append(key, (Object) val);
+    }
+
+    /**
+     * put a Short, not widened to int
+     */
+    public JsonData append(String key, short val) {
+        return append(key, (Object) val);
+    }
+
+    /**
+     * put a Float, not widened to double
+     */
+    public JsonData append(String key, float val) {
+        return append(key, (Object) val);
+    }
+
+    //============= Map =============//
+
+    @Override
+    public int size() {
+        return dictionary != null ? dictionary.size() : shape.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return dictionary != null ? dictionary.containsKey(key) : shape.slotOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (dictionary != null) {
+            return dictionary.get(key);
+        }
+        int slot = shape.slotOf(key);
+        return slot < 0 ? null : valueAt(slot);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        onModified();
+        if (dictionary != null) {
+            return dictionary.put(key, value);
+        }
+        int slot = shape.slotOf(key);
+        if (slot >= 0) {
+            Object old = valueAt(slot);
+            slots[slot] = value;
+            return old;
+        }
+        slot = addSlot(key);
+        if (slot < 0) {
+            return dictionary.put(key, value);
+        }
+        slots[slot] = value;
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        onModified();
+        if (dictionary != null) {
+            return dictionary.remove(key);
+        }
+        int slot = shape.slotOf(key);
+        if (slot < 0) {
+            return null;
+        }
+        Object old = valueAt(slot);
+        removeSlot(slot);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        onModified();
+        dictionary = null;
+        shape = Shape.EMPTY;
+        Arrays.fill(slots, null);
+        modCount++;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new EntrySet();
+    }
+
+    @Override
+    public JsonData clone() {
+        try {
+            JsonData copy = (JsonData) super.clone();
+            copy.slots = slots.clone();
+            copy.primitives = primitives == null ? null : primitives.clone();
+            copy.dictionary = dictionary == null ? null : new LinkedHashMap<>(dictionary);
+            copy.modCount = 0;
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+    }
+
+    //============= slots =============//
+
+    /**
+     * @return the slot, its value resolved if lazy, -1 if absent or in dictionary mode
+     */
+    private int slotOf(String key) {
+        if (dictionary != null) {
+            return -1;
+        }
+        int slot = shape.slotOf(key);
+        if (slot >= 0 && slots[slot] == Unboxed.LAZY) {
+            resolve(slot);
+        }
+        return slot;
+    }
+
+    private Object valueAt(int slot) {
+        Object value = slots[slot];
+        if (value == Unboxed.LAZY) {
+            resolve(slot);
+            value = slots[slot];
+        }
+        if (value instanceof Unboxed) {
+            return ((Unboxed) value).box(primitives[slot]);
+        }
+        return value;
+    }
+
+    private void putPrimitive(String key, Unboxed kind, long bits) {
+        onModified();
+        if (dictionary != null) {
+            dictionary.put(key, kind.box(bits));
+            return;
+        }
+        int slot = shape.slotOf(key);
+        if (slot < 0) {
+            slot = addSlot(key);
+            if (slot < 0) {
+                dictionary.put(key, kind.box(bits));
+                return;
+            }
+        }
+        ensurePrimitives();
+        slots[slot] = kind;
+        primitives[slot] = bits;
+    }
+
+    private void ensurePrimitives() {
+        if (primitives == null || primitives.length < slots.length) {
+            primitives = primitives == null ? new long[slots.length] : Arrays.copyOf(primitives, slots.length);
+        }
+    }
+
+    //============= lazy values =============//
+
+    /**
+     * @return the JSON bytes lazy values are in, null if none
+     */
+    byte[] rawBytes() {
+        return null;
+    }
+
+    /**
+     * called before any change
+     */
+    void onModified() {
+    }
+
+    /**
+     * put a value to be decoded from {@link #rawBytes()} on first access, not taken as a change
+     *
+     * @param key   the key
+     * @param start where the value starts
+     * @param end   where the value ends
+     */
+    void putLazy(String key, int start, int end) {
+        if (dictionary == null) {
+            int slot = shape.slotOf(key);
+            if (slot < 0) {
+                slot = addSlot(key);
+            }
+            if (slot >= 0) {
+                ensurePrimitives();
+                slots[slot] = Unboxed.LAZY;
+                primitives[slot] = (long) start << 32 | end;
+                return;
+            }
+        }
+        dictionary.put(key, RawJson.decodeValue(rawBytes(), start, end));
+    }
+
+    /**
+     * decode a lazy value, numbers are kept unboxed
+     */
+    private void resolve(int slot) {
+        byte[] raw = rawBytes();
+        int start = (int) (primitives[slot] >>> 32);
+        int end = (int) primitives[slot];
+        byte b = raw[start];
+        if (b == '-' || (b >= '0' && b <= '9')) {
+            if (RawJson.isSmallInteger(raw, start, end)) {
+                long value = RawJson.parseSmallInteger(raw, start, end);
+                slots[slot] = value == (int) value ? Unboxed.INT : Unboxed.LONG;
+                primitives[slot] = value;
+                return;
+            }
+            Object number = RawJson.decodeValue(raw, start, end);
+            if (number instanceof Double) {
+                slots[slot] = Unboxed.DOUBLE;
+                primitives[slot] = Double.doubleToRawLongBits((Double) number);
+                return;
+            }
+            slots[slot] = number;
+            return;
+        }
+        slots[slot] = RawJson.decodeValue(raw, start, end);
+    }
+
+    /**
+     * @return true if no value has been handed out which might be changed since
+     */
+    boolean valuesUnchanged() {
+        if (dictionary != null) {
+            return false;
+        }
+        for (int slot = 0; slot < shape.size(); slot++) {
+            Object value = slots[slot];
+            if (value == null || value instanceof Unboxed || value instanceof String || value instanceof Boolean
+                    || value instanceof Number) {
+                continue;
+            }
+            if (!(value instanceof RawJsonData) || !((RawJsonData) value).isUnmodified()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the slot of the new key, -1 if switched into dictionary mode
+     */
+    private int addSlot(String key) {
+        Shape next = shape.with(key);
+        if (next == null) {
+            toDictionary();
+            modCount++;
+            return -1;
+        }
+        int slot = shape.size();
+        if (slot == slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(4, slot + (slot >> 1)));
+        }
+        shape = next;
+        modCount++;
+        return slot;
+    }
+
+    private void removeSlot(int slot) {
+        Shape next = shape.without(slot);
+        if (next == null) {
+            toDictionary();
+            dictionary.remove(shape.keyAt(slot));
+            modCount++;
+            return;
+        }
+        int size = shape.size();
+        System.arraycopy(slots, slot + 1, slots, slot, size - slot - 1);
+        slots[size - 1] = null;
+        if (primitives != null && primitives.length > slot + 1) {
+            System.arraycopy(primitives, slot + 1, primitives, slot, Math.min(size, primitives.length) - slot - 1);
+        }
+        shape = next;
+        modCount++;
+    }
+
+    private void toDictionary() {
+        LinkedHashMap<String, Object> map = new LinkedHashMap<>();
+        for (int slot = 0; slot < shape.size(); slot++) {
+            map.put(shape.keyAt(slot), valueAt(slot));
+        }
+        dictionary = map;
+        slots = NO_VALUES;
+        primitives = null;
+    }
+
+    //============= JSON =============//
+
+    /**
+     * write as a JSON object, unboxed values are written without boxing
+     */
+    void writeJson(JsonWriter.Sink sink, int depth) throws IOException {
+        if (dictionary != null) {
+            sink.writeMap(dictionary, depth);
+            return;
+        }
+        sink.writeByte('{');
+        for (int slot = 0; slot < shape.size(); slot++) {
+            if (slot > 0) {
+                sink.writeByte(',');
+            }
+            sink.writeRaw(shape.encodedKey(slot));
+            Object value = slots[slot];
+            if (value == Unboxed.LAZY) {
+                int start = (int) (primitives[slot] >>> 32);
+                sink.writeRaw(rawBytes(), start, (int) primitives[slot] - start);
+            } else if (value == Unboxed.INT) {
+                sink.writeInt((int) primitives[slot]);
+            } else if (value == Unboxed.LONG) {
+                sink.writeLong(primitives[slot]);
+            } else if (value == Unboxed.DOUBLE) {
+                sink.writeDouble(Double.longBitsToDouble(primitives[slot]));
+            } else {
+                sink.writeValue(value, depth);
+            }
+        }
+        sink.writeByte('}');
+    }
+
+    //============= serialization =============//
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size());
+        for (Map.Entry<String, Object> entry : entrySet()) {
+            out.writeObject(entry.getKey());
+            out.writeObject(entry.getValue());
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        shape = Shape.EMPTY;
+        int size = in.readInt();
+        slots = size == 0 ? NO_VALUES : new Object[Math.min(size, Shape.MAX_KEYS)];
+        for (int i = 0; i < size; i++) {
+            put((String) in.readObject(), in.readObject());
+        }
+    }
+
+    /**
+     * markers of the unboxed and the lazy values
+     */
+    private enum Unboxed {
+
+        INT {
+            @Override
+            Object box(long bits) {
+                return (int) bits;
+            }
+        },
+
+        LONG {
+            @Override
+            Object box(long bits) {
+                return bits;
+            }
+        },
+
+        DOUBLE {
+            @Override
+            Object box(long bits) {
+                return Double.longBitsToDouble(bits);
+            }
+        },
+
+        /**
+         * not decoded yet, the span in {@link #rawBytes()} is in the primitive
+         */
+        LAZY {
+            @Override
+            Object box(long bits) {
+                throw new IllegalStateException("a lazy value should be resolved first");
+            }
+        };
+
+        abstract Object box(long bits);
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator() {
+            return dictionary != null ? dictionary.entrySet().iterator() : new SlotIterator();
+        }
+
+        @Override
+        public int size() {
+            return JsonData.this.size();
+        }
+
+        @Override
+        public void clear() {
+            JsonData.this.clear();
+        }
+    }
+
+    private final class SlotIterator implements Iterator<Map.Entry<String, Object>> {
+
+        private int next;
+
+        private int last = -1;
+
+        private int expectedModCount = modCount;
+
+        /**
+         * takes over if a removal switched into dictionary mode
+         */
+        private Iterator<Map.Entry<String, Object>> delegate;
+
+        @Override
+        public boolean hasNext() {
+            return delegate != null ? delegate.hasNext() : next < shape.size();
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (delegate != null) {
+                return delegate.next();
+            }
+            checkModCount();
+            if (next >= shape.size()) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new SlotEntry(shape.keyAt(last));
+        }
+
+        @Override
+        public void remove() {
+            if (delegate != null) {
+                delegate.remove();
+                return;
+            }
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            checkModCount();
+            JsonData.this.remove(shape.keyAt(last));
+            if (dictionary != null) {
+                delegate = dictionary.entrySet().iterator();
+                for (int i = 0; i < last; i++) {
+                    delegate.next();
+                }
+            }
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+
+        private void checkModCount() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    private final class SlotEntry implements Map.Entry<String, Object> {
+
+        private final String key;
+
+        SlotEntry(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return get((Object) key);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            return put(key, value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object value = getValue();
+            return key.equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
 }
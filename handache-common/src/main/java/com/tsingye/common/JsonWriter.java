@@ -0,0 +1,554 @@
+package com.tsingye.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * writes {@link RestResponse}, {@link ErrorResponse}, {@link EncodedResponse}, {@link JsonData} and plain JSON
+ * values (maps, collections, arrays, strings, numbers, booleans) as compact UTF-8 JSON, without reflection.
+ * <p>The output is the same as Jackson's default: fields in declaration order, nulls included, dates as epoch
+ * millis, enums by name, NaN and infinities quoted. Other types, and subclasses of the responses, are handed to the
+ * {@link Fallback}, e.g. {@code (value, out) -> objectMapper.writeValue(out, value)}, so Jackson is only involved
+ * when really needed.</p>
+ * <p>Bytes are collected in a thread-local buffer, then flushed to the target. Fixed field names are pre-encoded,
+ * numbers are written without allocation (except non-integral doubles), and keys of {@link JsonData} are encoded
+ * once per shape. Thread safe.</p>
+ */
+public final class JsonWriter {
+
+    /**
+     * writes the values {@link JsonWriter} does not know
+     */
+    public interface Fallback {
+
+        /**
+         * @param value the value, not null
+         * @param out   where to write, closing it is harmless
+         * @throws IOException if failed to write
+         */
+        void write(Object value, OutputStream out) throws IOException;
+    }
+
+    private static final byte[] NULL = ascii("null");
+
+    private static final byte[] TRUE = ascii("true");
+
+    private static final byte[] FALSE = ascii("false");
+
+    private static final byte[] STATUS = ascii("{\"status\":");
+
+    private static final byte[] MESSAGE = ascii(",\"message\":");
+
+    private static final byte[] RESULT = ascii(",\"result\":");
+
+    private static final byte[] MIN_LONG = ascii(Long.toString(Long.MIN_VALUE));
+
+    private static final byte[] HEX = ascii("0123456789ABCDEF");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * a larger buffer grown by one big value is not kept by the thread
+     */
+    private static final int MAX_RETAINED_SIZE = 1 << 16;
+
+    /**
+     * nesting deeper than it is taken as a cycle
+     */
+    private static final int MAX_DEPTH = 512;
+
+    private static final ThreadLocal<Sink> SINKS = ThreadLocal.withInitial(Sink::new);
+
+    private final Fallback fallback;
+
+    /**
+     * a writer without fallback, which rejects unknown types
+     */
+    public JsonWriter() {
+        this(null);
+    }
+
+    /**
+     * @param fallback writes the unknown types, null to reject them
+     */
+    public JsonWriter(Fallback fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * @param value the value
+     * @param out   where to write, not closed
+     * @throws IOException              if failed to write
+     * @throws IllegalArgumentException if the value contains an unknown type and there is no fallback
+     */
+    public void write(Object value, OutputStream out) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("out should not be null!");
+        }
+        Sink sink = acquire(out);
+        try {
+            sink.writeValue(value, 0);
+            sink.flush();
+        } finally {
+            release(sink);
+        }
+    }
+
+    /**
+     * @param value the value
+     * @param dst   where to put the bytes
+     * @return count of bytes put
+     * @throws IOException                       if the fallback failed
+     * @throws java.nio.BufferOverflowException if dst has not enough space, nothing is put then
+     */
+    public int write(Object value, ByteBuffer dst) throws IOException {
+        if (dst == null) {
+            throw new IllegalArgumentException("dst should not be null!");
+        }
+        Sink sink = acquire(null);
+        try {
+            sink.writeValue(value, 0);
+            dst.put(sink.bytes, 0, sink.count);
+            return sink.count;
+        } finally {
+            release(sink);
+        }
+    }
+
+    /**
+     * @param value the value
+     * @return the JSON bytes
+     * @throws IOException if the fallback failed
+     */
+    public byte[] toBytes(Object value) throws IOException {
+        Sink sink = acquire(null);
+        try {
+            sink.writeValue(value, 0);
+            return Arrays.copyOf(sink.bytes, sink.count);
+        } finally {
+            release(sink);
+        }
+    }
+
+    private Sink acquire(OutputStream out) {
+        Sink sink = SINKS.get();
+        if (sink.inUse) {
+            // written again from inside a fallback
+            sink = new Sink();
+        }
+        sink.inUse = true;
+        sink.target = out;
+        sink.fallback = fallback;
+        sink.count = 0;
+        return sink;
+    }
+
+    private static void release(Sink sink) {
+        sink.inUse = false;
+        sink.target = null;
+        sink.fallback = null;
+        if (sink.bytes.length > MAX_RETAINED_SIZE) {
+            sink.bytes = new byte[BUFFER_SIZE];
+        }
+    }
+
+    /**
+     * @return the JSON string bytes of s, quoted, followed by a colon
+     */
+    static byte[] encodeKey(String s) {
+        Sink sink = new Sink();
+        try {
+            sink.writeString(s);
+            sink.writeByte(':');
+        } catch (IOException e) {
+            // never, there is no target to flush into
+            throw new IllegalStateException(e);
+        }
+        return Arrays.copyOf(sink.bytes, sink.count);
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * the buffer and the primitives writing into it
+     */
+    static final class Sink {
+
+        private byte[] bytes = new byte[BUFFER_SIZE];
+
+        private int count;
+
+        /**
+         * flushed into once the buffer is full, null to grow the buffer instead
+         */
+        private OutputStream target;
+
+        private Fallback fallback;
+
+        private boolean inUse;
+
+        private final OutputStream fallbackStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                writeByte(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writeRaw(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                // keep the target open
+            }
+        };
+
+        void writeValue(Object value, int depth) throws IOException {
+            if (depth > MAX_DEPTH) {
+                throw new IllegalArgumentException("nested deeper than " + MAX_DEPTH + ", a cycle?");
+            }
+            if (value == null) {
+                writeRaw(NULL);
+            } else if (value instanceof String) {
+                writeString((String) value);
+            } else if (value instanceof JsonData) {
+                ((JsonData) value).writeJson(this, depth + 1);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                writeInt(((Number) value).intValue());
+            } else if (value instanceof Long) {
+                writeLong((Long) value);
+            } else if (value instanceof Double) {
+                writeDouble((Double) value);
+            } else if (value instanceof Float) {
+                writeFloat((Float) value);
+            } else if (value instanceof Boolean) {
+                writeRaw((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof EncodedResponse) {
+                writeRaw(((EncodedResponse) value).bytes());
+            } else if (value instanceof RestResponse.Constant) {
+                writeRaw(((RestResponse.Constant<?>) value).bytes());
+            } else if (value instanceof RestResponse && (value.getClass() == RestResponse.class || fallback == null)) {
+                RestResponse<?> response = (RestResponse<?>) value;
+                writeRaw(STATUS);
+                writeValue(response.getStatus(), depth + 1);
+                writeRaw(MESSAGE);
+                writeValue(response.getMessage(), depth + 1);
+                writeRaw(RESULT);
+                writeValue(response.getResult(), depth + 1);
+                writeByte('}');
+            } else if (value instanceof ErrorResponse && (value.getClass() == ErrorResponse.class || fallback == null)) {
+                ErrorResponse response = (ErrorResponse) value;
+                writeRaw(STATUS);
+                writeInt(response.getStatus());
+                writeRaw(MESSAGE);
+                writeValue(response.getMessage(), depth + 1);
+                writeByte('}');
+            } else if (value instanceof Map) {
+                writeMap((Map<?, ?>) value, depth + 1);
+            } else if (value instanceof Collection) {
+                writeByte('[');
+                boolean first = true;
+                for (Object element : (Collection<?>) value) {
+                    if (!first) {
+                        writeByte(',');
+                    }
+                    first = false;
+                    writeValue(element, depth + 1);
+                }
+                writeByte(']');
+            } else if (value instanceof Object[]) {
+                Object[] array = (Object[]) value;
+                writeByte('[');
+                for (int i = 0; i < array.length; i++) {
+                    if (i > 0) {
+                        writeByte(',');
+                    }
+                    writeValue(array[i], depth + 1);
+                }
+                writeByte(']');
+            } else if (value instanceof int[]) {
+                int[] array = (int[]) value;
+                writeByte('[');
+                for (int i = 0; i < array.length; i++) {
+                    if (i > 0) {
+                        writeByte(',');
+                    }
+                    writeInt(array[i]);
+                }
+                writeByte(']');
+            } else if (value instanceof long[]) {
+                long[] array = (long[]) value;
+                writeByte('[');
+                for (int i = 0; i < array.length; i++) {
+                    if (i > 0) {
+                        writeByte(',');
+                    }
+                    writeLong(array[i]);
+                }
+                writeByte(']');
+            } else if (value instanceof double[]) {
+                double[] array = (double[]) value;
+                writeByte('[');
+                for (int i = 0; i < array.length; i++) {
+                    if (i > 0) {
+                        writeByte(',');
+                    }
+                    writeDouble(array[i]);
+                }
+                writeByte(']');
+            } else if (value instanceof BigInteger) {
+                writeAscii(value.toString());
+            } else if (value instanceof BigDecimal) {
+                writeAscii(value.toString());
+            } else if (value instanceof Enum) {
+                writeString(((Enum<?>) value).name());
+            } else if (value instanceof Date) {
+                writeLong(((Date) value).getTime());
+            } else if (value instanceof Character) {
+                writeString(value.toString());
+            } else if (fallback != null) {
+                fallback.write(value, fallbackStream);
+            } else {
+                throw new IllegalArgumentException("no fallback to write " + value.getClass().getName());
+            }
+        }
+
+        void writeMap(Map<?, ?> map, int depth) throws IOException {
+            writeByte('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!first) {
+                    writeByte(',');
+                }
+                first = false;
+                Object key = entry.getKey();
+                if (key == null) {
+                    throw new IllegalArgumentException("null key is not allowed in JSON");
+                }
+                writeString(key.toString());
+                writeByte(':');
+                writeValue(entry.getValue(), depth);
+            }
+            writeByte('}');
+        }
+
+        void writeRaw(byte[] raw, int offset, int length) throws IOException {
+            if (target != null && length >= bytes.length) {
+                flush();
+                target.write(raw, offset, length);
+                return;
+            }
+            ensure(length);
+            System.arraycopy(raw, offset, bytes, count, length);
+            count += length;
+        }
+
+        void writeRaw(byte[] raw) throws IOException {
+            ensure(raw.length);
+            System.arraycopy(raw, 0, bytes, count, raw.length);
+            count += raw.length;
+        }
+
+        void writeByte(int b) throws IOException {
+            if (count == bytes.length) {
+                ensure(1);
+            }
+            bytes[count++] = (byte) b;
+        }
+
+        void writeInt(int value) throws IOException {
+            if (value == Integer.MIN_VALUE) {
+                writeLong(value);
+                return;
+            }
+            ensure(11);
+            if (value < 0) {
+                bytes[count++] = '-';
+                value = -value;
+            }
+            count += digits(value);
+            int position = count;
+            do {
+                bytes[--position] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+        }
+
+        void writeLong(long value) throws IOException {
+            if (value == Long.MIN_VALUE) {
+                writeRaw(MIN_LONG);
+                return;
+            }
+            if (value == (int) value) {
+                writeInt((int) value);
+                return;
+            }
+            ensure(20);
+            if (value < 0) {
+                bytes[count++] = '-';
+                value = -value;
+            }
+            int length = 0;
+            for (long v = value; v != 0; v /= 10) {
+                length++;
+            }
+            count += length;
+            int position = count;
+            do {
+                bytes[--position] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+        }
+
+        void writeDouble(double value) throws IOException {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                writeString(Double.toString(value));
+            } else if (value == (long) value && Math.abs(value) < 1e7D && !(value == 0.0D && 1 / value < 0)) {
+                // Double.toString is "n.0" in this range
+                writeLong((long) value);
+                writeByte('.');
+                writeByte('0');
+            } else {
+                writeAscii(Double.toString(value));
+            }
+        }
+
+        private void writeFloat(float value) throws IOException {
+            if (Float.isNaN(value) || Float.isInfinite(value)) {
+                writeString(Float.toString(value));
+            } else {
+                writeAscii(Float.toString(value));
+            }
+        }
+
+        private void writeAscii(String s) throws IOException {
+            int length = s.length();
+            ensure(length);
+            for (int i = 0; i < length; i++) {
+                bytes[count++] = (byte) s.charAt(i);
+            }
+        }
+
+        /**
+         * quoted and escaped, in UTF-8
+         */
+        void writeString(String s) throws IOException {
+            int length = s.length();
+            ensure(Math.min(length, BUFFER_SIZE) + 2);
+            bytes[count++] = '"';
+            for (int i = 0; i < length; i++) {
+                if (bytes.length - count < 8) {
+                    // at most 6 bytes for a char, and the closing quote
+                    ensure(8);
+                }
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    if (c >= 0x20 && c != '"' && c != '\\') {
+                        bytes[count++] = (byte) c;
+                    } else {
+                        writeEscaped(c);
+                    }
+                } else if (c < 0x800) {
+                    bytes[count++] = (byte) (0xC0 | c >> 6);
+                    bytes[count++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                    bytes[count++] = (byte) (0xF0 | codePoint >> 18);
+                    bytes[count++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    bytes[count++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    bytes[count++] = (byte) (0x80 | codePoint & 0x3F);
+                } else {
+                    if (Character.isSurrogate(c)) {
+                        // a broken pair
+                        c = '�';
+                    }
+                    bytes[count++] = (byte) (0xE0 | c >> 12);
+                    bytes[count++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    bytes[count++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            bytes[count++] = '"';
+        }
+
+        private void writeEscaped(char c) {
+            bytes[count++] = '\\';
+            switch (c) {
+                case '"':
+                    bytes[count++] = '"';
+                    break;
+                case '\\':
+                    bytes[count++] = '\\';
+                    break;
+                case '\n':
+                    bytes[count++] = 'n';
+                    break;
+                case '\r':
+                    bytes[count++] = 'r';
+                    break;
+                case '\t':
+                    bytes[count++] = 't';
+                    break;
+                case '\b':
+                    bytes[count++] = 'b';
+                    break;
+                case '\f':
+                    bytes[count++] = 'f';
+                    break;
+                default:
+                    bytes[count++] = 'u';
+                    bytes[count++] = '0';
+                    bytes[count++] = '0';
+                    bytes[count++] = HEX[c >> 4];
+                    bytes[count++] = HEX[c & 0xF];
+                    break;
+            }
+        }
+
+        void flush() throws IOException {
+            if (target != null && count > 0) {
+                target.write(bytes, 0, count);
+                count = 0;
+            }
+        }
+
+        /**
+         * make room for n bytes, flushing to the target if any
+         */
+        private void ensure(int n) throws IOException {
+            if (bytes.length - count >= n) {
+                return;
+            }
+            flush();
+            ensureUnchecked(n);
+        }
+
+        /**
+         * make room for n bytes by growing, for the callers which can not throw
+         */
+        private void ensureUnchecked(int n) {
+            if (bytes.length - count < n) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length << 1, count + n));
+            }
+        }
+
+        private static int digits(int value) {
+            int length = 1;
+            while (value >= 10) {
+                value /= 10;
+                length++;
+            }
+            return length;
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package com.tsingye.common;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * scans and decodes JSON in UTF-8 bytes, for {@link RawJsonData}.
+ * <p>Spans are [start, end) positions in the byte array. Values decode as Jackson does into untyped objects:
+ * {@link Integer}, {@link Long} or {@link BigInteger} for integers, {@link Double} for the others, {@link String},
+ * {@link Boolean}, null, {@link List} for arrays, and {@link RawJsonData} (lazy again) for objects.</p>
+ */
+final class RawJson {
+
+    /**
+     * more digits than it may overflow a long
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    /**
+     * containers nested deeper are rejected instead of overflowing the stack
+     */
+    private static final int MAX_DEPTH = 1000;
+
+    private RawJson() {
+    }
+
+    static int skipWhitespace(byte[] bytes, int position, int end) {
+        while (position < end) {
+            byte b = bytes[position];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * @param position where the value starts, no whitespace before
+     * @return where the value ends
+     * @throws IllegalArgumentException if it is not a JSON value
+     */
+    static int skipValue(byte[] bytes, int position, int end) {
+        return skipValue(bytes, position, end, 0);
+    }
+
+    private static int skipValue(byte[] bytes, int position, int end, int depth) {
+        if (position >= end) {
+            throw error("value expected", position);
+        }
+        byte b = bytes[position];
+        switch (b) {
+            case '"':
+                return skipString(bytes, position, end);
+            case '{':
+                return skipObject(bytes, position, end, depth + 1, null);
+            case '[':
+                return skipArray(bytes, position, end, depth + 1);
+            case 't':
+                return expect(bytes, position, end, "true");
+            case 'f':
+                return expect(bytes, position, end, "false");
+            case 'n':
+                return expect(bytes, position, end, "null");
+            default:
+                if (b == '-' || (b >= '0' && b <= '9')) {
+                    return skipNumber(bytes, position, end);
+                }
+                throw error("unexpected char '" + (char) b + "'", position);
+        }
+    }
+
+    /**
+     * @param position of the opening quote
+     * @return after the closing quote
+     */
+    static int skipString(byte[] bytes, int position, int end) {
+        for (int i = position + 1; i < end; i++) {
+            byte b = bytes[i];
+            if (b == '"') {
+                return i + 1;
+            }
+            if (b == '\\') {
+                i = skipEscape(bytes, i, end);
+            } else if (b >= 0 && b < ' ') {
+                throw error("unescaped control char", i);
+            }
+        }
+        throw error("unterminated string", position);
+    }
+
+    /**
+     * @param position of the backslash
+     * @return the last byte of the escape
+     */
+    private static int skipEscape(byte[] bytes, int position, int end) {
+        int i = position + 1;
+        if (i >= end) {
+            throw error("malformed escape", position);
+        }
+        switch (bytes[i]) {
+            case '"':
+            case '\\':
+            case '/':
+            case 'b':
+            case 'f':
+            case 'n':
+            case 'r':
+            case 't':
+                return i;
+            case 'u':
+                if (i + 4 >= end) {
+                    throw error("malformed escape", position);
+                }
+                for (int j = 1; j <= 4; j++) {
+                    if (Character.digit(bytes[i + j], 16) < 0) {
+                        throw error("malformed escape", position);
+                    }
+                }
+                return i + 4;
+            default:
+                throw error("malformed escape", position);
+        }
+    }
+
+    /**
+     * @param position of the opening brace
+     * @param depth    of the object, 1 at the top
+     * @param into     takes the members by {@link JsonData#putLazy(String, int, int)}, null to only check them
+     * @return after the closing brace
+     */
+    static int skipObject(byte[] bytes, int position, int end, int depth, RawJsonData into) {
+        checkDepth(depth, position);
+        int i = skipWhitespace(bytes, position + 1, end);
+        if (i < end && bytes[i] == '}') {
+            return i + 1;
+        }
+        while (true) {
+            if (i >= end || bytes[i] != '"') {
+                throw error("key expected", i);
+            }
+            int keyEnd = skipString(bytes, i, end);
+            String key = into == null ? null : decodeString(bytes, i, keyEnd);
+            i = skipWhitespace(bytes, keyEnd, end);
+            if (i >= end || bytes[i] != ':') {
+                throw error("':' expected", i);
+            }
+            i = skipWhitespace(bytes, i + 1, end);
+            int valueEnd = skipValue(bytes, i, end, depth);
+            if (into != null) {
+                into.putLazy(key, i, valueEnd);
+            }
+            i = skipWhitespace(bytes, valueEnd, end);
+            if (i >= end) {
+                throw error("unterminated object", position);
+            }
+            if (bytes[i] == '}') {
+                return i + 1;
+            }
+            if (bytes[i] != ',') {
+                throw error("',' or '}' expected", i);
+            }
+            i = skipWhitespace(bytes, i + 1, end);
+        }
+    }
+
+    private static int skipArray(byte[] bytes, int position, int end, int depth) {
+        checkDepth(depth, position);
+        int i = skipWhitespace(bytes, position + 1, end);
+        if (i < end && bytes[i] == ']') {
+            return i + 1;
+        }
+        while (true) {
+            i = skipWhitespace(bytes, skipValue(bytes, i, end, depth), end);
+            if (i >= end) {
+                throw error("unterminated array", position);
+            }
+            if (bytes[i] == ']') {
+                return i + 1;
+            }
+            if (bytes[i] != ',') {
+                throw error("',' or ']' expected", i);
+            }
+            i = skipWhitespace(bytes, i + 1, end);
+        }
+    }
+
+    private static void checkDepth(int depth, int position) {
+        if (depth > MAX_DEPTH) {
+            throw error("nested deeper than " + MAX_DEPTH, position);
+        }
+    }
+
+    private static int skipNumber(byte[] bytes, int position, int end) {
+        int i = position;
+        if (bytes[i] == '-') {
+            i++;
+        }
+        int digits = i;
+        while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+            i++;
+        }
+        if (i == digits || (bytes[digits] == '0' && i - digits > 1)) {
+            throw error("malformed number", position);
+        }
+        if (i < end && bytes[i] == '.') {
+            int fraction = ++i;
+            while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+                i++;
+            }
+            if (i == fraction) {
+                throw error("malformed number", position);
+            }
+        }
+        if (i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            if (i < end && (bytes[i] == '+' || bytes[i] == '-')) {
+                i++;
+            }
+            int exponent = i;
+            while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+                i++;
+            }
+            if (i == exponent) {
+                throw error("malformed number", position);
+            }
+        }
+        return i;
+    }
+
+    private static int expect(byte[] bytes, int position, int end, String literal) {
+        int length = literal.length();
+        if (end - position < length) {
+            throw error("'" + literal + "' expected", position);
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[position + i] != literal.charAt(i)) {
+                throw error("'" + literal + "' expected", position);
+            }
+        }
+        return position + length;
+    }
+
+    //============= decode =============//
+
+    /**
+     * @return true if the number span is an integer fitting a long without overflow check
+     */
+    static boolean isSmallInteger(byte[] bytes, int start, int end) {
+        int digits = end - start - (bytes[start] == '-' ? 1 : 0);
+        if (digits > MAX_LONG_DIGITS) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            byte b = bytes[i];
+            if (b == '.' || b == 'e' || b == 'E') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the integer of a span that {@link #isSmallInteger(byte[], int, int)}
+     */
+    static long parseSmallInteger(byte[] bytes, int start, int end) {
+        boolean negative = bytes[start] == '-';
+        long value = 0L;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            value = value * 10 + (bytes[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * @param start where the value starts, no whitespace before
+     * @param end   where the value ends
+     * @return the value
+     */
+    static Object decodeValue(byte[] bytes, int start, int end) {
+        byte b = bytes[start];
+        switch (b) {
+            case '"':
+                return decodeString(bytes, start, end);
+            case '{':
+                return new RawJsonData(bytes, start, end);
+            case '[':
+                return decodeArray(bytes, start, end);
+            case 't':
+                return Boolean.TRUE;
+            case 'f':
+                return Boolean.FALSE;
+            case 'n':
+                return null;
+            default:
+                return decodeNumber(bytes, start, end);
+        }
+    }
+
+    private static Object decodeNumber(byte[] bytes, int start, int end) {
+        if (isSmallInteger(bytes, start, end)) {
+            long value = parseSmallInteger(bytes, start, end);
+            if (value == (int) value) {
+                return (int) value;
+            }
+            return value;
+        }
+        String text = new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '.' || c == 'e' || c == 'E') {
+                return Double.parseDouble(text);
+            }
+        }
+        BigInteger value = new BigDecimal(text).toBigIntegerExact();
+        return value.bitLength() < 64 ? (Object) value.longValue() : value;
+    }
+
+    private static List<Object> decodeArray(byte[] bytes, int start, int end) {
+        List<Object> list = new ArrayList<>();
+        int position = skipWhitespace(bytes, start + 1, end);
+        if (position < end && bytes[position] == ']') {
+            return list;
+        }
+        while (true) {
+            int valueEnd = skipValue(bytes, position, end);
+            list.add(decodeValue(bytes, position, valueEnd));
+            position = skipWhitespace(bytes, valueEnd, end);
+            if (position >= end) {
+                throw error("unterminated array", start);
+            }
+            if (bytes[position] == ']') {
+                return list;
+            }
+            if (bytes[position] != ',') {
+                throw error("',' or ']' expected", position);
+            }
+            position = skipWhitespace(bytes, position + 1, end);
+        }
+    }
+
+    /**
+     * @param start of the opening quote
+     * @param end   after the closing quote
+     */
+    static String decodeString(byte[] bytes, int start, int end) {
+        int from = start + 1;
+        int to = end - 1;
+        int escape = -1;
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '\\') {
+                escape = i;
+                break;
+            }
+        }
+        if (escape < 0) {
+            return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+        }
+        StringBuilder sb = new StringBuilder(to - from);
+        int chunk = from;
+        for (int i = escape; i < to; i++) {
+            if (bytes[i] != '\\') {
+                continue;
+            }
+            sb.append(new String(bytes, chunk, i - chunk, StandardCharsets.UTF_8));
+            if (++i >= to) {
+                throw error("malformed escape", i);
+            }
+            switch (bytes[i]) {
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'u':
+                    if (i + 4 >= to) {
+                        throw error("malformed escape", i);
+                    }
+                    int c = 0;
+                    for (int j = 1; j <= 4; j++) {
+                        int digit = Character.digit(bytes[i + j], 16);
+                        if (digit < 0) {
+                            throw error("malformed escape", i);
+                        }
+                        c = c << 4 | digit;
+                    }
+                    sb.append((char) c);
+                    i += 4;
+                    break;
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append((char) bytes[i]);
+                    break;
+                default:
+                    throw error("malformed escape", i);
+            }
+            chunk = i + 1;
+        }
+        sb.append(new String(bytes, chunk, to - chunk, StandardCharsets.UTF_8));
+        return sb.toString();
+    }
+
+    static IllegalArgumentException error(String message, int position) {
+        return new IllegalArgumentException("malformed JSON, " + message + " at " + position);
+    }
+}
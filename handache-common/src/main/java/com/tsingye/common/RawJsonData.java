@@ -0,0 +1,127 @@
+package com.tsingye.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * a {@link JsonData} over the raw bytes of a JSON object, decoded on access.
+ * <p>Building it checks the whole document as Jackson would but only indexes the top-level keys, a value is decoded
+ * into its slot the first time it is read (numbers stay unboxed, nested objects are lazy again). As long as it is not
+ * changed, {@link JsonWriter} writes the original bytes back verbatim, so a pass-through document costs one scan.</p>
+ * <p>The bytes are not copied and should not be changed afterwards. Like {@link JsonData} it is not thread-safe,
+ * even reads decode into the slots.</p>
+ */
+public class RawJsonData extends JsonData {
+
+    private static final long serialVersionUID = 3318650297204751930L;
+
+    private final transient byte[] raw;
+
+    private final transient int start;
+
+    private final transient int end;
+
+    /**
+     * set once changed, the bytes are gone after deserialization anyway
+     */
+    private transient boolean modified;
+
+    /**
+     * indexes the keys and checks the values in one pass
+     *
+     * @param bytes the UTF-8 bytes
+     * @param start of the opening brace
+     * @param limit where the object should end at most
+     */
+    RawJsonData(byte[] bytes, int start, int limit) {
+        this.raw = bytes;
+        this.start = start;
+        if (start >= limit || bytes[start] != '{') {
+            throw RawJson.error("object expected", start);
+        }
+        this.end = RawJson.skipObject(bytes, start, limit, 1, this);
+    }
+
+    /**
+     * @param json the UTF-8 bytes of an object, whitespace around is allowed
+     * @return the lazy map, not copying the bytes
+     * @throws IllegalArgumentException if it is not a JSON object
+     */
+    public static RawJsonData of(byte[] json) {
+        if (json == null) {
+            throw new IllegalArgumentException("json should not be null!");
+        }
+        return of(json, 0, json.length);
+    }
+
+    /**
+     * @param json   the bytes
+     * @param offset where the object starts, whitespace before is allowed
+     * @param length the length, whitespace after is allowed
+     * @return the lazy map, not copying the bytes
+     * @throws IllegalArgumentException if it is not a JSON object
+     */
+    public static RawJsonData of(byte[] json, int offset, int length) {
+        if (json == null) {
+            throw new IllegalArgumentException("json should not be null!");
+        }
+        if (offset < 0 || length < 0 || offset + length > json.length) {
+            throw new IllegalArgumentException("offset and length are out of the bytes!");
+        }
+        int limit = offset + length;
+        RawJsonData data = new RawJsonData(json, RawJson.skipWhitespace(json, offset, limit), limit);
+        if (RawJson.skipWhitespace(json, data.end, limit) != limit) {
+            throw RawJson.error("trailing content", data.end);
+        }
+        return data;
+    }
+
+    /**
+     * @param json the remaining bytes of the buffer, its position is not moved. a heap buffer is used in place,
+     *             a direct one is copied
+     * @return the lazy map
+     * @throws IllegalArgumentException if it is not a JSON object
+     */
+    public static RawJsonData of(ByteBuffer json) {
+        if (json == null) {
+            throw new IllegalArgumentException("json should not be null!");
+        }
+        if (json.hasArray()) {
+            return of(json.array(), json.arrayOffset() + json.position(), json.remaining());
+        }
+        byte[] bytes = new byte[json.remaining()];
+        json.duplicate().get(bytes);
+        return of(bytes);
+    }
+
+    /**
+     * @return true if neither this nor any value read from it may have been changed, so it is written verbatim
+     */
+    public boolean isUnmodified() {
+        return !modified && raw != null && valuesUnchanged();
+    }
+
+    @Override
+    byte[] rawBytes() {
+        return raw;
+    }
+
+    @Override
+    void onModified() {
+        modified = true;
+    }
+
+    @Override
+    void writeJson(JsonWriter.Sink sink, int depth) throws IOException {
+        if (isUnmodified()) {
+            sink.writeRaw(raw, start, end - start);
+            return;
+        }
+        super.writeJson(sink, depth);
+    }
+
+    @Override
+    public RawJsonData clone() {
+        return (RawJsonData) super.clone();
+    }
+}
@@ -2,6 +2,8 @@ package com.tsingye.common;
 
 /**
  * Created by tsingye on 16-6-21.
+ * <p>One made of a {@link StatusCode} is counted in {@link ErrorRegistry}, and has no stack trace if the code is
+ * {@link StatusCode#stackless()} (unless sampled).</p>
  */
 public class RestException extends Exception {
 
@@ -21,17 +23,15 @@ public class RestException extends Exception {
     }
 
     public RestException(StatusCode statusCode) {
-        super(statusCode.message());
-        this.statusCode = statusCode;
+        this(statusCode, statusCode.message(), null);
     }
 
     public RestException(StatusCode statusCode, String message) {
-        super(message);
-        this.statusCode = statusCode;
+        this(statusCode, message, null);
     }
 
     public RestException(StatusCode statusCode, String message, Throwable cause) {
-        super(message, cause);
+        super(message, cause, true, ErrorRegistry.record(statusCode));
         this.statusCode = statusCode;
     }
 
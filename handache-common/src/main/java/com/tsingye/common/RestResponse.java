@@ -1,13 +1,21 @@
 package com.tsingye.common;
 
+import java.io.IOException;
+
 /**
  * Created by tsingye on 16-6-21.
  */
 public class RestResponse<T> {
 
-    public static final RestResponse<?> OK = new RestResponse<>(0, "OK");
+    /**
+     * immutable, the setters throw. for a response without result see also {@link EncodedResponse#OK}
+     */
+    public static final RestResponse<?> OK = new Constant<>(0, "OK");
 
-    public static final RestResponse<?> ERROR = new RestResponse<>(-1, "Error");
+    /**
+     * immutable, the setters throw. for a response without result see also {@link EncodedResponse#ERROR}
+     */
+    public static final RestResponse<?> ERROR = new Constant<>(-1, "Error");
 
     private Integer status;
 
@@ -66,4 +74,41 @@ public class RestResponse<T> {
     public static <T> RestResponse<T> of(StatusCode statusCode) {
         return new RestResponse<>(statusCode);
     }
+
+    /**
+     * a shared response, immutable and serialized once
+     */
+    static final class Constant<T> extends RestResponse<T> {
+
+        private final byte[] json;
+
+        Constant(Integer status, String message) {
+            super(status, message);
+            try {
+                this.json = new JsonWriter().toBytes(new RestResponse<>(status, message));
+            } catch (IOException e) {
+                // never, no result to fall back for
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void setStatus(Integer status) {
+            throw new UnsupportedOperationException("a shared response is immutable");
+        }
+
+        @Override
+        public void setMessage(String message) {
+            throw new UnsupportedOperationException("a shared response is immutable");
+        }
+
+        @Override
+        public RestResponse<T> setResult(T result) {
+            throw new UnsupportedOperationException("a shared response is immutable");
+        }
+
+        byte[] bytes() {
+            return json;
+        }
+    }
 }
@@ -0,0 +1,243 @@
+package com.tsingye.common;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * the interned key layout (key to slot) shared by {@link JsonData}s of the same keys in the same order.
+ * <p>Shapes form a tree from {@link #EMPTY}: adding a key follows (or creates) the transition to the child, so maps
+ * built the same way end up at the same shape. The tree is bounded, {@link #with(String)} returns null once a limit
+ * is hit and the map falls back to a plain hash map.</p>
+ * <p>Transitions are weak, a shape is only kept by the maps of it and by its children. So the layouts of keys seen
+ * once (ids as keys and the like) are collected with their maps and give the budget back.</p>
+ */
+final class Shape {
+
+    static final Shape EMPTY = new Shape(null, new String[0]);
+
+    /**
+     * keys of one shape at most
+     */
+    static final int MAX_KEYS = 64;
+
+    private static final int MAX_TRANSITIONS = 256;
+
+    private static final int MAX_SHAPES = 1 << 16;
+
+    /**
+     * below it keys are scanned linearly
+     */
+    private static final int MIN_INDEXED_KEYS = 9;
+
+    /**
+     * shapes alive, or collected and not expunged yet
+     */
+    private static final AtomicInteger SHAPES = new AtomicInteger();
+
+    private static final AtomicLong FALLBACKS = new AtomicLong();
+
+    private static final ReferenceQueue<Shape> COLLECTED = new ReferenceQueue<>();
+
+    /**
+     * keeps the path from {@link #EMPTY} alive as long as this is
+     */
+    private final Shape parent;
+
+    private final String[] keys;
+
+    /**
+     * open addressing index of keys, null for small shapes
+     */
+    private final String[] table;
+
+    private final int[] tableSlots;
+
+    private volatile ConcurrentHashMap<String, Transition> transitions;
+
+    /**
+     * JSON of the keys for {@link JsonWriter}, built on first use
+     */
+    private volatile byte[][] encodedKeys;
+
+    private Shape(Shape parent, String[] keys) {
+        this.parent = parent;
+        this.keys = keys;
+        if (keys.length < MIN_INDEXED_KEYS) {
+            this.table = null;
+            this.tableSlots = null;
+            return;
+        }
+        int capacity = Integer.highestOneBit(keys.length * 2 - 1) << 1;
+        this.table = new String[capacity];
+        this.tableSlots = new int[capacity];
+        for (int slot = 0; slot < keys.length; slot++) {
+            int index = keys[slot].hashCode() & (capacity - 1);
+            while (table[index] != null) {
+                index = (index + 1) & (capacity - 1);
+            }
+            table[index] = keys[slot];
+            tableSlots[index] = slot;
+        }
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    String keyAt(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * @param slot the slot
+     * @return the quoted key and a colon, in UTF-8
+     */
+    byte[] encodedKey(int slot) {
+        byte[][] encoded = encodedKeys;
+        if (encoded == null) {
+            // all at once, then published by the volatile write
+            encoded = new byte[keys.length][];
+            for (int i = 0; i < keys.length; i++) {
+                encoded[i] = JsonWriter.encodeKey(keys[i]);
+            }
+            encodedKeys = encoded;
+        }
+        return encoded[slot];
+    }
+
+    /**
+     * @param key the key
+     * @return its slot, -1 if absent
+     */
+    int slotOf(Object key) {
+        if (table == null) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+            }
+            if (key == null) {
+                return -1;
+            }
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot].equals(key)) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+        if (key == null) {
+            return -1;
+        }
+        int mask = table.length - 1;
+        for (int index = key.hashCode() & mask; table[index] != null; index = (index + 1) & mask) {
+            if (table[index] == key || table[index].equals(key)) {
+                return tableSlots[index];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return shapes alive
+     */
+    static int count() {
+        expunge();
+        return SHAPES.get();
+    }
+
+    /**
+     * @return times {@link #with(String)} gave up since the tree was full
+     */
+    static long fallbacks() {
+        return FALLBACKS.get();
+    }
+
+    /**
+     * @param key a key not in this shape
+     * @return the shape with the key appended, null if the tree is full
+     */
+    Shape with(String key) {
+        if (key == null || keys.length >= MAX_KEYS) {
+            return null;
+        }
+        ConcurrentHashMap<String, Transition> children = transitions;
+        if (children == null) {
+            synchronized (this) {
+                children = transitions;
+                if (children == null) {
+                    children = new ConcurrentHashMap<>(4);
+                    transitions = children;
+                }
+            }
+        }
+        Transition transition = children.get(key);
+        Shape child = transition == null ? null : transition.get();
+        if (child != null) {
+            return child;
+        }
+        expunge();
+        if (children.size() >= MAX_TRANSITIONS || SHAPES.get() >= MAX_SHAPES) {
+            FALLBACKS.incrementAndGet();
+            return null;
+        }
+        Shape[] found = new Shape[1];
+        ConcurrentHashMap<String, Transition> map = children;
+        children.compute(key, (k, old) -> {
+            Shape existing = old == null ? null : old.get();
+            if (existing != null) {
+                found[0] = existing;
+                return old;
+            }
+            String[] childKeys = new String[keys.length + 1];
+            System.arraycopy(keys, 0, childKeys, 0, keys.length);
+            childKeys[keys.length] = key;
+            found[0] = new Shape(this, childKeys);
+            SHAPES.incrementAndGet();
+            return new Transition(found[0], map, key);
+        });
+        return found[0];
+    }
+
+    /**
+     * drops the transitions to collected shapes
+     */
+    private static void expunge() {
+        Transition transition;
+        while ((transition = (Transition) COLLECTED.poll()) != null) {
+            // may be replaced by a new shape already
+            transition.children.remove(transition.key, transition);
+            SHAPES.decrementAndGet();
+        }
+    }
+
+    /**
+     * @param slot the slot to drop
+     * @return the shape of the other keys in the same order, null if the tree is full
+     */
+    Shape without(int slot) {
+        Shape shape = EMPTY;
+        for (int i = 0; i < keys.length && shape != null; i++) {
+            if (i != slot) {
+                shape = shape.with(keys[i]);
+            }
+        }
+        return shape;
+    }
+
+    private static final class Transition extends WeakReference<Shape> {
+
+        private final ConcurrentHashMap<String, Transition> children;
+
+        private final String key;
+
+        Transition(Shape child, ConcurrentHashMap<String, Transition> children, String key) {
+            super(child, COLLECTED);
+            this.children = children;
+            this.key = key;
+        }
+    }
+}
@@ -8,4 +8,12 @@ public interface StatusCode {
     int statusCode();
 
     String message();
+
+    /**
+     * @return true if it is an expected outcome (not found, invalid parameter...), so its {@link RestException}s
+     * skip the stack trace, except the ones sampled by {@link ErrorRegistry#setStackSampling(int)}
+     */
+    default boolean stackless() {
+        return false;
+    }
 }
@@ -1,7 +1,12 @@
 package com.tsingye.util;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -9,19 +14,37 @@ import java.util.stream.StreamSupport;
 /**
  * a custom splitter, split element via Queue.take().
  * It would keep thread blocking while none available elements.
- * So the stream should always be sequential.
  * <p>Example:<code>
  * BlockingQueueSplitter.stream(queue)
  * </code></p>
+ * <p>For high ingest rates use the draining streams instead, they pull chunks via
+ * {@link BlockingQueue#drainTo(java.util.Collection, int)} and end on an idle timeout,
+ * a poison pill or a stop signal:<code>
+ * BlockingQueueSplitter.batchStream(queue, 512, 1, TimeUnit.SECONDS)
+ * </code></p>
+ * <p>All the splitters here support {@link #trySplit()}: the splitting thread drains a chunk and hands it
+ * to a fork-join worker as an array spliterator, so a parallel stream consumes the queue on several cores.
+ * Use the unordered mode (ordered = false) when the encounter order does not matter,
+ * so that the stateful or collecting operations need not keep chunks in order.</p>
  *
  * @param <T>
  */
 public class BlockingQueueSplitter<T> implements Spliterator<T> {
 
+    /**
+     * max elements handed out by one {@link #trySplit()} of the take() based splitter
+     */
+    private static final int SPLIT_BATCH = 1024;
+
     private final BlockingQueue<T> queue;
 
-    private BlockingQueueSplitter(final BlockingQueue<T> queue) {
+    private final int characteristics;
+
+    private final ArrayList<T> splitBuffer = new ArrayList<>();
+
+    private BlockingQueueSplitter(final BlockingQueue<T> queue, final boolean ordered) {
         this.queue = queue;
+        this.characteristics = characteristicsOf(ordered);
     }
 
     /**
@@ -32,7 +55,125 @@ public class BlockingQueueSplitter<T> implements Spliterator<T> {
      * @return a sequential stream
      */
     public static <T> Stream<T> stream(BlockingQueue<T> queue) {
-        return StreamSupport.stream(new BlockingQueueSplitter<>(queue), false);
+        return stream(queue, false, true);
+    }
+
+    /**
+     * build a stream to get element by thread blocking queue.take(), it never ends.
+     *
+     * @param queue    target BlockingQueue
+     * @param parallel if {@code true} then the returned stream is a parallel
+     *                 stream; if {@code false} the returned stream is a sequential
+     *                 stream.
+     * @param ordered  if {@code false} the stream is unordered
+     * @param <T>      the element's type in blockingQueue
+     * @return a new sequential or parallel {@code Stream}
+     */
+    public static <T> Stream<T> stream(BlockingQueue<T> queue, boolean parallel, boolean ordered) {
+        return StreamSupport.stream(new BlockingQueueSplitter<>(queue, ordered), parallel);
+    }
+
+    /**
+     * build a stream of chunks, each chunk is pulled by one timed poll plus one drainTo.
+     * The stream ends when none element arrives in maxWait.
+     *
+     * @param queue    target BlockingQueue
+     * @param maxBatch max size of each chunk
+     * @param maxWait  idle timeout
+     * @param unit     time unit of maxWait
+     * @param <T>      the element's type in blockingQueue
+     * @return a sequential stream of non-empty chunks
+     */
+    public static <T> Stream<List<T>> batchStream(BlockingQueue<T> queue, int maxBatch, long maxWait, TimeUnit unit) {
+        return batchStream(queue, maxBatch, maxWait, unit, null, null);
+    }
+
+    /**
+     * build a stream of chunks, each chunk is pulled by one timed poll plus one drainTo.
+     * The stream ends when none element arrives in maxWait, when the poisonPill is taken,
+     * or when the stopSignal returns true, whichever comes first. No thread interruption needed.
+     *
+     * @param queue      target BlockingQueue
+     * @param maxBatch   max size of each chunk
+     * @param maxWait    idle timeout
+     * @param unit       time unit of maxWait
+     * @param poisonPill the element marks the end of stream, compared by identity, nullable
+     * @param stopSignal the external stop signal, checked before each chunk and while waiting, nullable
+     * @param <T>        the element's type in blockingQueue
+     * @return a sequential stream of non-empty chunks
+     */
+    public static <T> Stream<List<T>> batchStream(BlockingQueue<T> queue, int maxBatch, long maxWait, TimeUnit unit,
+                                                  T poisonPill, BooleanSupplier stopSignal) {
+        QueueDrainer<T> drainer = new QueueDrainer<>(queue, maxBatch, maxWait, unit, poisonPill, stopSignal);
+        return StreamSupport.stream(new BatchSplitter<>(drainer, true), false);
+    }
+
+    /**
+     * same as {@link #batchStream(BlockingQueue, int, long, TimeUnit)}, but emits elements one by one
+     *
+     * @param queue    target BlockingQueue
+     * @param maxBatch max elements pulled per drain
+     * @param maxWait  idle timeout
+     * @param unit     time unit of maxWait
+     * @param <T>      the element's type in blockingQueue
+     * @return a sequential stream
+     */
+    public static <T> Stream<T> drainingStream(BlockingQueue<T> queue, int maxBatch, long maxWait, TimeUnit unit) {
+        return drainingStream(queue, maxBatch, maxWait, unit, null, null);
+    }
+
+    /**
+     * same as {@link #batchStream(BlockingQueue, int, long, TimeUnit, Object, BooleanSupplier)},
+     * but emits elements one by one
+     *
+     * @param queue      target BlockingQueue
+     * @param maxBatch   max elements pulled per drain
+     * @param maxWait    idle timeout
+     * @param unit       time unit of maxWait
+     * @param poisonPill the element marks the end of stream, compared by identity, nullable
+     * @param stopSignal the external stop signal, checked before each drain and while waiting, nullable
+     * @param <T>        the element's type in blockingQueue
+     * @return a sequential stream
+     */
+    public static <T> Stream<T> drainingStream(BlockingQueue<T> queue, int maxBatch, long maxWait, TimeUnit unit,
+                                               T poisonPill, BooleanSupplier stopSignal) {
+        return drainingStream(queue, maxBatch, maxWait, unit, poisonPill, stopSignal, false, true);
+    }
+
+    /**
+     * same as {@link #drainingStream(BlockingQueue, int, long, TimeUnit, Object, BooleanSupplier)},
+     * and each drained chunk becomes a split when the stream is parallel.
+     *
+     * @param queue      target BlockingQueue
+     * @param maxBatch   max elements pulled per drain, it is also the size of splits
+     * @param maxWait    idle timeout
+     * @param unit       time unit of maxWait
+     * @param poisonPill the element marks the end of stream, compared by identity, nullable
+     * @param stopSignal the external stop signal, checked before each drain and while waiting, nullable
+     * @param parallel   if {@code true} then the returned stream is a parallel
+     *                   stream; if {@code false} the returned stream is a sequential
+     *                   stream.
+     * @param ordered    if {@code false} the stream is unordered
+     * @param <T>        the element's type in blockingQueue
+     * @return a new sequential or parallel {@code Stream}
+     */
+    public static <T> Stream<T> drainingStream(BlockingQueue<T> queue, int maxBatch, long maxWait, TimeUnit unit,
+                                               T poisonPill, BooleanSupplier stopSignal,
+                                               boolean parallel, boolean ordered) {
+        QueueDrainer<T> drainer = new QueueDrainer<>(queue, maxBatch, maxWait, unit, poisonPill, stopSignal);
+        return StreamSupport.stream(new DrainingSplitter<>(drainer, ordered), parallel);
+    }
+
+    private static int characteristicsOf(boolean ordered) {
+        int characteristics = Spliterator.CONCURRENT | Spliterator.NONNULL;
+        return ordered ? characteristics | Spliterator.ORDERED : characteristics;
+    }
+
+    /**
+     * the characteristics of the chunks handed out by trySplit, they are sized arrays, never concurrent
+     */
+    private static int splitCharacteristicsOf(int characteristics) {
+        return characteristics & ~Spliterator.CONCURRENT;
     }
 
     @Override
@@ -49,9 +190,22 @@ public class BlockingQueueSplitter<T> implements Spliterator<T> {
         }
     }
 
+    /**
+     * block on take() for the first element, then drain what is available into a chunk
+     *
+     * @return a sized spliterator over the chunk
+     */
     @Override
     public Spliterator<T> trySplit() {
-        return null;
+        try {
+            splitBuffer.add(this.queue.take());
+        } catch (final InterruptedException e) {
+            throw new RuntimeException("interrupted", e);
+        }
+        this.queue.drainTo(splitBuffer, SPLIT_BATCH - 1);
+        Object[] chunk = splitBuffer.toArray();
+        splitBuffer.clear();
+        return Spliterators.spliterator(chunk, splitCharacteristicsOf(characteristics));
     }
 
     @Override
@@ -61,6 +215,128 @@ public class BlockingQueueSplitter<T> implements Spliterator<T> {
 
     @Override
     public int characteristics() {
-        return Spliterator.CONCURRENT | Spliterator.NONNULL | Spliterator.ORDERED;
+        return characteristics;
+    }
+
+    /**
+     * emits each drained chunk as a new list
+     */
+    static class BatchSplitter<T> implements Spliterator<List<T>> {
+
+        private final QueueDrainer<T> drainer;
+
+        private final int characteristics;
+
+        BatchSplitter(QueueDrainer<T> drainer, boolean ordered) {
+            this.drainer = drainer;
+            this.characteristics = characteristicsOf(ordered);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super List<T>> action) {
+            List<T> batch = nextBatch();
+            if (batch == null) {
+                return false;
+            }
+            action.accept(batch);
+            return true;
+        }
+
+        private List<T> nextBatch() {
+            List<T> batch = new ArrayList<>(Math.min(drainer.maxBatch(), 1024));
+            return drainer.drainTo(batch) == 0 ? null : batch;
+        }
+
+        /**
+         * @return a spliterator over one chunk, or null when the source is exhausted
+         */
+        @Override
+        public Spliterator<List<T>> trySplit() {
+            List<T> batch = nextBatch();
+            if (batch == null) {
+                return null;
+            }
+            return Spliterators.spliterator(new Object[]{batch}, splitCharacteristicsOf(characteristics));
+        }
+
+        @Override
+        public long estimateSize() {
+            return drainer.isExhausted() ? 0L : Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return characteristics;
+        }
+    }
+
+    /**
+     * drains into a reused buffer and emits elements one by one
+     */
+    static class DrainingSplitter<T> implements Spliterator<T> {
+
+        private final QueueDrainer<T> drainer;
+
+        private final int characteristics;
+
+        private final ArrayList<T> buffer;
+
+        private int cursor;
+
+        DrainingSplitter(QueueDrainer<T> drainer, boolean ordered) {
+            this.drainer = drainer;
+            this.characteristics = characteristicsOf(ordered);
+            this.buffer = new ArrayList<>(Math.min(drainer.maxBatch(), 1024));
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (cursor >= buffer.size() && !refill()) {
+                return false;
+            }
+            action.accept(buffer.get(cursor++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            do {
+                for (int size = buffer.size(); cursor < size; ++cursor) {
+                    action.accept(buffer.get(cursor));
+                }
+            } while (refill());
+        }
+
+        private boolean refill() {
+            buffer.clear();
+            cursor = 0;
+            return drainer.drainTo(buffer) > 0;
+        }
+
+        /**
+         * hand out the buffered rest first to keep the encounter order, otherwise drain a new chunk
+         *
+         * @return a sized spliterator over one chunk, or null when the source is exhausted
+         */
+        @Override
+        public Spliterator<T> trySplit() {
+            if (cursor >= buffer.size() && !refill()) {
+                return null;
+            }
+            Object[] chunk = buffer.subList(cursor, buffer.size()).toArray();
+            buffer.clear();
+            cursor = 0;
+            return Spliterators.spliterator(chunk, splitCharacteristicsOf(characteristics));
+        }
+
+        @Override
+        public long estimateSize() {
+            return drainer.isExhausted() ? buffer.size() - cursor : Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return characteristics;
+        }
     }
 }
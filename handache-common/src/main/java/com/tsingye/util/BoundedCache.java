@@ -0,0 +1,227 @@
+package com.tsingye.util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * a size-bounded concurrent cache with lock-free reads.
+ * <p>A hit is one {@link ConcurrentHashMap#get(Object)} plus a reference mark. Only a miss that grows the cache
+ * beyond maxSize takes the eviction lock, which evicts in CLOCK (second chance) manner: a hand goes round the entries
+ * and keeps its place between evictions, entries marked since it last passed survive one more round. New entries
+ * start marked. Pinned entries are never evicted, they are for the values registered at startup.</p>
+ * <p>The loader may run more than once for one key under races, the first stored value wins.</p>
+ *
+ * @param <K> the key's type
+ * @param <V> the value's type
+ */
+public class BoundedCache<K, V> {
+
+    private final ConcurrentHashMap<K, Entry<V>> map = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final AtomicInteger pinned = new AtomicInteger();
+
+    private final Object evictionLock = new Object();
+
+    /**
+     * the clock hand, a weakly consistent iterator restarted once exhausted, guarded by evictionLock
+     */
+    private Iterator<Map.Entry<K, Entry<V>>> hand;
+
+    /**
+     * @param maxSize how many unpinned entries at most
+     */
+    public BoundedCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize " + maxSize + " should be positive!");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * get the cached value, or load and cache it
+     *
+     * @param key    the key
+     * @param loader how to load the value, should not return null
+     * @return the value
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Entry<V> entry = map.get(key);
+        if (entry != null) {
+            hits.increment();
+            entry.touch();
+            return entry.value;
+        }
+        misses.increment();
+        V value = loader.apply(key);
+        if (value == null) {
+            throw new IllegalArgumentException("loader returned null for " + key);
+        }
+        Entry<V> created = new Entry<>(value, false);
+        // as if just read, or the hand may take it right away
+        created.referenced = true;
+        Entry<V> existing = map.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing.value;
+        }
+        if (unpinnedSize() > maxSize) {
+            evict();
+        }
+        return value;
+    }
+
+    /**
+     * @param key the key
+     * @return the cached value or null, a lookup without loading does not count into stats
+     */
+    public V getIfPresent(K key) {
+        Entry<V> entry = map.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * put a value which is never evicted
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public void pin(K key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value should not be null!");
+        }
+        Entry<V> old = map.put(key, new Entry<>(value, true));
+        if (old == null || !old.pinned) {
+            pinned.incrementAndGet();
+        }
+    }
+
+    public void invalidate(K key) {
+        Entry<V> old = map.remove(key);
+        if (old != null && old.pinned) {
+            pinned.decrementAndGet();
+        }
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * @return a snapshot of the counters
+     */
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), map.size());
+    }
+
+    private int unpinnedSize() {
+        return map.size() - pinned.get();
+    }
+
+    private void evict() {
+        synchronized (evictionLock) {
+            // two rounds at most: the first one may only clear the marks
+            for (int steps = 2 * (map.size() + 1); steps > 0 && unpinnedSize() > maxSize; steps--) {
+                if (hand == null || !hand.hasNext()) {
+                    hand = map.entrySet().iterator();
+                    if (!hand.hasNext()) {
+                        return;
+                    }
+                }
+                Map.Entry<K, Entry<V>> next = hand.next();
+                Entry<V> entry = next.getValue();
+                if (entry.pinned) {
+                    continue;
+                }
+                if (entry.referenced) {
+                    entry.referenced = false;
+                } else if (map.remove(next.getKey(), entry)) {
+                    // only if it is not replaced meanwhile
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+
+        private final boolean pinned;
+
+        private volatile boolean referenced;
+
+        Entry(V value, boolean pinned) {
+            this.value = value;
+            this.pinned = pinned;
+        }
+
+        void touch() {
+            // read first, so a hot entry does not bounce its cache line between cores
+            if (!referenced) {
+                referenced = true;
+            }
+        }
+    }
+
+    /**
+     * counters of a {@link BoundedCache}
+     */
+    public static class Stats {
+
+        private final long hitCount;
+
+        private final long missCount;
+
+        private final long evictionCount;
+
+        private final int size;
+
+        Stats(long hitCount, long missCount, long evictionCount, int size) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.size = size;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return hits / (hits + misses), 1.0 if none request yet
+         */
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 1.0D : (double) hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{hitCount=" + hitCount + ", missCount=" + missCount
+                    + ", evictionCount=" + evictionCount + ", size=" + size + '}';
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package com.tsingye.util;
+
+import java.time.format.DateTimeFormatter;
+
+/**
+ * formats and parses fixed numeric patterns like "uuuu-MM-dd HH:mm" without the {@link DateTimeFormatter} engine,
+ * working on local date-time fields, local epoch millis and char arrays only.
+ * <p>Only the fields u, uuuu, M, MM, d, dd, H, HH, m, mm, s, ss and literals are supported. Whatever it can not
+ * handle exactly as the formatter does (years out of 0~9999, values the SMART resolver would adjust, etc.) is
+ * reported to the caller by -1, who then falls back to the general path, so the results never differ.</p>
+ * <p>The date part is formatted once per day: the chars before the first time field are kept with their epoch day
+ * and copied while the day does not change.</p>
+ */
+final class FixedPatternCodec {
+
+    static final long MILLIS_PER_DAY = 86_400_000L;
+
+    /**
+     * the codec of patterns not supported
+     */
+    static final FixedPatternCodec NONE = new FixedPatternCodec(new int[0], new int[0], new char[0]);
+
+    private static final int LITERAL = -1;
+
+    private static final int YEAR = 0;
+
+    private static final int MONTH = 1;
+
+    private static final int DAY = 2;
+
+    private static final int HOUR = 3;
+
+    private static final int MINUTE = 4;
+
+    private static final int SECOND = 5;
+
+    /**
+     * days from 0000-03-01 to 1970-01-01
+     */
+    private static final long DAYS_0000_TO_1970 = 719_468L;
+
+    private static final int DAYS_PER_400_YEARS = 146_097;
+
+    private final int[] fields;
+
+    /**
+     * count of digits, 0 for variable width
+     */
+    private final int[] widths;
+
+    private final char[] literals;
+
+    private final int maxLength;
+
+    /**
+     * tokens before it are the date prefix which is reused within a day, 0 if no prefix
+     */
+    private final int prefixEnd;
+
+    private final boolean hasDate;
+
+    private final boolean hasTime;
+
+    private final boolean usesDate;
+
+    private volatile DayPrefix dayPrefix;
+
+    private FixedPatternCodec(int[] fields, int[] widths, char[] literals) {
+        this.fields = fields;
+        this.widths = widths;
+        this.literals = literals;
+        int length = 0;
+        int dateMask = 0;
+        int firstTime = -1;
+        int lastDate = -1;
+        for (int i = 0; i < fields.length; i++) {
+            int field = fields[i];
+            length += field == LITERAL ? 1 : widths[i] == 0 ? (field == YEAR ? 4 : 2) : widths[i];
+            if (field >= YEAR && field <= DAY) {
+                dateMask |= 1 << field;
+                lastDate = i;
+            } else if (field >= HOUR && firstTime < 0) {
+                firstTime = i;
+            }
+        }
+        this.maxLength = length;
+        this.hasDate = dateMask == 0b111;
+        this.hasTime = firstTime >= 0;
+        this.usesDate = dateMask != 0;
+        if (lastDate < 0) {
+            this.prefixEnd = 0;
+        } else if (firstTime < 0) {
+            this.prefixEnd = fields.length;
+        } else {
+            this.prefixEnd = lastDate < firstTime ? firstTime : 0;
+        }
+    }
+
+    /**
+     * @param pattern the pattern, as of {@link DateTimeFormatter#ofPattern(String)}
+     * @return the codec, or {@link #NONE} if the pattern is not supported
+     */
+    static FixedPatternCodec compile(String pattern) {
+        int length = pattern.length();
+        int[] fields = new int[length];
+        int[] widths = new int[length];
+        char[] literals = new char[length];
+        int count = 0;
+        for (int i = 0; i < length; ) {
+            char c = pattern.charAt(i);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')) {
+                int run = 1;
+                while (i + run < length && pattern.charAt(i + run) == c) {
+                    run++;
+                }
+                int field = fieldOf(c);
+                if (field < 0 || !(run == 1 || run == (field == YEAR ? 4 : 2))) {
+                    return NONE;
+                }
+                if (count > 0 && fields[count - 1] != LITERAL && widths[count - 1] == 0) {
+                    // adjacent value parsing after a variable width field
+                    return NONE;
+                }
+                fields[count] = field;
+                widths[count] = run == 1 ? 0 : run;
+                count++;
+                i += run;
+            } else if (c == '\'' || c == '[' || c == ']' || c == '{' || c == '}' || c == '#') {
+                return NONE;
+            } else {
+                fields[count] = LITERAL;
+                literals[count] = c;
+                count++;
+                i++;
+            }
+        }
+        if (count == 0) {
+            return NONE;
+        }
+        char[] tokenLiterals = new char[count];
+        System.arraycopy(literals, 0, tokenLiterals, 0, count);
+        int[] tokenFields = new int[count];
+        System.arraycopy(fields, 0, tokenFields, 0, count);
+        int[] tokenWidths = new int[count];
+        System.arraycopy(widths, 0, tokenWidths, 0, count);
+        return new FixedPatternCodec(tokenFields, tokenWidths, tokenLiterals);
+    }
+
+    private static int fieldOf(char c) {
+        switch (c) {
+            case 'u':
+                return YEAR;
+            case 'M':
+                return MONTH;
+            case 'd':
+                return DAY;
+            case 'H':
+                return HOUR;
+            case 'm':
+                return MINUTE;
+            case 's':
+                return SECOND;
+            default:
+                return -1;
+        }
+    }
+
+    boolean isSupported() {
+        return this != NONE;
+    }
+
+    /**
+     * @return true if it has year, month and day
+     */
+    boolean hasDate() {
+        return hasDate;
+    }
+
+    boolean hasTime() {
+        return hasTime;
+    }
+
+    /**
+     * @return the max count of chars one value formats to
+     */
+    int maxLength() {
+        return maxLength;
+    }
+
+    //============= format =============//
+
+    /**
+     * format local epoch millis, i.e. epoch millis plus the zone offset
+     *
+     * @param localMillis local epoch millis
+     * @param dst         the chars to write, at least {@link #maxLength()} from offset
+     * @param offset      from where to write
+     * @return the next offset, -1 if not supported
+     */
+    int format(long localMillis, char[] dst, int offset) {
+        long epochDay = Math.floorDiv(localMillis, MILLIS_PER_DAY);
+        int secondOfDay = (int) (Math.floorMod(localMillis, MILLIS_PER_DAY) / 1000L);
+        int hour = secondOfDay / 3600;
+        int minute = secondOfDay / 60 % 60;
+        int second = secondOfDay % 60;
+        if (prefixEnd == 0) {
+            long date = usesDate ? civilOf(epochDay) : 0L;
+            if (date < 0) {
+                return -1;
+            }
+            return write(0, fields.length, yearOf(date), monthOf(date), dayOf(date), hour, minute, second, dst, offset);
+        }
+        DayPrefix prefix = dayPrefix;
+        if (prefix == null || prefix.epochDay != epochDay) {
+            long date = civilOf(epochDay);
+            if (date < 0) {
+                return -1;
+            }
+            char[] chars = new char[maxLength];
+            int end = write(0, prefixEnd, yearOf(date), monthOf(date), dayOf(date), 0, 0, 0, chars, 0);
+            prefix = new DayPrefix(epochDay, chars, end);
+            dayPrefix = prefix;
+        }
+        System.arraycopy(prefix.chars, 0, dst, offset, prefix.length);
+        return write(prefixEnd, fields.length, 0, 0, 0, hour, minute, second, dst, offset + prefix.length);
+    }
+
+    /**
+     * format local date-time fields
+     *
+     * @return the next offset, -1 if not supported
+     */
+    int format(int year, int month, int day, int hour, int minute, int second, char[] dst, int offset) {
+        if (year < 0 || year > 9999) {
+            return -1;
+        }
+        return write(0, fields.length, year, month, day, hour, minute, second, dst, offset);
+    }
+
+    private int write(int from, int to, int year, int month, int day, int hour, int minute, int second,
+                      char[] dst, int offset) {
+        int position = offset;
+        for (int i = from; i < to; i++) {
+            int value;
+            switch (fields[i]) {
+                case LITERAL:
+                    dst[position++] = literals[i];
+                    continue;
+                case YEAR:
+                    value = year;
+                    break;
+                case MONTH:
+                    value = month;
+                    break;
+                case DAY:
+                    value = day;
+                    break;
+                case HOUR:
+                    value = hour;
+                    break;
+                case MINUTE:
+                    value = minute;
+                    break;
+                default:
+                    value = second;
+                    break;
+            }
+            int width = widths[i];
+            if (width == 0) {
+                width = value >= 1000 ? 4 : value >= 100 ? 3 : value >= 10 ? 2 : 1;
+            }
+            for (int j = position + width - 1; j >= position; j--) {
+                dst[j] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+            position += width;
+        }
+        return position;
+    }
+
+    //============= parse =============//
+
+    /**
+     * parse the whole text into local date-time fields, only for patterns which {@link #hasDate()}
+     *
+     * @param text the text
+     * @return the fields packed, see {@link #yearOf(long)} and etc, -1 if not matched or not valid
+     */
+    long parse(CharSequence text) {
+        int length = text.length();
+        int position = 0;
+        int year = 0;
+        int month = 0;
+        int day = 0;
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        for (int i = 0; i < fields.length; i++) {
+            int field = fields[i];
+            if (field == LITERAL) {
+                if (position >= length || text.charAt(position) != literals[i]) {
+                    return -1L;
+                }
+                position++;
+                continue;
+            }
+            int width = widths[i];
+            int maxWidth = width != 0 ? width : field == YEAR ? 4 : 2;
+            int value = 0;
+            int digits = 0;
+            while (digits < maxWidth && position < length) {
+                int digit = text.charAt(position) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+                digits++;
+                position++;
+            }
+            if (digits == 0 || (width != 0 && digits != width)) {
+                return -1L;
+            }
+            boolean nextIsValue = i + 1 < fields.length && fields[i + 1] != LITERAL;
+            if (!nextIsValue && position < length && Character.isDigit(text.charAt(position))) {
+                // wider than we handle
+                return -1L;
+            }
+            switch (field) {
+                case YEAR:
+                    year = value;
+                    break;
+                case MONTH:
+                    month = value;
+                    break;
+                case DAY:
+                    day = value;
+                    break;
+                case HOUR:
+                    hour = value;
+                    break;
+                case MINUTE:
+                    minute = value;
+                    break;
+                default:
+                    second = value;
+                    break;
+            }
+        }
+        if (position != length || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            return -1L;
+        }
+        return pack(year, month, day, hour, minute, second);
+    }
+
+    //============= packed fields =============//
+
+    static long pack(int year, int month, int day, int hour, int minute, int second) {
+        return (long) year << 26 | month << 22 | day << 17 | hour << 12 | minute << 6 | second;
+    }
+
+    static int yearOf(long packed) {
+        return (int) (packed >>> 26);
+    }
+
+    static int monthOf(long packed) {
+        return (int) (packed >>> 22) & 0xF;
+    }
+
+    static int dayOf(long packed) {
+        return (int) (packed >>> 17) & 0x1F;
+    }
+
+    static int hourOf(long packed) {
+        return (int) (packed >>> 12) & 0x1F;
+    }
+
+    static int minuteOf(long packed) {
+        return (int) (packed >>> 6) & 0x3F;
+    }
+
+    static int secondOf(long packed) {
+        return (int) packed & 0x3F;
+    }
+
+    /**
+     * @param packed the fields
+     * @return local epoch millis of the fields
+     */
+    static long localMillisOf(long packed) {
+        return epochDayOf(yearOf(packed), monthOf(packed), dayOf(packed)) * MILLIS_PER_DAY
+                + (hourOf(packed) * 3600 + minuteOf(packed) * 60 + secondOf(packed)) * 1000L;
+    }
+
+    //============= civil calendar, by H. Hinnant's algorithms =============//
+
+    /**
+     * @param epochDay days from 1970-01-01
+     * @return year, month and day packed, -1 if the year is out of 0~9999
+     */
+    static long civilOf(long epochDay) {
+        long z = epochDay + DAYS_0000_TO_1970;
+        long era = Math.floorDiv(z, DAYS_PER_400_YEARS);
+        int dayOfEra = (int) (z - era * DAYS_PER_400_YEARS);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = era * 400 + yearOfEra + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            return -1L;
+        }
+        return pack((int) year, month, day, 0, 0, 0);
+    }
+
+    /**
+     * @return days from 1970-01-01
+     */
+    static long epochDayOf(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int shiftedMonth = month > 2 ? month - 3 : month + 9;
+        int dayOfYear = (153 * shiftedMonth + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return (long) era * DAYS_PER_400_YEARS + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * the formatted date part of one day, immutable so it is safely shared via a volatile field
+     */
+    private static final class DayPrefix {
+
+        private final long epochDay;
+
+        private final char[] chars;
+
+        private final int length;
+
+        DayPrefix(long epochDay, char[] chars, int length) {
+            this.epochDay = epochDay;
+            this.chars = chars;
+            this.length = length;
+        }
+    }
+}
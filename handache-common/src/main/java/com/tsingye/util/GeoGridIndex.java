@@ -0,0 +1,396 @@
+package com.tsingye.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * an in-memory spatial index of WGS84 points, for "who's near me" lookups without a database round-trip.
+ * <p>Points are bucketed into a lng/lat grid of fixed cell size (in degrees), each bucket keeps its coordinates in
+ * primitive arrays. A query only scans the cells covering the search circle, and refines the candidates by
+ * {@link MathUtils#calcDistance(double, double, double, double)}. Queries run concurrently under a read lock,
+ * {@link #put(Object, double, double)} and {@link #remove(Object)} take the write lock.</p>
+ * <p>Pick a cell size close to the usual query radius, e.g. 0.01° (about 1.1km) for radius of several hundred
+ * meters.</p>
+ *
+ * @param <T> the item's type, items are told apart by equals/hashCode
+ */
+public class GeoGridIndex<T> {
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(6371e3);
+
+    /**
+     * half of the earth's circumference, no distance is greater than it
+     */
+    private static final double MAX_DISTANCE = Math.PI * 6371e3;
+
+    private final double cellDegrees;
+
+    private final int columns;
+
+    private final int rows;
+
+    private final Map<Long, Bucket> buckets = new HashMap<>();
+
+    private final Map<T, Long> cellsOfItems = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param cellDegrees the cell size in degrees, in range (0, 90]
+     */
+    public GeoGridIndex(double cellDegrees) {
+        if (!(cellDegrees > 0.0D && cellDegrees <= 90.0D)) {
+            throw new IllegalArgumentException("cellDegrees " + cellDegrees + " is NOT in range (0, 90]");
+        }
+        this.cellDegrees = cellDegrees;
+        this.columns = (int) Math.ceil(360.0D / cellDegrees);
+        this.rows = (int) Math.ceil(180.0D / cellDegrees);
+    }
+
+    //============= writes =============//
+
+    /**
+     * add an item, or move it if it is already indexed
+     *
+     * @param item the item
+     * @param lng  longitude, [-180, 180]
+     * @param lat  latitude, [-90, 90]
+     */
+    public void put(T item, double lng, double lat) {
+        if (item == null) {
+            throw new IllegalArgumentException("item should not be null!");
+        }
+        checkCoordinate(lng, lat);
+        lock.writeLock().lock();
+        try {
+            putUnlocked(item, lng, lat);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * add or move many items under one write lock
+     *
+     * @param items the items
+     * @param lng   how to get the longitude of an item
+     * @param lat   how to get the latitude of an item
+     */
+    public void putAll(Collection<? extends T> items, ToDoubleFunction<? super T> lng, ToDoubleFunction<? super T> lat) {
+        lock.writeLock().lock();
+        try {
+            for (T item : items) {
+                double x = lng.applyAsDouble(item);
+                double y = lat.applyAsDouble(item);
+                checkCoordinate(x, y);
+                putUnlocked(item, x, y);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param item the item
+     * @return true if the item was indexed
+     */
+    public boolean remove(T item) {
+        lock.writeLock().lock();
+        try {
+            Long cell = cellsOfItems.remove(item);
+            if (cell == null) {
+                return false;
+            }
+            removeFromBucket(cell, item);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            buckets.clear();
+            cellsOfItems.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return cellsOfItems.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void putUnlocked(T item, double lng, double lat) {
+        long cell = cellOf(column(lng), row(lat));
+        Long oldCell = cellsOfItems.put(item, cell);
+        if (oldCell != null) {
+            removeFromBucket(oldCell, item);
+        }
+        buckets.computeIfAbsent(cell, k -> new Bucket()).add(item, lng, lat);
+    }
+
+    private void removeFromBucket(long cell, Object item) {
+        Bucket bucket = buckets.get(cell);
+        if (bucket != null && bucket.remove(item) && bucket.size == 0) {
+            buckets.remove(cell);
+        }
+    }
+
+    //============= queries =============//
+
+    /**
+     * find the items within radius, in no particular order
+     *
+     * @param lng    longitude of the center
+     * @param lat    latitude of the center
+     * @param radius in meters
+     * @return the neighbors with their distances
+     */
+    public List<Neighbor<T>> withinRadius(double lng, double lat, double radius) {
+        checkCoordinate(lng, lat);
+        List<Neighbor<T>> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            collect(lng, lat, radius, result);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * find the k nearest items, it searches circles of doubling radius until k items found
+     *
+     * @param lng longitude of the center
+     * @param lat latitude of the center
+     * @param k   how many items at most
+     * @return the neighbors, nearest first
+     */
+    public List<Neighbor<T>> nearest(double lng, double lat, int k) {
+        checkCoordinate(lng, lat);
+        if (k <= 0) {
+            throw new IllegalArgumentException("k " + k + " should be positive!");
+        }
+        List<Neighbor<T>> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int total = cellsOfItems.size();
+            double radius = cellDegrees * METERS_PER_DEGREE;
+            while (true) {
+                candidates.clear();
+                collect(lng, lat, radius, candidates);
+                if (candidates.size() >= k || candidates.size() >= total || radius >= MAX_DISTANCE) {
+                    break;
+                }
+                radius *= 2;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // all points within radius are here, so the k nearest of them are the k nearest of all
+        PriorityQueue<Neighbor<T>> top = new PriorityQueue<>(k + 1, Comparator.comparingDouble(Neighbor<T>::getDistance).reversed());
+        for (Neighbor<T> neighbor : candidates) {
+            top.offer(neighbor);
+            if (top.size() > k) {
+                top.poll();
+            }
+        }
+        List<Neighbor<T>> result = new ArrayList<>(top);
+        result.sort(Comparator.comparingDouble(Neighbor::getDistance));
+        return result;
+    }
+
+    private void collect(double lng, double lat, double radius, List<Neighbor<T>> sink) {
+        if (buckets.isEmpty()) {
+            return;
+        }
+        double latSpan = radius / METERS_PER_DEGREE;
+        int row0 = row(Math.max(-90.0D, lat - latSpan));
+        int row1 = row(Math.min(90.0D, lat + latSpan));
+        double maxAbsLat = Math.max(Math.abs(lat - latSpan), Math.abs(lat + latSpan));
+        // the circle gets widest at its highest latitude
+        double cos = maxAbsLat >= 90.0D ? 0.0D : Math.cos(Math.toRadians(maxAbsLat));
+        double lngSpan = cos <= 0.0D ? 360.0D : latSpan / cos;
+        // columns of [lng - lngSpan, lng + lngSpan], in two ranges when it crosses the date line. columns are not
+        // periodic when 360 / cellDegrees is not an integer, so each range is computed from normalized longitudes
+        int col0;
+        int col1;
+        int wrap0 = 0;
+        int wrap1 = -1;
+        double west = lng - lngSpan;
+        double east = lng + lngSpan;
+        if (lngSpan >= 180.0D) {
+            col0 = 0;
+            col1 = columns - 1;
+        } else if (west < -180.0D) {
+            col0 = column(west + 360.0D);
+            col1 = columns - 1;
+            wrap1 = column(east);
+        } else if (east >= 180.0D) {
+            col0 = column(west);
+            col1 = columns - 1;
+            wrap1 = column(east - 360.0D);
+        } else {
+            col0 = column(west);
+            col1 = column(east);
+        }
+        if (wrap1 >= col0) {
+            // the ranges overlap
+            col0 = 0;
+            col1 = columns - 1;
+            wrap1 = -1;
+        }
+        long cells = (long) (row1 - row0 + 1) * (col1 - col0 + 1 + wrap1 - wrap0 + 1);
+        if (cells > buckets.size()) {
+            // fewer buckets than cells to probe, just scan all of them
+            for (Bucket bucket : buckets.values()) {
+                bucket.collect(lng, lat, radius, sink);
+            }
+            return;
+        }
+        for (int row = row0; row <= row1; row++) {
+            collect(row, col0, col1, lng, lat, radius, sink);
+            collect(row, wrap0, wrap1, lng, lat, radius, sink);
+        }
+    }
+
+    private void collect(int row, int col0, int col1, double lng, double lat, double radius,
+                         List<Neighbor<T>> sink) {
+        for (int col = col0; col <= col1; col++) {
+            Bucket bucket = buckets.get(cellOf(col, row));
+            if (bucket != null) {
+                bucket.collect(lng, lat, radius, sink);
+            }
+        }
+    }
+
+    private int column(double lng) {
+        return Math.min(columns - 1, (int) Math.floor((lng + 180.0D) / cellDegrees));
+    }
+
+    private int row(double lat) {
+        return Math.min(rows - 1, (int) Math.floor((lat + 90.0D) / cellDegrees));
+    }
+
+    private static long cellOf(int column, int row) {
+        return (long) row << 32 | column;
+    }
+
+    private static void checkCoordinate(double lng, double lat) {
+        if (!(lng >= -180.0D && lng <= 180.0D && lat >= -90.0D && lat <= 90.0D)) {
+            throw new IllegalArgumentException("(" + lng + ", " + lat + ") is NOT a valid WGS84 coordinate");
+        }
+    }
+
+    /**
+     * items of one cell, coordinates kept in primitive arrays
+     */
+    private class Bucket {
+
+        private double[] lngs = new double[4];
+
+        private double[] lats = new double[4];
+
+        private Object[] items = new Object[4];
+
+        private int size;
+
+        void add(Object item, double lng, double lat) {
+            if (size == items.length) {
+                int capacity = size << 1;
+                lngs = Arrays.copyOf(lngs, capacity);
+                lats = Arrays.copyOf(lats, capacity);
+                items = Arrays.copyOf(items, capacity);
+            }
+            lngs[size] = lng;
+            lats[size] = lat;
+            items[size] = item;
+            ++size;
+        }
+
+        /**
+         * swap the last one into the hole
+         */
+        boolean remove(Object item) {
+            for (int i = 0; i < size; i++) {
+                if (items[i].equals(item)) {
+                    --size;
+                    lngs[i] = lngs[size];
+                    lats[i] = lats[size];
+                    items[i] = items[size];
+                    items[size] = null;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        void collect(double lng, double lat, double radius, List<Neighbor<T>> sink) {
+            for (int i = 0; i < size; i++) {
+                double distance = MathUtils.calcDistance(lng, lat, lngs[i], lats[i]);
+                if (distance <= radius) {
+                    sink.add(new Neighbor<>((T) items[i], lngs[i], lats[i], distance));
+                }
+            }
+        }
+    }
+
+    /**
+     * a found item with its position and distance to the query center
+     *
+     * @param <T> the item's type
+     */
+    public static class Neighbor<T> {
+
+        private final T item;
+
+        private final double lng;
+
+        private final double lat;
+
+        private final double distance;
+
+        Neighbor(T item, double lng, double lat, double distance) {
+            this.item = item;
+            this.lng = lng;
+            this.lat = lat;
+            this.distance = distance;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public double getLng() {
+            return lng;
+        }
+
+        public double getLat() {
+            return lat;
+        }
+
+        /**
+         * @return distance to the query center, in meters
+         */
+        public double getDistance() {
+            return distance;
+        }
+    }
+}
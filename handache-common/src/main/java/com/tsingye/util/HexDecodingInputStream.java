@@ -0,0 +1,137 @@
+package com.tsingye.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * decodes a hex text on the fly, reads its source in chunks into one reused buffer.
+ * Whitespaces between hex chars are skipped. Built via {@link MathUtils#hexDecodingStream(Reader)}
+ * or {@link MathUtils#hexDecodingStream(InputStream)}.
+ */
+class HexDecodingInputStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+
+    private final InputStream ascii;
+
+    private final char[] chars;
+
+    private final byte[] bytes;
+
+    private int position;
+
+    private int limit;
+
+    private boolean eof;
+
+    HexDecodingInputStream(Reader reader) {
+        if (reader == null) {
+            throw new IllegalArgumentException("reader should not be null!");
+        }
+        this.reader = reader;
+        this.ascii = null;
+        this.chars = new char[BUFFER_SIZE];
+        this.bytes = null;
+    }
+
+    HexDecodingInputStream(InputStream ascii) {
+        if (ascii == null) {
+            throw new IllegalArgumentException("source should not be null!");
+        }
+        this.reader = null;
+        this.ascii = ascii;
+        this.chars = null;
+        this.bytes = new byte[BUFFER_SIZE];
+    }
+
+    @Override
+    public int read() throws IOException {
+        int high = nextNibble();
+        if (high < 0) {
+            return -1;
+        }
+        int low = nextNibble();
+        if (low < 0) {
+            throw new IOException("odd count of hex chars");
+        }
+        return high << 4 | low;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > b.length - len) {
+            throw new IndexOutOfBoundsException("offset " + off + ", count " + len + ", length " + b.length);
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int count = 0;
+        while (count < len) {
+            // fast path: two hex chars are in buffer
+            if (limit - position >= 2) {
+                int high = MathUtils.hexNibble(charAt(position));
+                int low = MathUtils.hexNibble(charAt(position + 1));
+                if ((high | low) >= 0) {
+                    position += 2;
+                    b[off + count++] = (byte) (high << 4 | low);
+                    continue;
+                }
+            }
+            int value = read();
+            if (value < 0) {
+                break;
+            }
+            b[off + count++] = (byte) value;
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        } else {
+            ascii.close();
+        }
+    }
+
+    /**
+     * @return the next nibble, -1 at the end
+     */
+    private int nextNibble() throws IOException {
+        while (true) {
+            if (position >= limit && !fill()) {
+                return -1;
+            }
+            int c = charAt(position++);
+            int nibble = MathUtils.hexNibble(c);
+            if (nibble >= 0) {
+                return nibble;
+            }
+            if (!Character.isWhitespace(c)) {
+                throw new IOException("invalid hex char: " + (char) c);
+            }
+        }
+    }
+
+    private int charAt(int index) {
+        return chars != null ? chars[index] : bytes[index] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        int n;
+        do {
+            n = reader != null ? reader.read(chars, 0, BUFFER_SIZE) : ascii.read(bytes, 0, BUFFER_SIZE);
+        } while (n == 0);
+        position = 0;
+        limit = Math.max(n, 0);
+        eof = n < 0;
+        return !eof;
+    }
+}
@@ -1,6 +1,13 @@
 package com.tsingye.util;
 
+import java.io.InputStream;
+import java.io.Reader;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
  * simple math utils
@@ -10,8 +17,81 @@ public class MathUtils {
 
     private static final double EARTH_RADIUS = 6371e3; //地球半径，单位米
 
+    /**
+     * bulk distance methods go parallel above this size, in chunks of PARALLEL_CHUNK
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private static final int PARALLEL_CHUNK = 1 << 12;
+
+    private static final char[] GEOHASH_BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private static final byte[] GEOHASH_DECODES = new byte[128];
+
+    /**
+     * offsets of {N, NE, E, SE, S, SW, W, NW}
+     */
+    private static final int[] NEIGHBOR_DLNG = {0, 1, 1, 1, 0, -1, -1, -1};
+
+    private static final int[] NEIGHBOR_DLAT = {1, 1, 0, -1, -1, -1, 0, 1};
+
+    /**
+     * max cells returned by geohashCover
+     */
+    public static final int MAX_COVER_CELLS = 1 << 20;
+
+    /**
+     * exact powers of ten for the rounding fast path
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    /**
+     * rawValue above it always takes the BigDecimal path
+     */
+    private static final double FAST_ROUND_LIMIT = 1e15;
+
+    /**
+     * the candidates n / 10^level and (n + 0.5) / 10^level should have at most 15 significant digits, so each of them
+     * is the one decimal of its double: 10 * t < 1e15
+     */
+    private static final double FAST_ROUND_MAX_SCALED = 1e14;
+
+    /**
+     * upper bound of the error of the scaled value, in ulp, with margin
+     */
+    private static final double ERROR_ULPS = 4.0D;
+
     private static final String HEXES = "0123456789abcdef";
 
+    private static final char[] HEX_CHARS = HEXES.toCharArray();
+
+    /**
+     * hex strings of all the 256 bytes, so toHexString(byte) never allocates
+     */
+    private static final String[] BYTE_HEXES = new String[256];
+
+    /**
+     * char to its nibble, -1 for non-hex chars, both cases accepted
+     */
+    private static final byte[] HEX_DECODES = new byte[128];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            BYTE_HEXES[i] = new String(new char[]{HEX_CHARS[i >>> 4], HEX_CHARS[i & 0x0F]});
+        }
+        Arrays.fill(HEX_DECODES, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            HEX_DECODES[HEXES.charAt(i)] = (byte) i;
+            HEX_DECODES[Character.toUpperCase(HEXES.charAt(i))] = (byte) i;
+        }
+        Arrays.fill(GEOHASH_DECODES, (byte) -1);
+        for (int i = 0; i < GEOHASH_BASE32.length; i++) {
+            GEOHASH_DECODES[GEOHASH_BASE32[i]] = (byte) i;
+        }
+    }
+
     /**
      * convert long to byte array as 4 bytes unsigned long.
      * so the number should be less than 4294967295 and positive
@@ -20,14 +100,8 @@ public class MathUtils {
      * @return 4 Bytes length array
      */
     public static byte[] toByteArray(long unsignedLong) {
-        if (unsignedLong < 0 || unsignedLong > 0xFFFFFFFFL) {
-            throw new IllegalArgumentException("the number " + unsignedLong + "is NOT in range [0, 4294967295]");
-        }
         byte[] result = new byte[4];
-        for (int i = 3; i >= 0; --i) {
-            result[i] = (byte) (unsignedLong & 0xFFL);
-            unsignedLong >>= 8;
-        }
+        putUnsignedInt(result, 0, unsignedLong);
         return result;
     }
 
@@ -38,69 +112,693 @@ public class MathUtils {
      * @param unsignedLong [0, 4294967295]
      * @return 4 Bytes length array
      */
-    public static byte[] toByteArrayLE(long unsignedLong) {
-        if (unsignedLong < 0 || unsignedLong > 0xFFFFFFFFL) {
-            throw new IllegalArgumentException("the number " + unsignedLong + "is NOT in range [0, 4294967295]");
+    public static byte[] toByteArrayLE(long unsignedLong) {
+        byte[] result = new byte[4];
+        putUnsignedIntLE(result, 0, unsignedLong);
+        return result;
+    }
+
+    //============= write into / read from byte[] at offset =============//
+    // methods without suffix are big-endian, the "LE" ones are little-endian.
+    // put* return the offset right after the written bytes, so a frame could be assembled in one pass.
+
+    /**
+     * @param value [0, 255]
+     */
+    public static int putUnsignedByte(byte[] dst, int off, int value) {
+        if (value < 0 || value > 0xFF) {
+            throw new IllegalArgumentException("the number " + value + " is NOT in range [0, 255]");
+        }
+        dst[off] = (byte) value;
+        return off + 1;
+    }
+
+    /**
+     * read the byte at off as [0, 255]
+     */
+    public static int getUnsignedByte(byte[] src, int off) {
+        return src[off] & 0xFF;
+    }
+
+    /**
+     * write the lower 16 bits of value
+     */
+    public static int putShort(byte[] dst, int off, int value) {
+        dst[off] = (byte) (value >>> 8);
+        dst[off + 1] = (byte) value;
+        return off + 2;
+    }
+
+    /**
+     * write the lower 16 bits of value
+     */
+    public static int putShortLE(byte[] dst, int off, int value) {
+        dst[off] = (byte) value;
+        dst[off + 1] = (byte) (value >>> 8);
+        return off + 2;
+    }
+
+    /**
+     * @param value [0, 65535]
+     */
+    public static int putUnsignedShort(byte[] dst, int off, int value) {
+        checkUnsignedShort(value);
+        return putShort(dst, off, value);
+    }
+
+    /**
+     * @param value [0, 65535]
+     */
+    public static int putUnsignedShortLE(byte[] dst, int off, int value) {
+        checkUnsignedShort(value);
+        return putShortLE(dst, off, value);
+    }
+
+    /**
+     * read a big-endian short from src at off
+     */
+    public static short getShort(byte[] src, int off) {
+        return (short) (src[off] << 8 | src[off + 1] & 0xFF);
+    }
+
+    /**
+     * read a little-endian short from src at off
+     */
+    public static short getShortLE(byte[] src, int off) {
+        return (short) (src[off + 1] << 8 | src[off] & 0xFF);
+    }
+
+    /**
+     * read a big-endian u16 from src at off
+     *
+     * @return [0, 65535]
+     */
+    public static int getUnsignedShort(byte[] src, int off) {
+        return getShort(src, off) & 0xFFFF;
+    }
+
+    /**
+     * read a little-endian u16 from src at off
+     *
+     * @return [0, 65535]
+     */
+    public static int getUnsignedShortLE(byte[] src, int off) {
+        return getShortLE(src, off) & 0xFFFF;
+    }
+
+    /**
+     * write value into dst at off in big-endian
+     *
+     * @return the offset right after the written bytes
+     */
+    public static int putInt(byte[] dst, int off, int value) {
+        dst[off] = (byte) (value >>> 24);
+        dst[off + 1] = (byte) (value >>> 16);
+        dst[off + 2] = (byte) (value >>> 8);
+        dst[off + 3] = (byte) value;
+        return off + 4;
+    }
+
+    /**
+     * write value into dst at off in little-endian
+     *
+     * @return the offset right after the written bytes
+     */
+    public static int putIntLE(byte[] dst, int off, int value) {
+        dst[off] = (byte) value;
+        dst[off + 1] = (byte) (value >>> 8);
+        dst[off + 2] = (byte) (value >>> 16);
+        dst[off + 3] = (byte) (value >>> 24);
+        return off + 4;
+    }
+
+    /**
+     * @param unsignedLong [0, 4294967295]
+     */
+    public static int putUnsignedInt(byte[] dst, int off, long unsignedLong) {
+        checkUnsignedInt(unsignedLong);
+        return putInt(dst, off, (int) unsignedLong);
+    }
+
+    /**
+     * @param unsignedLong [0, 4294967295]
+     */
+    public static int putUnsignedIntLE(byte[] dst, int off, long unsignedLong) {
+        checkUnsignedInt(unsignedLong);
+        return putIntLE(dst, off, (int) unsignedLong);
+    }
+
+    /**
+     * read a big-endian int from src at off
+     */
+    public static int getInt(byte[] src, int off) {
+        return src[off] << 24
+                | (src[off + 1] & 0xFF) << 16
+                | (src[off + 2] & 0xFF) << 8
+                | src[off + 3] & 0xFF;
+    }
+
+    /**
+     * read a little-endian int from src at off
+     */
+    public static int getIntLE(byte[] src, int off) {
+        return src[off + 3] << 24
+                | (src[off + 2] & 0xFF) << 16
+                | (src[off + 1] & 0xFF) << 8
+                | src[off] & 0xFF;
+    }
+
+    /**
+     * read a big-endian u32 from src at off
+     *
+     * @return [0, 4294967295]
+     */
+    public static long getUnsignedInt(byte[] src, int off) {
+        return getInt(src, off) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * read a little-endian u32 from src at off
+     *
+     * @return [0, 4294967295]
+     */
+    public static long getUnsignedIntLE(byte[] src, int off) {
+        return getIntLE(src, off) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * also for u64, the bits are the same
+     */
+    public static int putLong(byte[] dst, int off, long value) {
+        putInt(dst, off, (int) (value >>> 32));
+        return putInt(dst, off + 4, (int) value);
+    }
+
+    /**
+     * also for u64, the bits are the same
+     */
+    public static int putLongLE(byte[] dst, int off, long value) {
+        putIntLE(dst, off, (int) value);
+        return putIntLE(dst, off + 4, (int) (value >>> 32));
+    }
+
+    /**
+     * also for u64, compare it via {@link Long#compareUnsigned(long, long)}
+     */
+    public static long getLong(byte[] src, int off) {
+        return (long) getInt(src, off) << 32 | getInt(src, off + 4) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * also for u64, compare it via {@link Long#compareUnsigned(long, long)}
+     */
+    public static long getLongLE(byte[] src, int off) {
+        return (long) getIntLE(src, off + 4) << 32 | getIntLE(src, off) & 0xFFFFFFFFL;
+    }
+
+    //============= bulk =============//
+
+    /**
+     * write len ints of src from srcOff into dst in big-endian
+     *
+     * @return the offset right after the written bytes
+     */
+    public static int putInts(byte[] dst, int dstOff, int[] src, int srcOff, int len) {
+        checkRange(src.length, srcOff, len);
+        checkRange(dst.length, dstOff, 4 * len);
+        for (int i = 0; i < len; i++) {
+            putInt(dst, dstOff + 4 * i, src[srcOff + i]);
+        }
+        return dstOff + 4 * len;
+    }
+
+    /**
+     * write len ints of src from srcOff into dst in little-endian
+     *
+     * @return the offset right after the written bytes
+     */
+    public static int putIntsLE(byte[] dst, int dstOff, int[] src, int srcOff, int len) {
+        checkRange(src.length, srcOff, len);
+        checkRange(dst.length, dstOff, 4 * len);
+        for (int i = 0; i < len; i++) {
+            putIntLE(dst, dstOff + 4 * i, src[srcOff + i]);
+        }
+        return dstOff + 4 * len;
+    }
+
+    /**
+     * read len big-endian ints from src at srcOff into dst
+     *
+     * @return the offset right after the read bytes
+     */
+    public static int getInts(byte[] src, int srcOff, int[] dst, int dstOff, int len) {
+        checkRange(src.length, srcOff, 4 * len);
+        checkRange(dst.length, dstOff, len);
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = getInt(src, srcOff + 4 * i);
+        }
+        return srcOff + 4 * len;
+    }
+
+    /**
+     * read len little-endian ints from src at srcOff into dst
+     *
+     * @return the offset right after the read bytes
+     */
+    public static int getIntsLE(byte[] src, int srcOff, int[] dst, int dstOff, int len) {
+        checkRange(src.length, srcOff, 4 * len);
+        checkRange(dst.length, dstOff, len);
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = getIntLE(src, srcOff + 4 * i);
+        }
+        return srcOff + 4 * len;
+    }
+
+    /**
+     * write len longs of src from srcOff into dst in big-endian
+     *
+     * @return the offset right after the written bytes
+     */
+    public static int putLongs(byte[] dst, int dstOff, long[] src, int srcOff, int len) {
+        checkRange(src.length, srcOff, len);
+        checkRange(dst.length, dstOff, 8 * len);
+        for (int i = 0; i < len; i++) {
+            putLong(dst, dstOff + 8 * i, src[srcOff + i]);
+        }
+        return dstOff + 8 * len;
+    }
+
+    /**
+     * write len longs of src from srcOff into dst in little-endian
+     *
+     * @return the offset right after the written bytes
+     */
+    public static int putLongsLE(byte[] dst, int dstOff, long[] src, int srcOff, int len) {
+        checkRange(src.length, srcOff, len);
+        checkRange(dst.length, dstOff, 8 * len);
+        for (int i = 0; i < len; i++) {
+            putLongLE(dst, dstOff + 8 * i, src[srcOff + i]);
+        }
+        return dstOff + 8 * len;
+    }
+
+    /**
+     * read len big-endian longs from src at srcOff into dst
+     *
+     * @return the offset right after the read bytes
+     */
+    public static int getLongs(byte[] src, int srcOff, long[] dst, int dstOff, int len) {
+        checkRange(src.length, srcOff, 8 * len);
+        checkRange(dst.length, dstOff, len);
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = getLong(src, srcOff + 8 * i);
+        }
+        return srcOff + 8 * len;
+    }
+
+    /**
+     * read len little-endian longs from src at srcOff into dst
+     *
+     * @return the offset right after the read bytes
+     */
+    public static int getLongsLE(byte[] src, int srcOff, long[] dst, int dstOff, int len) {
+        checkRange(src.length, srcOff, 8 * len);
+        checkRange(dst.length, dstOff, len);
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = getLongLE(src, srcOff + 8 * i);
+        }
+        return srcOff + 8 * len;
+    }
+
+    //============= write into / read from ByteBuffer at index, ignoring its order =============//
+
+    /**
+     * write the lower 16 bits of value at index in big-endian, whatever the order of dst, its position is not moved
+     */
+    public static void putShort(ByteBuffer dst, int index, int value) {
+        dst.putShort(index, bigEndian(dst) ? (short) value : Short.reverseBytes((short) value));
+    }
+
+    /**
+     * write the lower 16 bits of value at index in little-endian, whatever the order of dst, its position is not moved
+     */
+    public static void putShortLE(ByteBuffer dst, int index, int value) {
+        dst.putShort(index, bigEndian(dst) ? Short.reverseBytes((short) value) : (short) value);
+    }
+
+    /**
+     * read a big-endian u16 at index, whatever the order of src, its position is not moved
+     *
+     * @return [0, 65535]
+     */
+    public static int getUnsignedShort(ByteBuffer src, int index) {
+        short value = src.getShort(index);
+        return (bigEndian(src) ? value : Short.reverseBytes(value)) & 0xFFFF;
+    }
+
+    /**
+     * read a little-endian u16 at index, whatever the order of src, its position is not moved
+     *
+     * @return [0, 65535]
+     */
+    public static int getUnsignedShortLE(ByteBuffer src, int index) {
+        short value = src.getShort(index);
+        return (bigEndian(src) ? Short.reverseBytes(value) : value) & 0xFFFF;
+    }
+
+    /**
+     * write value at index in big-endian, whatever the order of dst, its position is not moved
+     */
+    public static void putInt(ByteBuffer dst, int index, int value) {
+        dst.putInt(index, bigEndian(dst) ? value : Integer.reverseBytes(value));
+    }
+
+    /**
+     * write value at index in little-endian, whatever the order of dst, its position is not moved
+     */
+    public static void putIntLE(ByteBuffer dst, int index, int value) {
+        dst.putInt(index, bigEndian(dst) ? Integer.reverseBytes(value) : value);
+    }
+
+    /**
+     * write a u32 at index in big-endian, whatever the order of dst, its position is not moved
+     *
+     * @param unsignedLong [0, 4294967295]
+     */
+    public static void putUnsignedInt(ByteBuffer dst, int index, long unsignedLong) {
+        checkUnsignedInt(unsignedLong);
+        putInt(dst, index, (int) unsignedLong);
+    }
+
+    /**
+     * write a u32 at index in little-endian, whatever the order of dst, its position is not moved
+     *
+     * @param unsignedLong [0, 4294967295]
+     */
+    public static void putUnsignedIntLE(ByteBuffer dst, int index, long unsignedLong) {
+        checkUnsignedInt(unsignedLong);
+        putIntLE(dst, index, (int) unsignedLong);
+    }
+
+    /**
+     * read a big-endian int at index, whatever the order of src, its position is not moved
+     */
+    public static int getInt(ByteBuffer src, int index) {
+        int value = src.getInt(index);
+        return bigEndian(src) ? value : Integer.reverseBytes(value);
+    }
+
+    /**
+     * read a little-endian int at index, whatever the order of src, its position is not moved
+     */
+    public static int getIntLE(ByteBuffer src, int index) {
+        int value = src.getInt(index);
+        return bigEndian(src) ? Integer.reverseBytes(value) : value;
+    }
+
+    /**
+     * read a big-endian u32 at index, whatever the order of src, its position is not moved
+     *
+     * @return [0, 4294967295]
+     */
+    public static long getUnsignedInt(ByteBuffer src, int index) {
+        return getInt(src, index) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * read a little-endian u32 at index, whatever the order of src, its position is not moved
+     *
+     * @return [0, 4294967295]
+     */
+    public static long getUnsignedIntLE(ByteBuffer src, int index) {
+        return getIntLE(src, index) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * write value at index in big-endian, whatever the order of dst, its position is not moved. also for u64
+     */
+    public static void putLong(ByteBuffer dst, int index, long value) {
+        dst.putLong(index, bigEndian(dst) ? value : Long.reverseBytes(value));
+    }
+
+    /**
+     * write value at index in little-endian, whatever the order of dst, its position is not moved. also for u64
+     */
+    public static void putLongLE(ByteBuffer dst, int index, long value) {
+        dst.putLong(index, bigEndian(dst) ? Long.reverseBytes(value) : value);
+    }
+
+    /**
+     * read a big-endian long at index, whatever the order of src, its position is not moved. also for u64
+     */
+    public static long getLong(ByteBuffer src, int index) {
+        long value = src.getLong(index);
+        return bigEndian(src) ? value : Long.reverseBytes(value);
+    }
+
+    /**
+     * read a little-endian long at index, whatever the order of src, its position is not moved. also for u64
+     */
+    public static long getLongLE(ByteBuffer src, int index) {
+        long value = src.getLong(index);
+        return bigEndian(src) ? Long.reverseBytes(value) : value;
+    }
+
+    private static boolean bigEndian(ByteBuffer buffer) {
+        return buffer.order() == ByteOrder.BIG_ENDIAN;
+    }
+
+    private static void checkUnsignedShort(int value) {
+        if (value < 0 || value > 0xFFFF) {
+            throw new IllegalArgumentException("the number " + value + " is NOT in range [0, 65535]");
+        }
+    }
+
+    private static void checkUnsignedInt(long unsignedLong) {
+        if (unsignedLong < 0 || unsignedLong > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("the number " + unsignedLong + "is NOT in range [0, 4294967295]");
+        }
+    }
+
+    /**
+     * just a simple method to transform byte to hex
+     *
+     * @param b the byte
+     * @return a lower case hex string that without "0x"
+     */
+    public static String toHexString(byte b) {
+        return BYTE_HEXES[b & 0xFF];
+    }
+
+    /**
+     * convert byte array to a long hex String
+     *
+     * @param bytes the byte array
+     * @return the hex String
+     */
+    public static String toHexString(byte[] bytes) {
+        char[] chars = new char[2 * bytes.length];
+        encodeHex(bytes, 0, bytes.length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * parse hexString like "fe13012501fa2e003f01011d0900000056b9591f45" to byte[]
+     *
+     * @param hexString the hexString, should be valid
+     * @return the byte array
+     */
+    public static byte[] toByteArray(String hexString) {
+        if (null == hexString || hexString.isEmpty()) {
+            throw new IllegalArgumentException("do NOT use null or empty hexString to fool me!");
+        }
+        // only copy the string when it needs cleaning
+        String str = hexString;
+        int len = str.length();
+        if (str.charAt(0) <= ' ' || str.charAt(len - 1) <= ' ' || str.contains("0x")) {
+            str = str.trim().replace("0x", "");
+            len = str.length();
+        }
+        if (len % 2 != 0) {
+            throw new IllegalArgumentException("are you sure " + hexString + " is hexString?");
+        }
+        byte[] result = new byte[len / 2];
+        decodeHex(str, 0, len, result, 0);
+        return result;
+    }
+
+    /**
+     * encode bytes as lower case hex chars into a caller supplied array
+     *
+     * @param src    the source bytes
+     * @param srcOff start offset in src
+     * @param len    how many bytes to encode
+     * @param dst    the destination, needs 2 * len chars from dstOff
+     * @param dstOff start offset in dst
+     * @return the count of chars written
+     */
+    public static int encodeHex(byte[] src, int srcOff, int len, char[] dst, int dstOff) {
+        checkRange(src.length, srcOff, len);
+        checkRange(dst.length, dstOff, 2 * len);
+        for (int i = srcOff, j = dstOff, end = srcOff + len; i < end; i++, j += 2) {
+            int b = src[i];
+            dst[j] = HEX_CHARS[(b >> 4) & 0x0F];
+            dst[j + 1] = HEX_CHARS[b & 0x0F];
+        }
+        return 2 * len;
+    }
+
+    /**
+     * encode the remaining bytes of src as lower case hex chars, the position of src is advanced
+     *
+     * @param src    the source buffer
+     * @param dst    the destination, needs 2 * src.remaining() chars from dstOff
+     * @param dstOff start offset in dst
+     * @return the count of chars written
+     */
+    public static int encodeHex(ByteBuffer src, char[] dst, int dstOff) {
+        int len = src.remaining();
+        checkRange(dst.length, dstOff, 2 * len);
+        if (src.hasArray()) {
+            encodeHex(src.array(), src.arrayOffset() + src.position(), len, dst, dstOff);
+            src.position(src.limit());
+            return 2 * len;
+        }
+        for (int j = dstOff, end = dstOff + 2 * len; j < end; j += 2) {
+            int b = src.get();
+            dst[j] = HEX_CHARS[(b >> 4) & 0x0F];
+            dst[j + 1] = HEX_CHARS[b & 0x0F];
+        }
+        return 2 * len;
+    }
+
+    /**
+     * append bytes as lower case hex chars
+     *
+     * @param src    the source bytes
+     * @param srcOff start offset in src
+     * @param len    how many bytes to encode
+     * @param sb     where to append
+     * @return the sb
+     */
+    public static StringBuilder appendHex(byte[] src, int srcOff, int len, StringBuilder sb) {
+        checkRange(src.length, srcOff, len);
+        sb.ensureCapacity(sb.length() + 2 * len);
+        for (int i = srcOff, end = srcOff + len; i < end; i++) {
+            int b = src[i];
+            sb.append(HEX_CHARS[(b >> 4) & 0x0F])
+              .append(HEX_CHARS[b & 0x0F]);
+        }
+        return sb;
+    }
+
+    /**
+     * decode hex chars, both cases accepted, into a caller supplied array
+     *
+     * @param src     the hex chars
+     * @param srcOff  start offset in src
+     * @param charLen how many chars to decode, should be even
+     * @param dst     the destination, needs charLen / 2 bytes from dstOff
+     * @param dstOff  start offset in dst
+     * @return the count of bytes written
+     */
+    public static int decodeHex(CharSequence src, int srcOff, int charLen, byte[] dst, int dstOff) {
+        checkHexRange(src.length(), srcOff, charLen);
+        checkRange(dst.length, dstOff, charLen / 2);
+        for (int i = srcOff, j = dstOff, end = srcOff + charLen; i < end; i += 2, j++) {
+            dst[j] = decodeHexByte(src.charAt(i), src.charAt(i + 1), i);
+        }
+        return charLen / 2;
+    }
+
+    /**
+     * decode hex chars, both cases accepted, into a caller supplied array
+     *
+     * @param src     the hex chars
+     * @param srcOff  start offset in src
+     * @param charLen how many chars to decode, should be even
+     * @param dst     the destination, needs charLen / 2 bytes from dstOff
+     * @param dstOff  start offset in dst
+     * @return the count of bytes written
+     */
+    public static int decodeHex(char[] src, int srcOff, int charLen, byte[] dst, int dstOff) {
+        checkHexRange(src.length, srcOff, charLen);
+        checkRange(dst.length, dstOff, charLen / 2);
+        for (int i = srcOff, j = dstOff, end = srcOff + charLen; i < end; i += 2, j++) {
+            dst[j] = decodeHexByte(src[i], src[i + 1], i);
+        }
+        return charLen / 2;
+    }
+
+    /**
+     * decode hex chars, both cases accepted, into dst at its position, the position of dst is advanced
+     *
+     * @param src     the hex chars
+     * @param srcOff  start offset in src
+     * @param charLen how many chars to decode, should be even
+     * @param dst     the destination, needs charLen / 2 bytes remaining
+     * @return the count of bytes written
+     */
+    public static int decodeHex(CharSequence src, int srcOff, int charLen, ByteBuffer dst) {
+        checkHexRange(src.length(), srcOff, charLen);
+        if (dst.remaining() < charLen / 2) {
+            throw new IndexOutOfBoundsException("need " + charLen / 2 + " bytes but only " + dst.remaining() + " remaining");
         }
-        byte[] result = new byte[4];
-        for (int i = 0; i < 4; ++i) {
-            result[i] = (byte) (unsignedLong & 0xFFL);
-            unsignedLong >>= 8;
+        for (int i = srcOff, end = srcOff + charLen; i < end; i += 2) {
+            dst.put(decodeHexByte(src.charAt(i), src.charAt(i + 1), i));
         }
-        return result;
+        return charLen / 2;
     }
 
     /**
-     * just a simple method to transform byte to hex
+     * wrap a hex text as the decoded bytes, whitespaces between hex chars are skipped.
+     * It is for large payloads which should not be loaded as one String.
      *
-     * @param b the byte
-     * @return a lower case hex string that without "0x"
+     * @param hexReader the hex text
+     * @return a stream of decoded bytes, closing it closes the reader
      */
-    public static String toHexString(byte b) {
-        char[] s = new char[2];
-        s[0] = HEXES.charAt((b & 0xF0) >> 4);
-        s[1] = HEXES.charAt((b & 0x0F));
-        return new String(s);
+    public static InputStream hexDecodingStream(Reader hexReader) {
+        return new HexDecodingInputStream(hexReader);
     }
 
     /**
-     * convert byte array to a long hex String
+     * wrap an ASCII hex text as the decoded bytes, whitespaces between hex chars are skipped.
      *
-     * @param bytes the byte array
-     * @return the hex String
+     * @param hexAscii the hex text in ASCII/UTF-8
+     * @return a stream of decoded bytes, closing it closes the source
      */
-    public static String toHexString(byte[] bytes) {
-        int len = bytes.length;
-        StringBuilder sb = new StringBuilder(2 * len);
-        for (byte b : bytes) {
-            sb.append(HEXES.charAt((b & 0xF0) >> 4))
-              .append(HEXES.charAt(b & 0x0F));
-        }
-        return sb.toString();
+    public static InputStream hexDecodingStream(InputStream hexAscii) {
+        return new HexDecodingInputStream(hexAscii);
     }
 
     /**
-     * parse hexString like "fe13012501fa2e003f01011d0900000056b9591f45" to byte[]
-     *
-     * @param hexString the hexString, should be valid
-     * @return the byte array
+     * @param c the char
+     * @return its nibble, or -1 if it is not a hex char
      */
-    public static byte[] toByteArray(String hexString) {
-        if (null == hexString || hexString.isEmpty()) {
-            throw new IllegalArgumentException("do NOT use null or empty hexString to fool me!");
+    static int hexNibble(int c) {
+        return c < 128 && c >= 0 ? HEX_DECODES[c] : -1;
+    }
+
+    private static byte decodeHexByte(char high, char low, int index) {
+        int h = hexNibble(high);
+        int l = hexNibble(low);
+        if ((h | l) < 0) {
+            throw new IllegalArgumentException("invalid hex char near index " + index + ": " + high + low);
         }
-        String str = hexString.trim().replace("0x", "").toLowerCase();
-        int len = str.length();
-        if (len % 2 != 0) {
-            throw new IllegalArgumentException("are you sure " + hexString + " is hexString?");
+        return (byte) (h << 4 | l);
+    }
+
+    private static void checkHexRange(int length, int offset, int charLen) {
+        if ((charLen & 1) != 0) {
+            throw new IllegalArgumentException("the count of hex chars " + charLen + " should be even");
         }
-        byte[] result = new byte[len / 2];
-        String cursor;
-        for (int i = 0; i < len; i += 2) {
-            cursor = str.substring(i, i + 2);
-            result[i / 2] = (byte) Integer.parseInt(cursor, 16);
+        checkRange(length, offset, charLen);
+    }
+
+    private static void checkRange(int length, int offset, int count) {
+        if (offset < 0 || count < 0 || offset > length - count) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", count " + count + ", length " + length);
         }
-        return result;
     }
 
     /**
@@ -111,9 +809,7 @@ public class MathUtils {
      * @return
      */
     public static double roundDown(double rawValue, int level) {
-        return BigDecimal.valueOf(rawValue)
-                         .setScale(level, BigDecimal.ROUND_DOWN)
-                         .doubleValue();
+        return round(rawValue, level, RoundingMode.DOWN);
     }
 
     /**
@@ -124,9 +820,7 @@ public class MathUtils {
      * @return
      */
     public static double roundUp(double rawValue, int level) {
-        return BigDecimal.valueOf(rawValue)
-                         .setScale(level, BigDecimal.ROUND_UP)
-                         .doubleValue();
+        return round(rawValue, level, RoundingMode.UP);
     }
 
     /**
@@ -137,8 +831,105 @@ public class MathUtils {
      * @return
      */
     public static double roundHalfUp(double rawValue, int level) {
+        return round(rawValue, level, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * 对数组中每个值原地调用{@link #roundDown(double, int)}
+     *
+     * @param values 原始值，结果写回此数组
+     * @param level  要保留的小数位数
+     */
+    public static void roundDown(double[] values, int level) {
+        round(values, level, RoundingMode.DOWN);
+    }
+
+    /**
+     * 对数组中每个值原地调用{@link #roundUp(double, int)}
+     *
+     * @param values 原始值，结果写回此数组
+     * @param level  要保留的小数位数
+     */
+    public static void roundUp(double[] values, int level) {
+        round(values, level, RoundingMode.UP);
+    }
+
+    /**
+     * 对数组中每个值原地调用{@link #roundHalfUp(double, int)}
+     *
+     * @param values 原始值，结果写回此数组
+     * @param level  要保留的小数位数
+     */
+    public static void roundHalfUp(double[] values, int level) {
+        round(values, level, RoundingMode.HALF_UP);
+    }
+
+    private static void round(double[] values, int level, RoundingMode roundingMode) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = round(values[i], level, roundingMode);
+        }
+    }
+
+    /**
+     * same result as {@code BigDecimal.valueOf(rawValue).setScale(level, roundingMode).doubleValue()},
+     * but in double arithmetic for the common cases.
+     * <p>t = |rawValue| * 10^level is within ERROR_ULPS ulp of the exact scaled decimal, so when t is clearly away
+     * from an integer (and from a half for HALF_UP) the rounded integer is determined. Near an integer m the decimal
+     * is exactly m / 10^level iff that quotient rounds to rawValue, and then the value needs no rounding at all;
+     * near a half the same check decides a tie. Whatever is still ambiguous goes to BigDecimal.
+     * The result n / 10^level is a correctly rounded division, as BigDecimal.doubleValue() is.</p>
+     */
+    private static double round(double rawValue, int level, RoundingMode roundingMode) {
+        if (level < 0 || level >= POWERS_OF_TEN.length || !(Math.abs(rawValue) < FAST_ROUND_LIMIT)) {
+            // negative level, too large or not finite
+            return roundExactly(rawValue, level, roundingMode);
+        }
+        if (rawValue == 0.0D) {
+            // BigDecimal has no negative zero
+            return 0.0D;
+        }
+        double scale = POWERS_OF_TEN[level];
+        double abs = Math.abs(rawValue);
+        double t = abs * scale;
+        if (t >= FAST_ROUND_MAX_SCALED) {
+            return roundExactly(rawValue, level, roundingMode);
+        }
+        double error = ERROR_ULPS * Math.ulp(t);
+        double n = Math.floor(t);
+        double fraction = t - n;
+        if (fraction <= error || 1.0D - fraction <= error) {
+            double m = fraction <= error ? n : n + 1.0D;
+            return m / scale == abs ? rawValue : roundExactly(rawValue, level, roundingMode);
+        }
+        double rounded;
+        switch (roundingMode) {
+            case DOWN:
+                rounded = n;
+                break;
+            case UP:
+                rounded = n + 1.0D;
+                break;
+            default:
+                double half = fraction - 0.5D;
+                if (Math.abs(half) <= error) {
+                    if ((2.0D * n + 1.0D) / (2.0D * scale) != abs) {
+                        return roundExactly(rawValue, level, roundingMode);
+                    }
+                    half = 0.5D;
+                }
+                rounded = half > 0.0D ? n + 1.0D : n;
+                break;
+        }
+        if (rounded == 0.0D) {
+            return 0.0D;
+        }
+        double result = rounded / scale;
+        return rawValue < 0.0D ? -result : result;
+    }
+
+    private static double roundExactly(double rawValue, int level, RoundingMode roundingMode) {
         return BigDecimal.valueOf(rawValue)
-                         .setScale(level, BigDecimal.ROUND_HALF_UP)
+                         .setScale(level, roundingMode)
                          .doubleValue();
     }
 
@@ -162,8 +953,572 @@ public class MathUtils {
         double φ2 = Math.toRadians(lat2);
         double Δφ = Math.toRadians(lat2 - lat1);
         double Δλ = Math.toRadians(lng2 - lng1);
-        double a = Math.pow(Math.sin(Δφ / 2), 2) + Math.cos(φ1) * Math.cos(φ2) * Math.pow(Math.sin(Δλ / 2), 2);
+        double sinΔφ = Math.sin(Δφ / 2);
+        double sinΔλ = Math.sin(Δλ / 2);
+        double a = sinΔφ * sinΔφ + Math.cos(φ1) * Math.cos(φ2) * sinΔλ * sinΔλ;
         double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
         return EARTH_RADIUS * c;
     }
+
+    /**
+     * 等距柱状投影近似计算两点距离，比{@link #calcDistance(double, double, double, double)}少了大部分三角函数。<br/>
+     * x = Δλ ⋅ cos φm, y = Δφ, d = R ⋅ √(x² + y²), where φm is the mean latitude. <br/>
+     * 误差：相对haversine，在纬度±70°以内、距离100km以内时相对误差小于0.1%；距离越短误差越小，跨越经度±180°时不可用。
+     *
+     * @param lng1 第一个点的经度
+     * @param lat1 第一个点的纬度
+     * @param lng2 第二个点的经度
+     * @param lat2 第二个点的纬度
+     * @return 两GPS坐标点之间的近似距离，单位是米
+     */
+    public static double calcDistanceApprox(double lng1, double lat1, double lng2, double lat2) {
+        double x = Math.toRadians(lng2 - lng1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return EARTH_RADIUS * Math.sqrt(x * x + y * y);
+    }
+
+    /**
+     * 将经纬度数组预先转换为弧度，供批量距离计算重复使用
+     *
+     * @param lngs 经度数组
+     * @param lats 纬度数组，长度与经度数组一致
+     * @return 弧度形式的坐标点集合
+     */
+    public static RadianPoints toRadianPoints(double[] lngs, double[] lats) {
+        return new RadianPoints(lngs, lats);
+    }
+
+    /**
+     * 计算一个点到多个点的球面距离，公式同{@link #calcDistance(double, double, double, double)}
+     *
+     * @param lng      起点经度
+     * @param lat      起点纬度
+     * @param points   目标点集合
+     * @param out      结果数组，out[i]为到第i个点的距离，单位是米，长度不小于points.size()
+     * @param parallel 是否使用fork-join并行计算，点数较少时会忽略
+     */
+    public static void calcDistances(double lng, double lat, RadianPoints points, double[] out, boolean parallel) {
+        int size = points.size();
+        if (out.length < size) {
+            throw new IllegalArgumentException("out length " + out.length + " is less than points size " + size);
+        }
+        double λ1 = Math.toRadians(lng);
+        double φ1 = Math.toRadians(lat);
+        double cosφ1 = Math.cos(φ1);
+        if (parallel && size >= PARALLEL_THRESHOLD) {
+            IntStream.range(0, chunks(size))
+                     .parallel()
+                     .forEach(chunk -> haversines(λ1, φ1, cosφ1, points, out,
+                             chunk * PARALLEL_CHUNK, Math.min(size, (chunk + 1) * PARALLEL_CHUNK)));
+        } else {
+            haversines(λ1, φ1, cosφ1, points, out, 0, size);
+        }
+    }
+
+    /**
+     * 计算一个点到多个点的球面距离，经纬度数组会被转换为弧度，如需重复计算请使用{@link #toRadianPoints(double[], double[])}
+     *
+     * @param lng  起点经度
+     * @param lat  起点纬度
+     * @param lngs 目标点经度数组
+     * @param lats 目标点纬度数组
+     * @return 到每个目标点的距离，单位是米
+     */
+    public static double[] calcDistances(double lng, double lat, double[] lngs, double[] lats) {
+        double[] out = new double[lngs.length];
+        calcDistances(lng, lat, toRadianPoints(lngs, lats), out, false);
+        return out;
+    }
+
+    /**
+     * 计算一个点到多个点的近似距离，公式同{@link #calcDistanceApprox(double, double, double, double)}
+     *
+     * @param lng    起点经度
+     * @param lat    起点纬度
+     * @param points 目标点集合
+     * @param out    结果数组，长度不小于points.size()
+     */
+    public static void calcDistancesApprox(double lng, double lat, RadianPoints points, double[] out) {
+        int size = points.size();
+        if (out.length < size) {
+            throw new IllegalArgumentException("out length " + out.length + " is less than points size " + size);
+        }
+        double λ1 = Math.toRadians(lng);
+        double φ1 = Math.toRadians(lat);
+        double[] λs = points.lngs;
+        double[] φs = points.lats;
+        for (int i = 0; i < size; i++) {
+            double x = (λs[i] - λ1) * Math.cos((φs[i] + φ1) * 0.5D);
+            double y = φs[i] - φ1;
+            out[i] = EARTH_RADIUS * Math.sqrt(x * x + y * y);
+        }
+    }
+
+    /**
+     * 计算轨迹总长度，即相邻两点球面距离之和
+     *
+     * @param points   轨迹点，按顺序排列
+     * @param parallel 是否使用fork-join并行计算，点数较少时会忽略
+     * @return 轨迹长度，单位是米
+     */
+    public static double calcPathLength(RadianPoints points, boolean parallel) {
+        int pairs = points.size() - 1;
+        if (pairs <= 0) {
+            return 0.0D;
+        }
+        if (parallel && pairs >= PARALLEL_THRESHOLD) {
+            return IntStream.range(0, chunks(pairs))
+                            .parallel()
+                            .mapToDouble(chunk -> pathLength(points,
+                                    chunk * PARALLEL_CHUNK, Math.min(pairs, (chunk + 1) * PARALLEL_CHUNK)))
+                            .sum();
+        }
+        return pathLength(points, 0, pairs);
+    }
+
+    /**
+     * 计算轨迹总长度，即相邻两点球面距离之和
+     *
+     * @param lngs 经度数组
+     * @param lats 纬度数组
+     * @return 轨迹长度，单位是米
+     */
+    public static double calcPathLength(double[] lngs, double[] lats) {
+        return calcPathLength(toRadianPoints(lngs, lats), false);
+    }
+
+    private static int chunks(int size) {
+        return (size + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+    }
+
+    /**
+     * the loop body only reads arrays and writes out[i], so the JIT could unroll it
+     */
+    private static void haversines(double λ1, double φ1, double cosφ1, RadianPoints points, double[] out,
+                                   int from, int to) {
+        double[] λs = points.lngs;
+        double[] φs = points.lats;
+        double[] cosφs = points.cosLats;
+        for (int i = from; i < to; i++) {
+            double sinΔφ = Math.sin((φs[i] - φ1) * 0.5D);
+            double sinΔλ = Math.sin((λs[i] - λ1) * 0.5D);
+            double a = sinΔφ * sinΔφ + cosφ1 * cosφs[i] * sinΔλ * sinΔλ;
+            out[i] = 2 * EARTH_RADIUS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        }
+    }
+
+    /**
+     * sum of the pairs [from, to), pair i is point i to point i + 1
+     */
+    private static double pathLength(RadianPoints points, int from, int to) {
+        double[] λs = points.lngs;
+        double[] φs = points.lats;
+        double[] cosφs = points.cosLats;
+        double sum = 0.0D;
+        for (int i = from; i < to; i++) {
+            double sinΔφ = Math.sin((φs[i + 1] - φs[i]) * 0.5D);
+            double sinΔλ = Math.sin((λs[i + 1] - λs[i]) * 0.5D);
+            double a = sinΔφ * sinΔφ + cosφs[i] * cosφs[i + 1] * sinΔλ * sinΔλ;
+            sum += Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        }
+        return 2 * EARTH_RADIUS * sum;
+    }
+
+    //============= geohash, z-order and hilbert keys =============//
+
+    /**
+     * 计算geohash，结果以long形式存放在低bits位，相同精度的key按z-order排序，前缀即所在的更大网格
+     *
+     * @param lng  经度
+     * @param lat  纬度
+     * @param bits 精度位数，[1, 62]，第一位是经度位；base32的每个字符对应5位
+     * @return geohash
+     */
+    public static long geohash(double lng, double lat, int bits) {
+        checkGeohashBits(bits);
+        int lngBits = (bits + 1) >>> 1;
+        int latBits = bits >>> 1;
+        return interleaveGeohash(quantize(lng, -180.0D, 360.0D, lngBits), quantize(lat, -90.0D, 180.0D, latBits), bits);
+    }
+
+    /**
+     * 批量计算geohash
+     *
+     * @param lngs 经度数组
+     * @param lats 纬度数组
+     * @param bits 精度位数，[1, 62]
+     * @param out  结果数组，长度不小于lngs.length
+     */
+    public static void geohashes(double[] lngs, double[] lats, int bits, long[] out) {
+        checkGeohashBits(bits);
+        checkSameLength(lngs, lats, out.length);
+        int lngBits = (bits + 1) >>> 1;
+        int latBits = bits >>> 1;
+        for (int i = 0; i < lngs.length; i++) {
+            out[i] = interleaveGeohash(quantize(lngs[i], -180.0D, 360.0D, lngBits),
+                    quantize(lats[i], -90.0D, 180.0D, latBits), bits);
+        }
+    }
+
+    /**
+     * 计算base32形式的geohash字符串
+     *
+     * @param lng   经度
+     * @param lat   纬度
+     * @param chars 字符数，[1, 12]
+     * @return geohash字符串，如"wx4g0"
+     */
+    public static String geohashString(double lng, double lat, int chars) {
+        return geohashToString(geohash(lng, lat, 5 * chars), 5 * chars);
+    }
+
+    /**
+     * 将long形式的geohash转换为base32字符串
+     *
+     * @param hash geohash
+     * @param bits 精度位数，须为5的倍数
+     * @return geohash字符串
+     */
+    public static String geohashToString(long hash, int bits) {
+        checkGeohashBits(bits);
+        if (bits % 5 != 0) {
+            throw new IllegalArgumentException("bits " + bits + " should be a multiple of 5 for base32");
+        }
+        char[] chars = new char[bits / 5];
+        for (int i = chars.length - 1; i >= 0; i--) {
+            chars[i] = GEOHASH_BASE32[(int) (hash & 0x1F)];
+            hash >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 解析base32形式的geohash字符串，精度位数为 5 * geohash.length()
+     *
+     * @param geohash geohash字符串，不区分大小写
+     * @return long形式的geohash
+     */
+    public static long geohashFromString(CharSequence geohash) {
+        int length = geohash.length();
+        if (length == 0 || length > 12) {
+            throw new IllegalArgumentException("geohash " + geohash + " should have 1 ~ 12 chars");
+        }
+        long hash = 0L;
+        for (int i = 0; i < length; i++) {
+            char c = Character.toLowerCase(geohash.charAt(i));
+            int value = c < 128 ? GEOHASH_DECODES[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("invalid geohash char " + c + " in " + geohash);
+            }
+            hash = hash << 5 | value;
+        }
+        return hash;
+    }
+
+    /**
+     * geohash对应网格的范围
+     *
+     * @param hash geohash
+     * @param bits 精度位数
+     * @return {minLng, minLat, maxLng, maxLat}
+     */
+    public static double[] geohashBounds(long hash, int bits) {
+        checkGeohashBits(bits);
+        int lngBits = (bits + 1) >>> 1;
+        int latBits = bits >>> 1;
+        double lngCell = 360.0D / (1L << lngBits);
+        double latCell = 180.0D / (1L << latBits);
+        double minLng = -180.0D + geohashX(hash, bits) * lngCell;
+        double minLat = -90.0D + geohashY(hash, bits) * latCell;
+        return new double[]{minLng, minLat, minLng + lngCell, minLat + latCell};
+    }
+
+    /**
+     * geohash对应网格的中心点
+     *
+     * @param hash geohash
+     * @param bits 精度位数
+     * @return {lng, lat}
+     */
+    public static double[] geohashCenter(long hash, int bits) {
+        double[] bounds = geohashBounds(hash, bits);
+        return new double[]{(bounds[0] + bounds[2]) / 2, (bounds[1] + bounds[3]) / 2};
+    }
+
+    /**
+     * 相邻网格的geohash，经度方向跨越±180°时回绕
+     *
+     * @param hash geohash
+     * @param bits 精度位数
+     * @param dLng 经度方向偏移的格数，向东为正
+     * @param dLat 纬度方向偏移的格数，向北为正
+     * @return 相邻网格的geohash，越过南北极时返回-1
+     */
+    public static long geohashNeighbor(long hash, int bits, int dLng, int dLat) {
+        checkGeohashBits(bits);
+        int lngBits = (bits + 1) >>> 1;
+        int latBits = bits >>> 1;
+        long y = geohashY(hash, bits) + dLat;
+        if (y < 0 || y >= 1L << latBits) {
+            return -1L;
+        }
+        long x = Math.floorMod(geohashX(hash, bits) + dLng, 1L << lngBits);
+        return interleaveGeohash((int) x, (int) y, bits);
+    }
+
+    /**
+     * 周围8个网格的geohash
+     *
+     * @param hash geohash
+     * @param bits 精度位数
+     * @return {N, NE, E, SE, S, SW, W, NW}，越过南北极的为-1
+     */
+    public static long[] geohashNeighbors(long hash, int bits) {
+        long[] result = new long[8];
+        for (int i = 0; i < 8; i++) {
+            result[i] = geohashNeighbor(hash, bits, NEIGHBOR_DLNG[i], NEIGHBOR_DLAT[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 覆盖指定矩形范围的所有geohash网格，已排序，可用于按前缀或区间查询
+     *
+     * @param minLng 西边界，大于maxLng时视为跨越经度±180°
+     * @param minLat 南边界
+     * @param maxLng 东边界
+     * @param maxLat 北边界
+     * @param bits   精度位数
+     * @return 网格geohash数组，数量超过{@value #MAX_COVER_CELLS}时抛出异常，此时应降低精度
+     */
+    public static long[] geohashCover(double minLng, double minLat, double maxLng, double maxLat, int bits) {
+        checkGeohashBits(bits);
+        if (minLat > maxLat) {
+            throw new IllegalArgumentException("minLat " + minLat + " should not be greater than maxLat " + maxLat);
+        }
+        int lngBits = (bits + 1) >>> 1;
+        int latBits = bits >>> 1;
+        long columns = 1L << lngBits;
+        long x0 = quantize(minLng, -180.0D, 360.0D, lngBits);
+        long x1 = quantize(maxLng, -180.0D, 360.0D, lngBits);
+        if (minLng > maxLng) {
+            x1 += columns;
+        }
+        long y0 = quantize(minLat, -90.0D, 180.0D, latBits);
+        long y1 = quantize(maxLat, -90.0D, 180.0D, latBits);
+        long width = Math.min(x1 - x0 + 1, columns);
+        long count = width * (y1 - y0 + 1);
+        if (count > MAX_COVER_CELLS) {
+            throw new IllegalArgumentException("too many cells " + count + ", try less bits than " + bits);
+        }
+        long[] result = new long[(int) count];
+        int i = 0;
+        for (long y = y0; y <= y1; y++) {
+            for (long x = x0; x < x0 + width; x++) {
+                result[i++] = interleaveGeohash((int) (x % columns), (int) y, bits);
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * morton (z-order) key of two 31 bits non-negative ints, x takes the higher bit of each pair
+     *
+     * @param x [0, 2^31)
+     * @param y [0, 2^31)
+     * @return the key
+     */
+    public static long zOrder(int x, int y) {
+        if ((x | y) < 0) {
+            throw new IllegalArgumentException("x " + x + " and y " + y + " should not be negative");
+        }
+        return spreadBits(x) << 1 | spreadBits(y);
+    }
+
+    public static int zOrderX(long key) {
+        return compactBits(key >>> 1);
+    }
+
+    public static int zOrderY(long key) {
+        return compactBits(key);
+    }
+
+    /**
+     * 计算希尔伯特曲线上的位置，局部性比z-order更好：曲线上相邻的key在空间上也一定相邻
+     *
+     * @param lng   经度
+     * @param lat   纬度
+     * @param order 阶数，经纬度各量化为order位，[1, 31]
+     * @return 位置，[0, 4^order)
+     */
+    public static long hilbert(double lng, double lat, int order) {
+        checkHilbertOrder(order);
+        return hilbertIndex(quantize(lng, -180.0D, 360.0D, order), quantize(lat, -90.0D, 180.0D, order), order);
+    }
+
+    /**
+     * 批量计算希尔伯特曲线位置
+     *
+     * @param lngs  经度数组
+     * @param lats  纬度数组
+     * @param order 阶数，[1, 31]
+     * @param out   结果数组，长度不小于lngs.length
+     */
+    public static void hilberts(double[] lngs, double[] lats, int order, long[] out) {
+        checkHilbertOrder(order);
+        checkSameLength(lngs, lats, out.length);
+        for (int i = 0; i < lngs.length; i++) {
+            out[i] = hilbertIndex(quantize(lngs[i], -180.0D, 360.0D, order),
+                    quantize(lats[i], -90.0D, 180.0D, order), order);
+        }
+    }
+
+    /**
+     * 希尔伯特曲线位置对应网格的中心点
+     *
+     * @param index 位置
+     * @param order 阶数
+     * @return {lng, lat}
+     */
+    public static double[] hilbertCenter(long index, int order) {
+        checkHilbertOrder(order);
+        long x = 0L;
+        long y = 0L;
+        long t = index;
+        for (long s = 1L; s < 1L << order; s <<= 1) {
+            long rx = 1L & (t >>> 1);
+            long ry = 1L & (t ^ rx);
+            if (ry == 0L) {
+                if (rx == 1L) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                long tmp = x;
+                x = y;
+                y = tmp;
+            }
+            x += s * rx;
+            y += s * ry;
+            t >>>= 2;
+        }
+        double cells = 1L << order;
+        return new double[]{-180.0D + (x + 0.5D) * 360.0D / cells, -90.0D + (y + 0.5D) * 180.0D / cells};
+    }
+
+    private static long hilbertIndex(long x, long y, int order) {
+        long index = 0L;
+        for (long s = 1L << (order - 1); s > 0; s >>>= 1) {
+            long rx = (x & s) > 0 ? 1L : 0L;
+            long ry = (y & s) > 0 ? 1L : 0L;
+            index += s * s * ((3L * rx) ^ ry);
+            // rotate the quadrant
+            if (ry == 0L) {
+                if (rx == 1L) {
+                    x = s - 1 - (x & (s - 1));
+                    y = s - 1 - (y & (s - 1));
+                }
+                long tmp = x;
+                x = y;
+                y = tmp;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return floor((value - min) / range * 2^bits), clamped into [0, 2^bits)
+     */
+    private static int quantize(double value, double min, double range, int bits) {
+        long cells = 1L << bits;
+        long cell = (long) Math.floor((value - min) / range * cells);
+        return (int) Math.max(0L, Math.min(cells - 1, cell));
+    }
+
+    private static long interleaveGeohash(int x, int y, int bits) {
+        return (bits & 1) == 0 ? spreadBits(x) << 1 | spreadBits(y) : spreadBits(x) | spreadBits(y) << 1;
+    }
+
+    private static long geohashX(long hash, int bits) {
+        return compactBits((bits & 1) == 0 ? hash >>> 1 : hash);
+    }
+
+    private static long geohashY(long hash, int bits) {
+        return compactBits((bits & 1) == 0 ? hash : hash >>> 1);
+    }
+
+    /**
+     * spread the lower 32 bits into the even bits of a long
+     */
+    private static long spreadBits(int value) {
+        long v = value & 0xFFFFFFFFL;
+        v = (v | v << 16) & 0x0000FFFF0000FFFFL;
+        v = (v | v << 8) & 0x00FF00FF00FF00FFL;
+        v = (v | v << 4) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | v << 2) & 0x3333333333333333L;
+        v = (v | v << 1) & 0x5555555555555555L;
+        return v;
+    }
+
+    /**
+     * gather the even bits of a long
+     */
+    private static int compactBits(long value) {
+        long v = value & 0x5555555555555555L;
+        v = (v | v >>> 1) & 0x3333333333333333L;
+        v = (v | v >>> 2) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | v >>> 4) & 0x00FF00FF00FF00FFL;
+        v = (v | v >>> 8) & 0x0000FFFF0000FFFFL;
+        v = (v | v >>> 16) & 0x00000000FFFFFFFFL;
+        return (int) v;
+    }
+
+    private static void checkGeohashBits(int bits) {
+        if (bits < 1 || bits > 62) {
+            throw new IllegalArgumentException("bits " + bits + " is NOT in range [1, 62]");
+        }
+    }
+
+    private static void checkHilbertOrder(int order) {
+        if (order < 1 || order > 31) {
+            throw new IllegalArgumentException("order " + order + " is NOT in range [1, 31]");
+        }
+    }
+
+    private static void checkSameLength(double[] lngs, double[] lats, int outLength) {
+        if (lngs.length != lats.length || outLength < lngs.length) {
+            throw new IllegalArgumentException("lngs, lats and out should have the same length");
+        }
+    }
+
+    /**
+     * 弧度形式的坐标点集合，structure of arrays，同时缓存了各点纬度的余弦值
+     */
+    public static final class RadianPoints {
+
+        private final double[] lngs;
+
+        private final double[] lats;
+
+        private final double[] cosLats;
+
+        private RadianPoints(double[] lngs, double[] lats) {
+            if (lngs == null || lats == null || lngs.length != lats.length) {
+                throw new IllegalArgumentException("lngs and lats should not be null and have the same length!");
+            }
+            int size = lngs.length;
+            this.lngs = new double[size];
+            this.lats = new double[size];
+            this.cosLats = new double[size];
+            for (int i = 0; i < size; i++) {
+                this.lngs[i] = Math.toRadians(lngs[i]);
+                this.lats[i] = Math.toRadians(lats[i]);
+                this.cosLats[i] = Math.cos(this.lats[i]);
+            }
+        }
+
+        public int size() {
+            return lngs.length;
+        }
+    }
 }
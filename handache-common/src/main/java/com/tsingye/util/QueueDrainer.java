@@ -0,0 +1,134 @@
+package com.tsingye.util;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * pulls chunks from a {@link BlockingQueue} via one timed poll plus {@link BlockingQueue#drainTo(Collection, int)},
+ * and decides when the source is exhausted: idle timeout, poison pill or stop signal.
+ * Shared by the draining splitters in {@link BlockingQueueSplitter}.
+ *
+ * @param <T> the element's type in blockingQueue
+ */
+class QueueDrainer<T> {
+
+    /**
+     * the longest single park while waiting for the first element, so a stop signal is seen in time
+     */
+    private static final long STOP_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(50L);
+
+    private final BlockingQueue<T> queue;
+
+    private final int maxBatch;
+
+    private final long maxWaitNanos;
+
+    private final T poisonPill;
+
+    private final BooleanSupplier stopSignal;
+
+    private volatile boolean exhausted;
+
+    /**
+     * @param queue      the source queue
+     * @param maxBatch   max elements pulled per drain, should be positive
+     * @param maxWait    idle timeout, the source is exhausted if none element arrives in this time
+     * @param unit       time unit of maxWait
+     * @param poisonPill an element marks the end of source, compared by identity, nullable
+     * @param stopSignal external stop signal, the source is exhausted once it returns true, nullable
+     */
+    QueueDrainer(BlockingQueue<T> queue, int maxBatch, long maxWait, TimeUnit unit,
+                 T poisonPill, BooleanSupplier stopSignal) {
+        if (queue == null) {
+            throw new IllegalArgumentException("queue should not be null!");
+        }
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("maxBatch " + maxBatch + " should be positive!");
+        }
+        if (maxWait < 0 || unit == null) {
+            throw new IllegalArgumentException("maxWait " + maxWait + " should not be negative and unit should not be null!");
+        }
+        this.queue = queue;
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.poisonPill = poisonPill;
+        this.stopSignal = stopSignal;
+    }
+
+    int maxBatch() {
+        return maxBatch;
+    }
+
+    boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * wait for at most maxWait for the first element, then drain the rest without blocking.
+     * Elements drained after the poison pill are dropped, producers should not offer after it.
+     *
+     * @param sink where to put drained elements
+     * @return the count of elements put into sink, 0 means the source is exhausted
+     */
+    int drainTo(List<? super T> sink) {
+        if (exhausted) {
+            return 0;
+        }
+        if (stopped()) {
+            exhausted = true;
+            return 0;
+        }
+        T first = pollFirst();
+        if (first == null || first == poisonPill) {
+            exhausted = true;
+            return 0;
+        }
+        int from = sink.size();
+        sink.add(first);
+        int count = maxBatch == 1 ? 1 : 1 + queue.drainTo(sink, maxBatch - 1);
+        if (poisonPill == null) {
+            return count;
+        }
+        for (int i = from + 1, end = from + count; i < end; ++i) {
+            if (sink.get(i) == poisonPill) {
+                exhausted = true;
+                sink.subList(i, end).clear();
+                return i - from;
+            }
+        }
+        return count;
+    }
+
+    private T pollFirst() {
+        try {
+            // fast path: elements are already there
+            T first = queue.poll();
+            if (first != null) {
+                return first;
+            }
+            long deadline = System.nanoTime() + maxWaitNanos;
+            long remaining = maxWaitNanos;
+            while (remaining > 0L) {
+                if (stopped()) {
+                    return null;
+                }
+                first = queue.poll(Math.min(remaining, STOP_CHECK_NANOS), TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    return first;
+                }
+                remaining = deadline - System.nanoTime();
+            }
+            return null;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted", e);
+        }
+    }
+
+    private boolean stopped() {
+        return stopSignal != null && stopSignal.getAsBoolean();
+    }
+}
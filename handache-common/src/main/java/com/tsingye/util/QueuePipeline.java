@@ -0,0 +1,380 @@
+package com.tsingye.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * wires a queue through stage functions into a sink without pinning a thread per consumer.
+ * <p>Each worker is a short task: it polls a chunk from its input, applies the stage, offers the results
+ * downstream and submits itself again. When the input is empty or the downstream buffer is full it backs off
+ * on a shared timer instead of blocking, so the buffers between stages (bounded) give backpressure, and
+ * thousands of workers could share a few threads. By default the tasks run on virtual threads when the JVM has
+ * them (JDK 21+), otherwise on a fixed pool sized to the processors.</p>
+ * <p>Example:<code>
+ * QueuePipeline.from(queue)
+ * .map(this::decode, 4)
+ * .map(this::enrich, 16)
+ * .to(this::save, 2)
+ * </code></p>
+ * <p>A stage returns null to drop the element. The source queue must allow concurrent polls when the
+ * first stage has more than one worker.</p>
+ *
+ * @param <S> the element's type of source queue
+ * @param <T> the element's type of current stage output
+ */
+public class QueuePipeline<S, T> {
+
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50L);
+
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10L);
+
+    private final BlockingQueue<S> source;
+
+    private final List<Stage> stages = new ArrayList<>();
+
+    private int bufferSize = 1024;
+
+    private int maxBatch = 256;
+
+    private ExecutorService executor;
+
+    private BiConsumer<Object, Throwable> errorHandler = (element, e) -> {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    };
+
+    private QueuePipeline(BlockingQueue<S> source) {
+        if (source == null) {
+            throw new IllegalArgumentException("source should not be null!");
+        }
+        this.source = source;
+    }
+
+    /**
+     * start building a pipeline
+     *
+     * @param source the source queue
+     * @param <S>    the element's type of source queue
+     * @return a pipeline without stages
+     */
+    public static <S> QueuePipeline<S, S> from(BlockingQueue<S> source) {
+        return new QueuePipeline<>(source);
+    }
+
+    /**
+     * append a stage
+     *
+     * @param function    the stage function, return null to drop the element
+     * @param concurrency how many workers run this stage
+     * @param <R>         the stage output type
+     * @return this pipeline
+     */
+    @SuppressWarnings("unchecked")
+    public <R> QueuePipeline<S, R> map(Function<? super T, ? extends R> function, int concurrency) {
+        if (function == null) {
+            throw new IllegalArgumentException("function should not be null!");
+        }
+        stages.add(new Stage((Function<Object, Object>) function, null, concurrency));
+        return (QueuePipeline<S, R>) this;
+    }
+
+    /**
+     * @param bufferSize capacity of each buffer between stages, the producers back off when it is full
+     * @return this pipeline
+     */
+    public QueuePipeline<S, T> bufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize " + bufferSize + " should be positive!");
+        }
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * @param maxBatch max elements a worker handles before it gives the thread away
+     * @return this pipeline
+     */
+    public QueuePipeline<S, T> maxBatch(int maxBatch) {
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("maxBatch " + maxBatch + " should be positive!");
+        }
+        this.maxBatch = maxBatch;
+        return this;
+    }
+
+    /**
+     * run on the given executor instead of the default one, the pipeline never shuts it down
+     *
+     * @param executor where the workers run
+     * @return this pipeline
+     */
+    public QueuePipeline<S, T> executor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * @param errorHandler called with the element and the error when a stage or the sink throws,
+     *                     the element is dropped then
+     * @return this pipeline
+     */
+    public QueuePipeline<S, T> onError(BiConsumer<Object, Throwable> errorHandler) {
+        if (errorHandler == null) {
+            throw new IllegalArgumentException("errorHandler should not be null!");
+        }
+        this.errorHandler = errorHandler;
+        return this;
+    }
+
+    /**
+     * append the sink and start all workers
+     *
+     * @param sink        the last consumer
+     * @param concurrency how many workers run the sink
+     * @return the running pipeline
+     */
+    @SuppressWarnings("unchecked")
+    public Running to(Consumer<? super T> sink, int concurrency) {
+        if (sink == null) {
+            throw new IllegalArgumentException("sink should not be null!");
+        }
+        stages.add(new Stage(null, (Consumer<Object>) sink, concurrency));
+        boolean ownExecutor = executor == null;
+        return new Running(this, ownExecutor ? defaultExecutor() : executor, ownExecutor);
+    }
+
+    /**
+     * virtual threads when the JVM has them, otherwise a fixed pool sized to the processors
+     *
+     * @return a new executor
+     */
+    public static ExecutorService defaultExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                Thread thread = new Thread(r, "queue-pipeline-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static class Stage {
+
+        private final Function<Object, Object> function;
+
+        private final Consumer<Object> sink;
+
+        private final int concurrency;
+
+        Stage(Function<Object, Object> function, Consumer<Object> sink, int concurrency) {
+            if (concurrency <= 0) {
+                throw new IllegalArgumentException("concurrency " + concurrency + " should be positive!");
+            }
+            this.function = function;
+            this.sink = sink;
+            this.concurrency = concurrency;
+        }
+    }
+
+    /**
+     * the shared timer to resubmit idle workers
+     */
+    private static class Timer {
+
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "queue-pipeline-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * a started pipeline
+     */
+    public static class Running {
+
+        private final ExecutorService executor;
+
+        private final int maxBatch;
+
+        private final BiConsumer<Object, Throwable> errorHandler;
+
+        private final boolean ownExecutor;
+
+        private final CountDownLatch terminated;
+
+        private final AtomicLong processed = new AtomicLong();
+
+        private final AtomicLong errors = new AtomicLong();
+
+        private volatile boolean stopped;
+
+        private Running(QueuePipeline<?, ?> pipeline, ExecutorService executor, boolean ownExecutor) {
+            this.executor = executor;
+            this.ownExecutor = ownExecutor;
+            this.maxBatch = pipeline.maxBatch;
+            this.errorHandler = pipeline.errorHandler;
+            List<Stage> stages = pipeline.stages;
+            int workers = stages.stream().mapToInt(stage -> stage.concurrency).sum();
+            this.terminated = new CountDownLatch(workers);
+            @SuppressWarnings("unchecked")
+            BlockingQueue<Object> in = (BlockingQueue<Object>) pipeline.source;
+            for (int i = 0; i < stages.size(); i++) {
+                Stage stage = stages.get(i);
+                BlockingQueue<Object> out = i == stages.size() - 1 ? null : new ArrayBlockingQueue<>(pipeline.bufferSize);
+                for (int c = 0; c < stage.concurrency; c++) {
+                    submit(new Worker(stage, in, out));
+                }
+                in = out;
+            }
+        }
+
+        /**
+         * stop all workers after their current element, elements left in buffers are dropped
+         */
+        public void stop() {
+            stopped = true;
+        }
+
+        public boolean isRunning() {
+            return terminated.getCount() > 0;
+        }
+
+        /**
+         * @return true if all workers exited before timeout
+         */
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return terminated.await(timeout, unit);
+        }
+
+        /**
+         * @return count of elements accepted by the sink
+         */
+        public long processed() {
+            return processed.get();
+        }
+
+        /**
+         * @return count of elements dropped by errors
+         */
+        public long errors() {
+            return errors.get();
+        }
+
+        private void submit(Worker worker) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                worker.exit();
+            }
+        }
+
+        private class Worker implements Runnable {
+
+            private final Stage stage;
+
+            private final BlockingQueue<Object> in;
+
+            private final BlockingQueue<Object> out;
+
+            private final Runnable resubmit = () -> submit(this);
+
+            private Object pending;
+
+            private int idleRounds;
+
+            Worker(Stage stage, BlockingQueue<Object> in, BlockingQueue<Object> out) {
+                this.stage = stage;
+                this.in = in;
+                this.out = out;
+            }
+
+            @Override
+            public void run() {
+                if (stopped) {
+                    exit();
+                    return;
+                }
+                if (pending != null) {
+                    if (!out.offer(pending)) {
+                        backoff();
+                        return;
+                    }
+                    pending = null;
+                    idleRounds = 0;
+                }
+                for (int i = 0; i < maxBatch; i++) {
+                    Object element = in.poll();
+                    if (element == null) {
+                        if (i == 0) {
+                            backoff();
+                            return;
+                        }
+                        break;
+                    }
+                    idleRounds = 0;
+                    Object result = handle(element);
+                    if (result != null && !out.offer(result)) {
+                        pending = result;
+                        backoff();
+                        return;
+                    }
+                }
+                submit(this);
+            }
+
+            /**
+             * @return the output to offer downstream, null if dropped or it's the sink
+             */
+            private Object handle(Object element) {
+                try {
+                    if (stage.sink != null) {
+                        stage.sink.accept(element);
+                        processed.incrementAndGet();
+                        return null;
+                    }
+                    return stage.function.apply(element);
+                } catch (Throwable e) {
+                    errors.incrementAndGet();
+                    errorHandler.accept(element, e);
+                    return null;
+                }
+            }
+
+            private void backoff() {
+                long delay = Math.min(MAX_BACKOFF_NANOS, MIN_BACKOFF_NANOS << Math.min(idleRounds, 16));
+                ++idleRounds;
+                try {
+                    Timer.INSTANCE.schedule(resubmit, delay, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    exit();
+                }
+            }
+
+            private void exit() {
+                terminated.countDown();
+                if (ownExecutor && terminated.getCount() == 0) {
+                    executor.shutdown();
+                }
+            }
+        }
+    }
+}
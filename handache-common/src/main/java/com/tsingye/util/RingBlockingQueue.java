@@ -0,0 +1,420 @@
+package com.tsingye.util;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * a bounded, array backed, lock-free ring buffer queue for single consumer.
+ * Producers could be single (SPSC) or multiple (MPSC), choose one via {@link #spsc(int, WaitStrategy)}
+ * or {@link #mpsc(int, WaitStrategy)}. None node allocated per element, the head and tail sequences are
+ * padded to their own cache lines, and the blocking methods wait via a pluggable {@link WaitStrategy}
+ * instead of locks and conditions.
+ * <p>It is a drop-in source for {@link BlockingQueueSplitter}:<code>
+ * BlockingQueueSplitter.drainingStream(RingBlockingQueue.mpsc(1 &lt;&lt; 16, WaitStrategy.PARKING), 512, 1, TimeUnit.SECONDS)
+ * </code></p>
+ * <p>Limits: poll/take/peek/drainTo/clear must be called by one thread at a time, {@link #iterator()} is a weakly
+ * consistent snapshot, and removing an element other than the head is not supported.</p>
+ *
+ * @param <E> the element's type
+ */
+public class RingBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    /**
+     * stop counting rounds here, it is big enough for any backoff
+     */
+    private static final int MAX_ROUND = 1 << 20;
+
+    private final AtomicReferenceArray<E> buffer;
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final boolean multiProducer;
+
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * the next sequence to consume, only written by the consumer
+     */
+    private final Sequence head = new Sequence();
+
+    /**
+     * the next sequence to produce, its cache holds a recently seen head
+     */
+    private final Sequence tail = new Sequence();
+
+    private RingBlockingQueue(int capacity, boolean multiProducer, WaitStrategy waitStrategy) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity " + capacity + " is NOT in range [1, 2^30]");
+        }
+        if (waitStrategy == null) {
+            throw new IllegalArgumentException("waitStrategy should not be null!");
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(this.capacity);
+        this.multiProducer = multiProducer;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * single producer, single consumer
+     *
+     * @param capacity     rounded up to the next power of two
+     * @param waitStrategy how blocking methods wait
+     * @param <E>          the element's type
+     * @return a new queue
+     */
+    public static <E> RingBlockingQueue<E> spsc(int capacity, WaitStrategy waitStrategy) {
+        return new RingBlockingQueue<>(capacity, false, waitStrategy);
+    }
+
+    /**
+     * multiple producers, single consumer
+     *
+     * @param capacity     rounded up to the next power of two
+     * @param waitStrategy how blocking methods wait
+     * @param <E>          the element's type
+     * @return a new queue
+     */
+    public static <E> RingBlockingQueue<E> mpsc(int capacity, WaitStrategy waitStrategy) {
+        return new RingBlockingQueue<>(capacity, true, waitStrategy);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    //============= producer side =============//
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException("null element is not allowed");
+        }
+        return multiProducer ? offerMulti(e) : offerSingle(e);
+    }
+
+    private boolean offerSingle(E e) {
+        long t = tail.value;
+        if (t - tail.cache >= capacity) {
+            tail.cache = head.value;
+            if (t - tail.cache >= capacity) {
+                return false;
+            }
+        }
+        buffer.lazySet(index(t), e);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    private boolean offerMulti(E e) {
+        long t;
+        do {
+            t = tail.value;
+            if (t - tail.cache >= capacity) {
+                // benign race, a stale cache only makes us read head again
+                tail.cache = head.value;
+                if (t - tail.cache >= capacity) {
+                    return false;
+                }
+            }
+        } while (!tail.compareAndSet(t, t + 1));
+        // the slot is claimed, the consumer spins until it is visible
+        buffer.lazySet(index(t), e);
+        return true;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        int round = 0;
+        while (!offer(e)) {
+            round = idle(round);
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (offer(e)) {
+            return true;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int round = 0;
+        while (!offer(e)) {
+            if (deadline - System.nanoTime() <= 0L) {
+                return false;
+            }
+            round = idle(round);
+        }
+        return true;
+    }
+
+    //============= consumer side =============//
+
+    @Override
+    public E poll() {
+        long h = head.value;
+        int index = index(h);
+        E e = buffer.get(index);
+        if (e == null) {
+            if (h == tail.value) {
+                return null;
+            }
+            // a producer has claimed the slot but not yet published it
+            e = spinForPublish(index);
+        }
+        buffer.lazySet(index, null);
+        head.lazySet(h + 1);
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        long h = head.value;
+        int index = index(h);
+        E e = buffer.get(index);
+        if (e == null && h != tail.value) {
+            e = spinForPublish(index);
+        }
+        return e;
+    }
+
+    private E spinForPublish(int index) {
+        E e;
+        do {
+            e = buffer.get(index);
+        } while (e == null);
+        return e;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        int round = 0;
+        E e;
+        while ((e = poll()) == null) {
+            round = idle(round);
+        }
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E e = poll();
+        if (e != null) {
+            return e;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int round = 0;
+        while ((e = poll()) == null) {
+            if (deadline - System.nanoTime() <= 0L) {
+                return null;
+            }
+            round = idle(round);
+        }
+        return e;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * move published elements to c, the head is written once per call.
+     * It stops at a slot claimed but not yet published by another producer.
+     */
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null) {
+            throw new NullPointerException("collection should not be null");
+        }
+        if (c == this) {
+            throw new IllegalArgumentException("can not drain to itself");
+        }
+        long h = head.value;
+        int count = 0;
+        try {
+            while (count < maxElements) {
+                int index = index(h + count);
+                E e = buffer.get(index);
+                if (e == null) {
+                    break;
+                }
+                buffer.lazySet(index, null);
+                ++count;
+                c.add(e);
+            }
+        } finally {
+            if (count > 0) {
+                head.lazySet(h + count);
+            }
+        }
+        return count;
+    }
+
+    //============= others =============//
+
+    @Override
+    public int size() {
+        long after = head.value;
+        long before;
+        long t;
+        do {
+            before = after;
+            t = tail.value;
+            after = head.value;
+        } while (before != after);
+        long size = t - after;
+        return size < 0L ? 0 : (int) Math.min(size, capacity);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return head.value == tail.value;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    /**
+     * a weakly consistent snapshot, safe from any thread: the elements published and not consumed while it is taken,
+     * in order. Its {@code remove()} is not supported.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        long h = head.value;
+        long t = tail.value;
+        List<E> snapshot = new ArrayList<>((int) Math.min(Math.max(t - h, 0L), capacity));
+        for (long sequence = h; sequence < t; sequence++) {
+            E e = buffer.get(index(sequence));
+            long current = head.value;
+            if (current > sequence) {
+                // consumed meanwhile, the slot may hold a newer element already
+                sequence = current - 1;
+                continue;
+            }
+            if (e != null) {
+                snapshot.add(e);
+            }
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    /**
+     * not supported, it would race with the consumer
+     */
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException("remove(Object) is not supported by RingBlockingQueue");
+    }
+
+    private int index(long sequence) {
+        return (int) sequence & mask;
+    }
+
+    private int idle(int round) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        waitStrategy.idle(round);
+        return round < MAX_ROUND ? round + 1 : round;
+    }
+
+    /**
+     * how a blocking method waits before trying again
+     */
+    @FunctionalInterface
+    public interface WaitStrategy {
+
+        /**
+         * burn the cpu, the lowest latency while a core is reserved for it
+         */
+        WaitStrategy BUSY_SPIN = round -> {
+        };
+
+        /**
+         * spin for a while then give the cpu away via {@link Thread#yield()}
+         */
+        WaitStrategy YIELDING = round -> {
+            if (round >= 100) {
+                Thread.yield();
+            }
+        };
+
+        /**
+         * spin, yield, then park with backoff up to 1 ms
+         */
+        WaitStrategy PARKING = parking(TimeUnit.MILLISECONDS.toNanos(1L));
+
+        /**
+         * spin, yield, then park with an exponential backoff
+         *
+         * @param maxParkNanos the longest single park
+         * @return the wait strategy
+         */
+        static WaitStrategy parking(long maxParkNanos) {
+            if (maxParkNanos <= 0L) {
+                throw new IllegalArgumentException("maxParkNanos " + maxParkNanos + " should be positive!");
+            }
+            return round -> {
+                if (round < 100) {
+                    return;
+                }
+                if (round < 200) {
+                    Thread.yield();
+                    return;
+                }
+                LockSupport.parkNanos(Math.min(maxParkNanos, 1L << Math.min(round - 200 + 10, 40)));
+            };
+        }
+
+        /**
+         * @param round how many times it waited in current call, starts from 0
+         */
+        void idle(int round);
+    }
+
+    //============= padded sequence =============//
+
+    static class LhsPadding {
+        protected long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    static class Value extends LhsPadding {
+        protected volatile long value;
+        protected long cache;
+    }
+
+    static class RhsPadding extends Value {
+        protected long p9, p10, p11, p12, p13, p14, p15;
+    }
+
+    /**
+     * a long sequence sits on its own cache line with a plain cache beside it
+     */
+    static final class Sequence extends RhsPadding {
+
+        private static final AtomicLongFieldUpdater<Value> UPDATER =
+                AtomicLongFieldUpdater.newUpdater(Value.class, "value");
+
+        void lazySet(long newValue) {
+            UPDATER.lazySet(this, newValue);
+        }
+
+        boolean compareAndSet(long expect, long update) {
+            return UPDATER.compareAndSet(this, expect, update);
+        }
+    }
+}
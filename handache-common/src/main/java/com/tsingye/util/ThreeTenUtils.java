@@ -3,11 +3,14 @@ package com.tsingye.util;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * 老规矩的时间相关工具类
@@ -15,22 +18,34 @@ import java.util.Map;
  */
 public class ThreeTenUtils {
 
-    private static final Map<String, DateTimeFormatter> DATE_TIME_FORMATTERS = new HashMap<>();
+    /**
+     * 未预先注册的pattern最多缓存的数量，超出后按CLOCK策略淘汰
+     */
+    private static final int MAX_CACHED_FORMATTERS = 512;
+
+    private static final BoundedCache<String, DateTimeFormatter> DATE_TIME_FORMATTERS =
+            new BoundedCache<>(MAX_CACHED_FORMATTERS);
+
+    /**
+     * 纯数字的固定pattern（如uuuu-MM-dd HH:mm）的快速格式化、解析实现，不支持的pattern对应{@link FixedPatternCodec#NONE}
+     */
+    private static final BoundedCache<String, FixedPatternCodec> FIXED_PATTERN_CODECS =
+            new BoundedCache<>(MAX_CACHED_FORMATTERS);
 
     private ThreeTenUtils() {
         // empty construct
     }
 
     static {
-        DATE_TIME_FORMATTERS.put("u-M", DateTimeFormatter.ofPattern("u-M"));
-        DATE_TIME_FORMATTERS.put("u-M-d", DateTimeFormatter.ofPattern("u-M-d"));
-        DATE_TIME_FORMATTERS.put("H:m", DateTimeFormatter.ofPattern("H:m"));
-        DATE_TIME_FORMATTERS.put("u-M-d H:m", DateTimeFormatter.ofPattern("u-M-d H:m"));
+        registerPattern("u-M");
+        registerPattern("u-M-d");
+        registerPattern("H:m");
+        registerPattern("u-M-d H:m");
 
-        DATE_TIME_FORMATTERS.put("uuuu-MM", DateTimeFormatter.ofPattern("uuuu-MM"));
-        DATE_TIME_FORMATTERS.put("uuuu-MM-dd", DateTimeFormatter.ofPattern("uuuu-MM-dd"));
-        DATE_TIME_FORMATTERS.put("HH:mm", DateTimeFormatter.ofPattern("HH:mm"));
-        DATE_TIME_FORMATTERS.put("uuuu-MM-dd HH:mm", DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm"));
+        registerPattern("uuuu-MM");
+        registerPattern("uuuu-MM-dd");
+        registerPattern("HH:mm");
+        registerPattern("uuuu-MM-dd HH:mm");
     }
 
     /**
@@ -42,8 +57,33 @@ public class ThreeTenUtils {
         return ZoneId.systemDefault();
     }
 
+    /**
+     * 获取pattern对应的{@link DateTimeFormatter}，已缓存时为无锁读取
+     *
+     * @param pattern 格式
+     * @return formatter
+     */
     public static DateTimeFormatter ofPattern(String pattern) {
-        return DATE_TIME_FORMATTERS.computeIfAbsent(pattern, k -> DateTimeFormatter.ofPattern(pattern));
+        return DATE_TIME_FORMATTERS.get(pattern, DateTimeFormatter::ofPattern);
+    }
+
+    /**
+     * 预先注册pattern，注册过的pattern不会被淘汰，适合在启动时调用
+     *
+     * @param pattern 格式
+     */
+    public static void registerPattern(String pattern) {
+        DATE_TIME_FORMATTERS.pin(pattern, DateTimeFormatter.ofPattern(pattern));
+        FIXED_PATTERN_CODECS.pin(pattern, FixedPatternCodec.compile(pattern));
+    }
+
+    /**
+     * formatter缓存的命中、未命中、淘汰计数
+     *
+     * @return 计数快照
+     */
+    public static BoundedCache.Stats formatterCacheStats() {
+        return DATE_TIME_FORMATTERS.stats();
     }
 
     /**
@@ -66,10 +106,22 @@ public class ThreeTenUtils {
      * @return
      */
     public static Instant toInstant(LocalDateTime localDateTime) {
+        return toInstant(localDateTime, defaultZoneId());
+    }
+
+    /**
+     * 将{@link LocalDateTime} 按指定时区转换成 {@link Instant}，不经过{@link java.time.ZonedDateTime}
+     *
+     * @param localDateTime 日期时间，不可为null
+     * @param zoneId        时区，不可为null
+     * @return
+     */
+    public static Instant toInstant(LocalDateTime localDateTime, ZoneId zoneId) {
         if (localDateTime == null) {
             throw new IllegalArgumentException("localDate should not be null!");
         }
-        return localDateTime.atZone(defaultZoneId()).toInstant();
+        long epochSecond = ZoneOffsetConverter.of(zoneId).toEpochSecond(localDateTime.toEpochSecond(ZoneOffset.UTC));
+        return Instant.ofEpochSecond(epochSecond, localDateTime.getNano());
     }
 
     /**
@@ -109,7 +161,21 @@ public class ThreeTenUtils {
      * @return
      */
     public static long toEpochMilli(LocalDate localDate) {
-        return toInstant(localDate).toEpochMilli();
+        return toEpochMilli(localDate, defaultZoneId());
+    }
+
+    /**
+     * Gets the number of milliseconds from the Java epoch of 1970-01-01T00:00:00Z
+     *
+     * @param localDate 日期，以该日期在zoneId时区的00:00:00.000为准，不可为null
+     * @param zoneId    时区，不可为null
+     * @return
+     */
+    public static long toEpochMilli(LocalDate localDate, ZoneId zoneId) {
+        if (localDate == null) {
+            throw new IllegalArgumentException("localDate should not be null!");
+        }
+        return ZoneOffsetConverter.of(zoneId).toEpochSecond(localDate.toEpochDay() * 86400L) * 1000L;
     }
 
     /**
@@ -129,39 +195,310 @@ public class ThreeTenUtils {
      * @return
      */
     public static long toEpochMilli(LocalDateTime localDateTime) {
-        return toInstant(localDateTime).toEpochMilli();
+        return toEpochMilli(localDateTime, defaultZoneId());
+    }
+
+    /**
+     * Gets the number of milliseconds from the Java epoch of 1970-01-01T00:00:00Z
+     *
+     * @param localDateTime 日期时间，不可为null
+     * @param zoneId        时区，不可为null
+     * @return
+     */
+    public static long toEpochMilli(LocalDateTime localDateTime, ZoneId zoneId) {
+        if (localDateTime == null) {
+            throw new IllegalArgumentException("localDateTime should not be null!");
+        }
+        long epochSecond = ZoneOffsetConverter.of(zoneId).toEpochSecond(localDateTime.toEpochSecond(ZoneOffset.UTC));
+        return epochSecond * 1000L + localDateTime.getNano() / 1_000_000;
+    }
+
+    /**
+     * 由本地时间的各字段计算时间戳，使用系统默认时区，不产生任何时间对象
+     *
+     * @return 时间戳
+     * @throws java.time.DateTimeException 字段值不合法时
+     */
+    public static long toEpochMilli(int year, int month, int day, int hour, int minute, int second, int millis) {
+        return ZoneOffsetConverter.systemDefault().toEpochMilli(year, month, day, hour, minute, second, millis);
+    }
+
+    /**
+     * 由本地时间的各字段计算时间戳，不产生任何时间对象
+     *
+     * @return 时间戳
+     * @throws java.time.DateTimeException 字段值不合法时
+     */
+    public static long toEpochMilli(int year, int month, int day, int hour, int minute, int second, int millis,
+                                    ZoneId zoneId) {
+        return ZoneOffsetConverter.of(zoneId).toEpochMilli(year, month, day, hour, minute, second, millis);
+    }
+
+    /**
+     * 将时间戳拆分为本地时间的各字段，使用系统默认时区
+     *
+     * @param epochMilli 时间戳
+     * @param fields     依次写入年、月、日、时、分、秒、毫秒，长度至少为7，可重复使用
+     */
+    public static void localFieldsOf(long epochMilli, int[] fields) {
+        ZoneOffsetConverter.systemDefault().localFieldsOf(epochMilli, fields);
+    }
+
+    /**
+     * 将时间戳拆分为本地时间的各字段
+     *
+     * @param epochMilli 时间戳
+     * @param zoneId     时区，不可为null
+     * @param fields     依次写入年、月、日、时、分、秒、毫秒，长度至少为7，可重复使用
+     */
+    public static void localFieldsOf(long epochMilli, ZoneId zoneId, int[] fields) {
+        ZoneOffsetConverter.of(zoneId).localFieldsOf(epochMilli, fields);
+    }
+
+    /**
+     * 批量将时间戳转换为本地时间的毫秒数（时间戳加上当时的时区偏移量），src与dst可以是同一个数组
+     *
+     * @param epochMillis 时间戳
+     * @param zoneId      时区，不可为null
+     * @param localMillis 写入结果，长度不小于epochMillis
+     */
+    public static void toLocalMillis(long[] epochMillis, ZoneId zoneId, long[] localMillis) {
+        ZoneOffsetConverter.of(zoneId).toLocalMillis(epochMillis, localMillis);
+    }
+
+    /**
+     * 批量将本地时间的毫秒数转换为时间戳，夏令时的间隙与重叠与{@link LocalDateTime#atZone(ZoneId)}一致
+     *
+     * @param localMillis 本地时间的毫秒数
+     * @param zoneId      时区，不可为null
+     * @param epochMillis 写入结果，长度不小于localMillis
+     */
+    public static void toEpochMillis(long[] localMillis, ZoneId zoneId, long[] epochMillis) {
+        ZoneOffsetConverter.of(zoneId).toEpochMillis(localMillis, epochMillis);
     }
 
     //============= format and etc =============//
 
     public static String format(LocalDate localDate, String pattern) {
+        FixedPatternCodec codec = codecOf(pattern);
+        if (localDate != null && codec.isSupported() && !codec.hasTime()) {
+            char[] chars = new char[codec.maxLength()];
+            int end = codec.format(localDate.getYear(), localDate.getMonthValue(), localDate.getDayOfMonth(),
+                                   0, 0, 0, chars, 0);
+            if (end >= 0) {
+                return new String(chars, 0, end);
+            }
+        }
         return localDate.format(ofPattern(pattern));
     }
 
     public static String format(LocalDateTime localDateTime, String pattern) {
+        FixedPatternCodec codec = codecOf(pattern);
+        if (localDateTime != null && codec.isSupported()) {
+            char[] chars = new char[codec.maxLength()];
+            int end = codec.format(localDateTime.getYear(), localDateTime.getMonthValue(),
+                                   localDateTime.getDayOfMonth(), localDateTime.getHour(),
+                                   localDateTime.getMinute(), localDateTime.getSecond(), chars, 0);
+            if (end >= 0) {
+                return new String(chars, 0, end);
+            }
+        }
         return localDateTime.format(ofPattern(pattern));
     }
 
+    /**
+     * 格式化时间戳，使用系统默认时区；纯数字的固定pattern不经过{@link DateTimeFormatter}，且同一天内复用日期部分
+     *
+     * @param epochMilli 时间戳
+     * @param pattern    格式
+     * @return
+     */
     public static String format(long epochMilli, String pattern) {
+        FixedPatternCodec codec = codecOf(pattern);
+        if (codec.isSupported()) {
+            char[] chars = new char[codec.maxLength()];
+            int end = codec.format(toLocalMillis(epochMilli), chars, 0);
+            if (end >= 0) {
+                return new String(chars, 0, end);
+            }
+        }
         return format(localDateTimeOf(epochMilli), pattern);
     }
 
+    /**
+     * 格式化时间戳并追加到sb，不产生中间的String
+     *
+     * @param epochMilli 时间戳
+     * @param pattern    格式
+     * @param sb         追加的目标
+     * @return sb
+     */
+    public static StringBuilder formatTo(long epochMilli, String pattern, StringBuilder sb) {
+        FixedPatternCodec codec = codecOf(pattern);
+        if (codec.isSupported()) {
+            char[] chars = new char[codec.maxLength()];
+            int end = codec.format(toLocalMillis(epochMilli), chars, 0);
+            if (end >= 0) {
+                return sb.append(chars, 0, end);
+            }
+        }
+        return sb.append(format(localDateTimeOf(epochMilli), pattern));
+    }
+
+    /**
+     * 格式化时间戳并写入dst
+     *
+     * @param epochMilli 时间戳
+     * @param pattern    格式
+     * @param dst        写入的目标，空间不足时抛出{@link IndexOutOfBoundsException}
+     * @param offset     写入的起始位置
+     * @return 下一个可写入的位置
+     */
+    public static int formatTo(long epochMilli, String pattern, char[] dst, int offset) {
+        FixedPatternCodec codec = codecOf(pattern);
+        if (codec.isSupported() && offset >= 0 && offset <= dst.length - codec.maxLength()) {
+            int end = codec.format(toLocalMillis(epochMilli), dst, offset);
+            if (end >= 0) {
+                return end;
+            }
+        }
+        String formatted = format(localDateTimeOf(epochMilli), pattern);
+        formatted.getChars(0, formatted.length(), dst, offset);
+        return offset + formatted.length();
+    }
+
+    /**
+     * 批量格式化时间戳，按时间排序的输入可最大程度复用日期部分
+     *
+     * @param epochMillis 时间戳
+     * @param pattern     格式
+     * @return 与输入一一对应的结果
+     */
+    public static String[] format(long[] epochMillis, String pattern) {
+        if (epochMillis == null) {
+            throw new IllegalArgumentException("epochMillis should not be null!");
+        }
+        String[] result = new String[epochMillis.length];
+        FixedPatternCodec codec = codecOf(pattern);
+        char[] chars = new char[Math.max(codec.maxLength(), 1)];
+        for (int i = 0; i < epochMillis.length; i++) {
+            int end = codec.isSupported() ? codec.format(toLocalMillis(epochMillis[i]), chars, 0) : -1;
+            result[i] = end >= 0 ? new String(chars, 0, end) : format(localDateTimeOf(epochMillis[i]), pattern);
+        }
+        return result;
+    }
+
     public static LocalDateTime localDateTimeOf(Instant instant) {
         return LocalDateTime.ofInstant(instant, defaultZoneId());
     }
 
     public static LocalDateTime localDateTimeOf(long epochMilli) {
-        return localDateTimeOf(Instant.ofEpochMilli(epochMilli));
+        return localDateTimeOf(epochMilli, defaultZoneId());
+    }
+
+    /**
+     * 时间戳在指定时区的本地时间，时区偏移量由缓存的{@link ZoneOffsetConverter}计算
+     *
+     * @param epochMilli 时间戳
+     * @param zoneId     时区，不可为null
+     * @return
+     */
+    public static LocalDateTime localDateTimeOf(long epochMilli, ZoneId zoneId) {
+        long localMillis = ZoneOffsetConverter.of(zoneId).toLocalMillis(epochMilli);
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(localMillis, 1000L),
+                                           (int) Math.floorMod(localMillis, 1000L) * 1_000_000, ZoneOffset.UTC);
     }
 
     public static LocalDate parseDate(String date, String pattern) {
+        FixedPatternCodec codec = codecOf(pattern);
+        if (date != null && codec.hasDate()) {
+            long fields = codec.parse(date);
+            if (fields >= 0) {
+                return LocalDate.of(FixedPatternCodec.yearOf(fields), FixedPatternCodec.monthOf(fields),
+                                    FixedPatternCodec.dayOf(fields));
+            }
+        }
         return LocalDate.parse(date, ofPattern(pattern));
     }
 
     public static LocalDateTime parseDateTime(String dateTime, String pattern) {
+        FixedPatternCodec codec = codecOf(pattern);
+        if (dateTime != null && codec.hasDate() && codec.hasTime()) {
+            long fields = codec.parse(dateTime);
+            if (fields >= 0) {
+                return toLocalDateTime(fields);
+            }
+        }
         return LocalDateTime.parse(dateTime, ofPattern(pattern));
     }
 
+    /**
+     * 解析为时间戳，使用系统默认时区；pattern中没有时间部分时以当天00:00为准
+     *
+     * @param text    文本
+     * @param pattern 格式，需包含年月日
+     * @return 时间戳
+     */
+    public static long parseEpochMilli(CharSequence text, String pattern) {
+        if (text == null) {
+            throw new IllegalArgumentException("text should not be null!");
+        }
+        FixedPatternCodec codec = codecOf(pattern);
+        if (codec.hasDate()) {
+            long fields = codec.parse(text);
+            if (fields >= 0) {
+                return fromLocalFields(fields);
+            }
+        }
+        TemporalAccessor parsed = ofPattern(pattern).parse(text);
+        LocalDate date = LocalDate.from(parsed);
+        LocalTime time = parsed.query(TemporalQueries.localTime());
+        return toEpochMilli(time == null ? date.atStartOfDay() : date.atTime(time));
+    }
+
+    /**
+     * 批量解析为时间戳
+     *
+     * @param texts   文本
+     * @param pattern 格式，需包含年月日
+     * @return 与输入一一对应的时间戳
+     * @see #parseEpochMilli(CharSequence, String)
+     */
+    public static long[] parseEpochMillis(CharSequence[] texts, String pattern) {
+        if (texts == null) {
+            throw new IllegalArgumentException("texts should not be null!");
+        }
+        long[] result = new long[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            result[i] = parseEpochMilli(texts[i], pattern);
+        }
+        return result;
+    }
+
+    private static FixedPatternCodec codecOf(String pattern) {
+        if (pattern == null) {
+            throw new IllegalArgumentException("pattern should not be null!");
+        }
+        return FIXED_PATTERN_CODECS.get(pattern, FixedPatternCodec::compile);
+    }
+
+    private static long toLocalMillis(long epochMilli) {
+        return ZoneOffsetConverter.systemDefault().toLocalMillis(epochMilli);
+    }
+
+    /**
+     * 按系统默认时区将解析出的本地时间转换为时间戳，夏令时的间隙与重叠与{@link LocalDateTime#atZone(ZoneId)}一致
+     */
+    private static long fromLocalFields(long fields) {
+        return ZoneOffsetConverter.systemDefault().toEpochMilli(FixedPatternCodec.localMillisOf(fields));
+    }
+
+    private static LocalDateTime toLocalDateTime(long fields) {
+        return LocalDateTime.of(FixedPatternCodec.yearOf(fields), FixedPatternCodec.monthOf(fields),
+                                FixedPatternCodec.dayOf(fields), FixedPatternCodec.hourOf(fields),
+                                FixedPatternCodec.minuteOf(fields), FixedPatternCodec.secondOf(fields));
+    }
+
     /**
      * 简单过滤一下查询的时间参数，如果没有起止时间，则使用默认的“24小时前~当前”为查询起止时间
      *
@@ -191,4 +528,161 @@ public class ThreeTenUtils {
         return result;
     }
 
+    //============= time buckets =============//
+
+    /**
+     * 时间戳所在时间桶（系统默认时区的本地小时、天、周、月）的起点
+     *
+     * @param epochMilli 时间戳
+     * @param bucket     时间桶
+     * @return 起点的时间戳
+     */
+    public static long bucketStart(long epochMilli, TimeBucket bucket) {
+        return bucketStart(epochMilli, bucket, defaultZoneId());
+    }
+
+    /**
+     * 时间戳所在时间桶的起点，夏令时切换当天的桶可能长于或短于名义长度
+     *
+     * @param epochMilli 时间戳
+     * @param bucket     时间桶
+     * @param zoneId     时区
+     * @return 起点的时间戳
+     */
+    public static long bucketStart(long epochMilli, TimeBucket bucket, ZoneId zoneId) {
+        ZoneOffsetConverter converter = ZoneOffsetConverter.of(zoneId);
+        return converter.toEpochMilli(bucket.localStartOf(bucket.indexOfLocal(converter.toLocalMillis(epochMilli))));
+    }
+
+    /**
+     * 时间戳所在时间桶的序号，相邻的桶序号连续，可直接用作数组下标的偏移
+     *
+     * @param epochMilli 时间戳
+     * @param bucket     时间桶
+     * @param zoneId     时区
+     * @return 序号，以1970-01-01（当地时间）所在的桶为0
+     */
+    public static long bucketIndex(long epochMilli, TimeBucket bucket, ZoneId zoneId) {
+        return bucket.indexOfLocal(ZoneOffsetConverter.of(zoneId).toLocalMillis(epochMilli));
+    }
+
+    /**
+     * 序号对应的时间桶的起点
+     *
+     * @param index  序号
+     * @param bucket 时间桶
+     * @param zoneId 时区
+     * @return 起点的时间戳
+     */
+    public static long bucketStartOfIndex(long index, TimeBucket bucket, ZoneId zoneId) {
+        return ZoneOffsetConverter.of(zoneId).toEpochMilli(bucket.localStartOf(index));
+    }
+
+    /**
+     * 批量计算时间桶的起点，按时间排序的输入只在跨桶时才重新计算，src与dst可以是同一个数组
+     *
+     * @param epochMillis 时间戳
+     * @param bucket      时间桶
+     * @param zoneId      时区
+     * @param starts      写入结果，长度不小于epochMillis
+     */
+    public static void bucketStarts(long[] epochMillis, TimeBucket bucket, ZoneId zoneId, long[] starts) {
+        checkBulk(epochMillis, starts);
+        ZoneOffsetConverter converter = ZoneOffsetConverter.of(zoneId);
+        long start = 0L;
+        long end = Long.MIN_VALUE;
+        for (int i = 0; i < epochMillis.length; i++) {
+            long epochMilli = epochMillis[i];
+            if (epochMilli < start || epochMilli >= end) {
+                long index = bucket.indexOfLocal(converter.toLocalMillis(epochMilli));
+                start = converter.toEpochMilli(bucket.localStartOf(index));
+                end = converter.toEpochMilli(bucket.localStartOf(index + 1));
+            }
+            starts[i] = start;
+        }
+    }
+
+    /**
+     * 批量计算时间桶的序号，src与dst可以是同一个数组
+     *
+     * @param epochMillis 时间戳
+     * @param bucket      时间桶
+     * @param zoneId      时区
+     * @param indices     写入结果，长度不小于epochMillis
+     */
+    public static void bucketIndices(long[] epochMillis, TimeBucket bucket, ZoneId zoneId, long[] indices) {
+        checkBulk(epochMillis, indices);
+        ZoneOffsetConverter converter = ZoneOffsetConverter.of(zoneId);
+        long start = 0L;
+        long end = Long.MIN_VALUE;
+        long index = 0L;
+        for (int i = 0; i < epochMillis.length; i++) {
+            long epochMilli = epochMillis[i];
+            if (epochMilli < start || epochMilli >= end) {
+                index = bucket.indexOfLocal(converter.toLocalMillis(epochMilli));
+                start = converter.toEpochMilli(bucket.localStartOf(index));
+                end = converter.toEpochMilli(bucket.localStartOf(index + 1));
+            }
+            indices[i] = index;
+        }
+    }
+
+    /**
+     * 覆盖[timePoints[0], timePoints[1])的所有时间桶的起点，使用系统默认时区
+     *
+     * @param timePoints 起止时间，通常来自{@link #determineTimePoints(Long, Long)}
+     * @param bucket     时间桶
+     * @return 各桶的起点，升序，第一个可能早于timePoints[0]
+     */
+    public static long[] bucketsBetween(long[] timePoints, TimeBucket bucket) {
+        return bucketsBetween(timePoints, bucket, defaultZoneId());
+    }
+
+    /**
+     * 覆盖[timePoints[0], timePoints[1])的所有时间桶的起点，被夏令时整个跳过的桶不会出现
+     *
+     * @param timePoints 起止时间，通常来自{@link #determineTimePoints(Long, Long)}
+     * @param bucket     时间桶
+     * @param zoneId     时区
+     * @return 各桶的起点，升序，第一个可能早于timePoints[0]
+     */
+    public static long[] bucketsBetween(long[] timePoints, TimeBucket bucket, ZoneId zoneId) {
+        if (timePoints == null || timePoints.length < 2) {
+            throw new IllegalArgumentException("timePoints should have start and end!");
+        }
+        if (bucket == null) {
+            throw new IllegalArgumentException("bucket should not be null!");
+        }
+        long from = timePoints[0];
+        long to = timePoints[1];
+        if (from >= to) {
+            return new long[0];
+        }
+        ZoneOffsetConverter converter = ZoneOffsetConverter.of(zoneId);
+        long first = bucket.indexOfLocal(converter.toLocalMillis(from));
+        long last = bucket.indexOfLocal(converter.toLocalMillis(to - 1));
+        if (last - first >= Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("too many buckets between " + from + " and " + to);
+        }
+        long[] starts = new long[(int) (last - first + 1)];
+        int count = 0;
+        for (long index = first; index <= last; index++) {
+            long start = converter.toEpochMilli(bucket.localStartOf(index));
+            // a unit skipped by a gap starts where the next one does
+            if (count == 0 || start > starts[count - 1]) {
+                starts[count++] = start;
+            }
+        }
+        return count == starts.length ? starts : Arrays.copyOf(starts, count);
+    }
+
+    private static void checkBulk(long[] src, long[] dst) {
+        if (src == null || dst == null) {
+            throw new IllegalArgumentException("arrays should not be null!");
+        }
+        if (dst.length < src.length) {
+            throw new IllegalArgumentException("dst is shorter than src!");
+        }
+    }
+
 }
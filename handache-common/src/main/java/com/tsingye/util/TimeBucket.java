@@ -0,0 +1,83 @@
+package com.tsingye.util;
+
+import java.time.LocalDate;
+
+/**
+ * calendar buckets in local time for aggregation, see {@link ThreeTenUtils#bucketStart(long, TimeBucket)}.
+ * <p>A bucket index is the ordinal of the local calendar unit counted from 1970-01-01 (a week starts on Monday), so
+ * indices of a range are contiguous. A bucket holds every instant whose local time falls into its unit: the repeated
+ * hour of an overlap stays in one bucket, and a unit skipped entirely by a gap has no instant at all.</p>
+ */
+public enum TimeBucket {
+
+    HOUR {
+        @Override
+        long indexOfLocal(long localMillis) {
+            return Math.floorDiv(localMillis, MILLIS_PER_HOUR);
+        }
+
+        @Override
+        long localStartOf(long index) {
+            return index * MILLIS_PER_HOUR;
+        }
+    },
+
+    DAY {
+        @Override
+        long indexOfLocal(long localMillis) {
+            return Math.floorDiv(localMillis, FixedPatternCodec.MILLIS_PER_DAY);
+        }
+
+        @Override
+        long localStartOf(long index) {
+            return index * FixedPatternCodec.MILLIS_PER_DAY;
+        }
+    },
+
+    WEEK {
+        @Override
+        long indexOfLocal(long localMillis) {
+            // 1970-01-01 is a Thursday
+            return Math.floorDiv(Math.floorDiv(localMillis, FixedPatternCodec.MILLIS_PER_DAY) + 3L, 7L);
+        }
+
+        @Override
+        long localStartOf(long index) {
+            return (index * 7L - 3L) * FixedPatternCodec.MILLIS_PER_DAY;
+        }
+    },
+
+    MONTH {
+        @Override
+        long indexOfLocal(long localMillis) {
+            long epochDay = Math.floorDiv(localMillis, FixedPatternCodec.MILLIS_PER_DAY);
+            long date = FixedPatternCodec.civilOf(epochDay);
+            if (date < 0) {
+                LocalDate localDate = LocalDate.ofEpochDay(epochDay);
+                return (localDate.getYear() - 1970L) * 12L + localDate.getMonthValue() - 1;
+            }
+            return (FixedPatternCodec.yearOf(date) - 1970L) * 12L + FixedPatternCodec.monthOf(date) - 1;
+        }
+
+        @Override
+        long localStartOf(long index) {
+            int year = Math.toIntExact(1970L + Math.floorDiv(index, 12L));
+            int month = (int) Math.floorMod(index, 12L) + 1;
+            return FixedPatternCodec.epochDayOf(year, month, 1) * FixedPatternCodec.MILLIS_PER_DAY;
+        }
+    };
+
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+
+    /**
+     * @param localMillis local epoch millis
+     * @return the bucket index
+     */
+    abstract long indexOfLocal(long localMillis);
+
+    /**
+     * @param index the bucket index
+     * @return local epoch millis the bucket starts at
+     */
+    abstract long localStartOf(long index);
+}
@@ -0,0 +1,306 @@
+package com.tsingye.util;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoField;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * converts between epoch millis and local millis (epoch millis plus the zone offset) of one zone, by arithmetic.
+ * <p>The transitions of the zone's {@link ZoneRules} up to {@link #TABLE_END_YEAR} are unrolled into primitive arrays
+ * once, a conversion is a binary search plus an addition. Beyond the table it falls back to {@link ZoneRules}.
+ * A zone of fixed offset needs no table at all.</p>
+ * <p>Local times in a gap or an overlap are resolved as {@link LocalDateTime#atZone(ZoneId)} does: shifted later by
+ * the length of the gap, or the earlier offset in an overlap.</p>
+ */
+public final class ZoneOffsetConverter {
+
+    /**
+     * transitions are unrolled till the beginning of this year
+     */
+    static final int TABLE_END_YEAR = 2100;
+
+    private static final int MAX_CACHED_ZONES = 64;
+
+    private static final BoundedCache<ZoneId, ZoneOffsetConverter> CONVERTERS = new BoundedCache<>(MAX_CACHED_ZONES);
+
+    private static volatile ZoneOffsetConverter lastDefault;
+
+    private final ZoneId zone;
+
+    private final ZoneRules rules;
+
+    /**
+     * the offset if fixed
+     */
+    private final int fixedOffset;
+
+    private final boolean fixed;
+
+    /**
+     * epoch seconds of transitions, ascending
+     */
+    private final long[] transitions;
+
+    private final int[] offsetsBefore;
+
+    private final int[] offsetsAfter;
+
+    /**
+     * local epoch seconds of transitions by the smaller one of the offsets, for the local to epoch search
+     */
+    private final long[] localTransitions;
+
+    /**
+     * epoch seconds the table is valid within, [tableStart, tableEnd)
+     */
+    private final long tableStart;
+
+    private final long tableEnd;
+
+    private ZoneOffsetConverter(ZoneId zone) {
+        this.zone = zone;
+        this.rules = zone.getRules();
+        this.fixed = rules.isFixedOffset();
+        this.fixedOffset = fixed ? rules.getOffset(Instant.EPOCH).getTotalSeconds() : 0;
+        if (fixed) {
+            this.transitions = new long[0];
+            this.offsetsBefore = new int[0];
+            this.offsetsAfter = new int[0];
+            this.localTransitions = new long[0];
+            this.tableStart = Long.MIN_VALUE;
+            this.tableEnd = Long.MAX_VALUE;
+            return;
+        }
+        long end = LocalDateTime.of(TABLE_END_YEAR, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC) - 2 * 86400L;
+        List<ZoneOffsetTransition> history = rules.getTransitions();
+        int count = 0;
+        long[] seconds = new long[history.size() + 512];
+        int[] befores = new int[seconds.length];
+        int[] afters = new int[seconds.length];
+        // a zone of rules only has no history, its rules also apply before the first transition we see
+        ZoneOffsetTransition transition = history.isEmpty() ? rules.nextTransition(Instant.EPOCH) : history.get(0);
+        int historyIndex = 0;
+        while (transition != null && transition.toEpochSecond() < end) {
+            if (count == seconds.length) {
+                seconds = Arrays.copyOf(seconds, count << 1);
+                befores = Arrays.copyOf(befores, count << 1);
+                afters = Arrays.copyOf(afters, count << 1);
+            }
+            seconds[count] = transition.toEpochSecond();
+            befores[count] = transition.getOffsetBefore().getTotalSeconds();
+            afters[count] = transition.getOffsetAfter().getTotalSeconds();
+            count++;
+            if (++historyIndex < history.size()) {
+                transition = history.get(historyIndex);
+            } else {
+                transition = rules.nextTransition(transition.getInstant());
+            }
+        }
+        this.transitions = Arrays.copyOf(seconds, count);
+        this.offsetsBefore = Arrays.copyOf(befores, count);
+        this.offsetsAfter = Arrays.copyOf(afters, count);
+        this.localTransitions = new long[count];
+        for (int i = 0; i < count; i++) {
+            localTransitions[i] = transitions[i] + Math.min(offsetsBefore[i], offsetsAfter[i]);
+        }
+        this.tableStart = history.isEmpty() && count > 0 ? transitions[0] : Long.MIN_VALUE;
+        this.tableEnd = end;
+    }
+
+    /**
+     * @param zone the zone
+     * @return the converter, cached
+     */
+    public static ZoneOffsetConverter of(ZoneId zone) {
+        if (zone == null) {
+            throw new IllegalArgumentException("zone should not be null!");
+        }
+        return CONVERTERS.get(zone, ZoneOffsetConverter::new);
+    }
+
+    /**
+     * @return the converter of {@link ZoneId#systemDefault()}, which is checked in each call
+     */
+    public static ZoneOffsetConverter systemDefault() {
+        ZoneId zone = ZoneId.systemDefault();
+        ZoneOffsetConverter converter = lastDefault;
+        if (converter == null || !converter.zone.equals(zone)) {
+            converter = of(zone);
+            lastDefault = converter;
+        }
+        return converter;
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    //============= epoch to local =============//
+
+    /**
+     * @param epochSecond epoch seconds
+     * @return the offset in seconds at the instant
+     */
+    public int offsetSecondsAt(long epochSecond) {
+        if (fixed) {
+            return fixedOffset;
+        }
+        if (epochSecond < tableStart || epochSecond >= tableEnd || transitions.length == 0) {
+            return rules.getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds();
+        }
+        int index = lastAtOrBefore(transitions, epochSecond);
+        return index < 0 ? offsetsBefore[0] : offsetsAfter[index];
+    }
+
+    /**
+     * @param epochMilli epoch millis
+     * @return epoch millis plus the offset at the instant
+     */
+    public long toLocalMillis(long epochMilli) {
+        return epochMilli + offsetSecondsAt(Math.floorDiv(epochMilli, 1000L)) * 1000L;
+    }
+
+    /**
+     * convert in bulk, src and dst may be the same array
+     *
+     * @param epochMillis epoch millis
+     * @param localMillis where to put local millis, at least as long as epochMillis
+     */
+    public void toLocalMillis(long[] epochMillis, long[] localMillis) {
+        if (localMillis.length < epochMillis.length) {
+            throw new IllegalArgumentException("localMillis is shorter than epochMillis!");
+        }
+        for (int i = 0; i < epochMillis.length; i++) {
+            localMillis[i] = toLocalMillis(epochMillis[i]);
+        }
+    }
+
+    /**
+     * split epoch millis into local fields
+     *
+     * @param epochMilli epoch millis
+     * @param fields     where to put year, month, day, hour, minute, second and millis, at least 7 long
+     */
+    public void localFieldsOf(long epochMilli, int[] fields) {
+        if (fields.length < 7) {
+            throw new IllegalArgumentException("fields should have 7 slots at least!");
+        }
+        long localMillis = toLocalMillis(epochMilli);
+        long epochDay = Math.floorDiv(localMillis, FixedPatternCodec.MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(localMillis, FixedPatternCodec.MILLIS_PER_DAY);
+        long date = FixedPatternCodec.civilOf(epochDay);
+        if (date < 0) {
+            // out of 0~9999, rare enough
+            LocalDateTime dateTime = LocalDateTime.ofEpochSecond(Math.floorDiv(localMillis, 1000L), 0, ZoneOffset.UTC);
+            fields[0] = dateTime.getYear();
+            fields[1] = dateTime.getMonthValue();
+            fields[2] = dateTime.getDayOfMonth();
+        } else {
+            fields[0] = FixedPatternCodec.yearOf(date);
+            fields[1] = FixedPatternCodec.monthOf(date);
+            fields[2] = FixedPatternCodec.dayOf(date);
+        }
+        fields[3] = millisOfDay / 3_600_000;
+        fields[4] = millisOfDay / 60_000 % 60;
+        fields[5] = millisOfDay / 1000 % 60;
+        fields[6] = millisOfDay % 1000;
+    }
+
+    //============= local to epoch =============//
+
+    /**
+     * @param localEpochSecond local epoch seconds
+     * @return the epoch seconds, the gap and overlap resolved as {@link LocalDateTime#atZone(ZoneId)} does
+     */
+    public long toEpochSecond(long localEpochSecond) {
+        if (fixed) {
+            return localEpochSecond - fixedOffset;
+        }
+        if (localEpochSecond < tableStart + 86400L || localEpochSecond >= tableEnd || transitions.length == 0) {
+            return LocalDateTime.ofEpochSecond(localEpochSecond, 0, ZoneOffset.UTC).atZone(zone).toEpochSecond();
+        }
+        int index = lastAtOrBefore(localTransitions, localEpochSecond);
+        if (index < 0) {
+            return localEpochSecond - offsetsBefore[0];
+        }
+        int before = offsetsBefore[index];
+        long transition = transitions[index];
+        if (localEpochSecond - before < transition || localEpochSecond - offsetsAfter[index] < transition) {
+            // still before the transition, or in the overlap (the earlier offset), or in the gap (shifted later)
+            return localEpochSecond - before;
+        }
+        return localEpochSecond - offsetsAfter[index];
+    }
+
+    /**
+     * @param localMillis local epoch millis
+     * @return the epoch millis
+     */
+    public long toEpochMilli(long localMillis) {
+        long localSecond = Math.floorDiv(localMillis, 1000L);
+        return toEpochSecond(localSecond) * 1000L + (localMillis - localSecond * 1000L);
+    }
+
+    /**
+     * @return the epoch millis of the local date-time
+     * @throws DateTimeException if any field is invalid
+     */
+    public long toEpochMilli(int year, int month, int day, int hour, int minute, int second, int millis) {
+        ChronoField.YEAR.checkValidValue(year);
+        ChronoField.MONTH_OF_YEAR.checkValidValue(month);
+        ChronoField.DAY_OF_MONTH.checkValidValue(day);
+        ChronoField.HOUR_OF_DAY.checkValidValue(hour);
+        ChronoField.MINUTE_OF_HOUR.checkValidValue(minute);
+        ChronoField.SECOND_OF_MINUTE.checkValidValue(second);
+        ChronoField.MILLI_OF_SECOND.checkValidValue(millis);
+        if (day > FixedPatternCodec.lengthOfMonth(year, month)) {
+            throw new DateTimeException("Invalid date: " + year + "-" + month + "-" + day);
+        }
+        long localSecond = FixedPatternCodec.epochDayOf(year, month, day) * 86400L + hour * 3600 + minute * 60 + second;
+        return toEpochSecond(localSecond) * 1000L + millis;
+    }
+
+    /**
+     * convert in bulk, src and dst may be the same array
+     *
+     * @param localMillis local epoch millis
+     * @param epochMillis where to put epoch millis, at least as long as localMillis
+     */
+    public void toEpochMillis(long[] localMillis, long[] epochMillis) {
+        if (epochMillis.length < localMillis.length) {
+            throw new IllegalArgumentException("epochMillis is shorter than localMillis!");
+        }
+        for (int i = 0; i < localMillis.length; i++) {
+            epochMillis[i] = toEpochMilli(localMillis[i]);
+        }
+    }
+
+    /**
+     * @return index of the last element not greater than key, -1 if none
+     */
+    private static int lastAtOrBefore(long[] sorted, long key) {
+        int low = 0;
+        int high = sorted.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] <= key) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    @Override
+    public String toString() {
+        return "ZoneOffsetConverter{" + zone + ", transitions=" + transitions.length + '}';
+    }
+}
@@ -0,0 +1,77 @@
+package com.tsingye.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * test cases for {@link EncodedResponse} and the shared {@link RestResponse}s
+ */
+public class EncodedResponseTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final JsonWriter writer = new JsonWriter((value, out) -> mapper.writeValue(out, value));
+
+    private enum Code implements StatusCode {
+        NOT_FOUND(404, "not found"), INVALID(400, "\"invalid\" 参数");
+
+        private final int statusCode;
+
+        private final String message;
+
+        Code(int statusCode, String message) {
+            this.statusCode = statusCode;
+            this.message = message;
+        }
+
+        @Override
+        public int statusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public String message() {
+            return message;
+        }
+    }
+
+    @Test
+    public void testEncoded() throws Exception {
+        for (Code code : Code.values()) {
+            EncodedResponse response = EncodedResponse.of(code);
+            Assert.assertSame(response, EncodedResponse.of(code));
+            String expected = mapper.writeValueAsString(new ErrorResponse(code));
+            Assert.assertEquals(expected, response.toString());
+            Assert.assertEquals(expected, mapper.writeValueAsString(response));
+            Assert.assertEquals(expected, new String(writer.toBytes(response), StandardCharsets.UTF_8));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            response.writeTo(out);
+            Assert.assertEquals(expected, out.toString("UTF-8"));
+            ByteBuffer buffer = ByteBuffer.allocate(response.length());
+            response.writeTo(buffer);
+            Assert.assertEquals(response.toByteBuffer(), buffer.flip());
+        }
+        Assert.assertEquals("{\"status\":0,\"message\":\"OK\"}", EncodedResponse.OK.toString());
+        Assert.assertEquals("{\"status\":-1,\"message\":\"Error\"}", EncodedResponse.ERROR.toString());
+    }
+
+    @Test
+    public void testSharedImmutable() throws Exception {
+        for (RestResponse<?> response : new RestResponse<?>[]{RestResponse.OK, RestResponse.ERROR}) {
+            Assert.assertEquals(mapper.writeValueAsString(response),
+                                new String(writer.toBytes(response), StandardCharsets.UTF_8));
+            try {
+                response.setMessage("changed");
+                Assert.fail();
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+        }
+        Assert.assertEquals("OK", RestResponse.OK.getMessage());
+    }
+}
@@ -0,0 +1,100 @@
+package com.tsingye.common;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+
+/**
+ * test cases for {@link ErrorRegistry} and stackless {@link RestException}s
+ */
+public class ErrorRegistryTest {
+
+    private enum Code implements StatusCode {
+        NOT_FOUND(404, "not found", true), INTERNAL(500, "internal error", false);
+
+        private final int statusCode;
+
+        private final String message;
+
+        private final boolean stackless;
+
+        Code(int statusCode, String message, boolean stackless) {
+            this.statusCode = statusCode;
+            this.message = message;
+            this.stackless = stackless;
+        }
+
+        @Override
+        public int statusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public String message() {
+            return message;
+        }
+
+        @Override
+        public boolean stackless() {
+            return stackless;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        ErrorRegistry.setStackSampling(0);
+        ErrorRegistry.reset();
+    }
+
+    @Test
+    public void testStackless() {
+        ErrorRegistry.reset();
+        RestException e = new RestException(Code.NOT_FOUND);
+        Assert.assertEquals(0, e.getStackTrace().length);
+        Assert.assertEquals("not found", e.getMessage());
+        Assert.assertSame(Code.NOT_FOUND, e.getStatusCode());
+        Assert.assertTrue(new RestException(Code.INTERNAL).getStackTrace().length > 0);
+        Assert.assertTrue(new RestException("plain").getStackTrace().length > 0);
+        ErrorRegistry.setStackSampling(1);
+        Assert.assertTrue(new RestException(Code.NOT_FOUND, "sampled").getStackTrace().length > 0);
+
+        Assert.assertEquals(2, ErrorRegistry.count(Code.NOT_FOUND));
+        Assert.assertEquals(1, ErrorRegistry.count(Code.INTERNAL));
+        Assert.assertEquals(2D / 60, ErrorRegistry.rate(Code.NOT_FOUND), 1e-9);
+        Assert.assertEquals(Long.valueOf(2L), ErrorRegistry.counts().get("404 NOT_FOUND"));
+    }
+
+    @Test
+    public void testNullStatusCode() {
+        ErrorRegistry.reset();
+        RestException e = new RestException((StatusCode) null, "msg");
+        Assert.assertNull(e.getStatusCode());
+        Assert.assertEquals("msg", e.getMessage());
+        Assert.assertTrue(e.getStackTrace().length > 0);
+        Throwable cause = new IllegalStateException();
+        Assert.assertSame(cause, new RestException(null, "msg", cause).getCause());
+        Assert.assertTrue(ErrorRegistry.counts().isEmpty());
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        ErrorRegistry.reset();
+        for (int i = 0; i < 3; i++) {
+            new RestException(Code.INTERNAL, "boom", new IllegalStateException());
+        }
+        ObjectName name = ErrorRegistry.registerMBean();
+        Assert.assertEquals(name, ErrorRegistry.registerMBean());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Assert.assertEquals(3L, server.getAttribute(name, "TotalCount"));
+        TabularData counts = (TabularData) server.getAttribute(name, "Counts");
+        Assert.assertEquals(3L, counts.get(new Object[]{"500 INTERNAL"}).get("value"));
+        server.setAttribute(name, new Attribute("StackSampling", 10));
+        Assert.assertEquals(10, ErrorRegistry.getStackSampling());
+    }
+}
@@ -0,0 +1,150 @@
+package com.tsingye.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * test cases for {@link JsonData}, compared with {@link LinkedHashMap}
+ */
+public class JsonDataTest {
+
+    @Test
+    public void testBehavesAsLinkedHashMap() {
+        Random random = new Random(19L);
+        for (int keyCount : new int[]{4, 16, 100}) {
+            JsonData data = new JsonData();
+            Map<String, Object> expected = new LinkedHashMap<>();
+            for (int i = 0; i < 5000; i++) {
+                String key = "k" + random.nextInt(keyCount);
+                switch (random.nextInt(6)) {
+                    case 0:
+                        Assert.assertEquals(expected.remove(key), data.remove(key));
+                        break;
+                    case 1:
+                        long l = random.nextLong();
+                        expected.put(key, l);
+                        data.append(key, l);
+                        break;
+                    case 2:
+                        int n = random.nextInt();
+                        expected.put(key, n);
+                        data.append(key, n);
+                        break;
+                    case 3:
+                        double d = random.nextDouble();
+                        expected.put(key, d);
+                        data.append(key, d);
+                        break;
+                    default:
+                        String s = random.nextBoolean() ? null : "v" + i;
+                        Assert.assertEquals(expected.put(key, s), data.put(key, s));
+                        break;
+                }
+                Assert.assertEquals(expected.size(), data.size());
+                Assert.assertEquals(expected.get(key), data.get(key));
+                Assert.assertEquals(expected.containsKey(key), data.containsField(key));
+            }
+            Assert.assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(data.entrySet()));
+            Assert.assertEquals(expected, data);
+            Assert.assertEquals(data, expected);
+            Assert.assertEquals(expected.hashCode(), data.hashCode());
+            Assert.assertEquals(expected.toString(), data.toString());
+            // remove every other entry through the iterator
+            Iterator<Map.Entry<String, Object>> it = data.entrySet().iterator();
+            Iterator<Map.Entry<String, Object>> expectedIt = expected.entrySet().iterator();
+            for (boolean drop = true; it.hasNext(); drop = !drop) {
+                Assert.assertEquals(expectedIt.next(), it.next());
+                if (drop) {
+                    it.remove();
+                    expectedIt.remove();
+                }
+            }
+            Assert.assertEquals(expected, data);
+            data.clear();
+            Assert.assertTrue(data.isEmpty());
+        }
+    }
+
+    @Test
+    public void testTypedGettersAndCopies() throws Exception {
+        JsonData data = new JsonData().append("i", 7).append("l", 1L << 40).append("d", 0.5D).append("s", "x");
+        Assert.assertEquals(7, data.getInt("i", -1));
+        Assert.assertEquals(7L, data.getLong("i", -1L));
+        Assert.assertEquals(1L << 40, data.getLong("l", -1L));
+        Assert.assertEquals(0.5D, data.getDouble("d", -1D), 0.0D);
+        Assert.assertEquals(-1L, data.getLong("absent", -1L));
+        Assert.assertEquals(Integer.valueOf(7), data.getInteger("i", null));
+        Assert.assertEquals(Long.valueOf(1L << 40), data.getLong("l", (Long) null));
+        Assert.assertEquals("x", data.getString("s", null));
+        Assert.assertEquals((Object) 7, data.get("i"));
+
+        JsonData copy = data.clone();
+        copy.append("i", 8);
+        Assert.assertEquals(7, data.getInt("i", -1));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(data);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Assert.assertEquals(data, in.readObject());
+        }
+        Assert.assertEquals(data, new JsonData(data.toMap()));
+    }
+
+    @Test
+    public void testNarrowPrimitivesKeepTheirTypes() throws Exception {
+        JsonData data = new JsonData().append("c", 'x')
+                                      .append("b", (byte) 1)
+                                      .append("s", (short) 2)
+                                      .append("f", 0.5F);
+        Assert.assertEquals(Character.valueOf('x'), data.get("c"));
+        Assert.assertEquals(Byte.valueOf((byte) 1), data.get("b"));
+        Assert.assertEquals(Short.valueOf((short) 2), data.get("s"));
+        Assert.assertEquals(Float.valueOf(0.5F), data.get("f"));
+        Assert.assertEquals("{\"c\":\"x\",\"b\":1,\"s\":2,\"f\":0.5}",
+                new String(new JsonWriter().toBytes(data), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testLayoutFallback() {
+        // id-like keys, each layout seen by one map
+        List<JsonData> alive = new ArrayList<>();
+        long fallbacks = JsonData.layoutFallbacks();
+        for (int i = 0; i < 256 && JsonData.layoutFallbacks() == fallbacks; i++) {
+            for (int j = 0; j < 256; j++) {
+                JsonData data = new JsonData().append("f" + i, i).append("s" + j, j);
+                alive.add(data);
+            }
+        }
+        Assert.assertTrue(JsonData.layoutFallbacks() > fallbacks);
+        // a dictionary now, still a map
+        JsonData full = new JsonData().append("x", 1).append("y", 2);
+        Assert.assertEquals(2, full.getInt("y", 0));
+        int last = (alive.size() - 1) % 256;
+        Assert.assertEquals(last, alive.get(alive.size() - 1).getInt("s" + last, -1));
+
+        // collected with their maps, the budget is back
+        alive.clear();
+        boolean shared = false;
+        for (int i = 0; i < 50 && !shared; i++) {
+            System.gc();
+            fallbacks = JsonData.layoutFallbacks();
+            new JsonData().append("after", i).append("gc", i);
+            shared = JsonData.layoutFallbacks() == fallbacks;
+        }
+        Assert.assertTrue(shared);
+    }
+}
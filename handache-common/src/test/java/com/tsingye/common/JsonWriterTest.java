@@ -0,0 +1,124 @@
+package com.tsingye.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * test cases for {@link JsonWriter}, compared with Jackson's default output
+ */
+public class JsonWriterTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final JsonWriter writer = new JsonWriter((value, out) -> mapper.writeValue(out, value));
+
+    @Test
+    public void testSameAsJackson() throws Exception {
+        Random random = new Random(23L);
+        for (int i = 0; i < 500; i++) {
+            Object value = randomValue(random, 0);
+            String expected = mapper.writeValueAsString(value);
+            Assert.assertEquals(expected, new String(writer.toBytes(value), StandardCharsets.UTF_8));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writer.write(value, out);
+            Assert.assertEquals(expected, out.toString("UTF-8"));
+        }
+        List<Object> responses = Arrays.asList(
+                new RestResponse<>(0, "OK", new JsonData().append("count", 3L).append("ratio", 0.25D)),
+                RestResponse.error(),
+                new RestResponse<>(1, "\"quoted\" 中文 😀", Arrays.asList(1, 2.5F, null)),
+                new ErrorResponse(404, "not found"),
+                new RestResponse<>(0, "OK", UUID.nameUUIDFromBytes(new byte[]{1})),
+                new RestResponse<>(0, "OK", TimeUnit.SECONDS),
+                new RestResponse<>(0, "OK", new Date(1_490_000_000_000L)));
+        for (Object response : responses) {
+            Assert.assertEquals(mapper.writeValueAsString(response),
+                                new String(writer.toBytes(response), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testTargets() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append("é中\n");
+        }
+        JsonData data = new JsonData().append("big", sb.toString()).append("n", Long.MIN_VALUE);
+        byte[] expected = mapper.writeValueAsBytes(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(data, out);
+        Assert.assertArrayEquals(expected, out.toByteArray());
+        ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+        Assert.assertEquals(expected.length, writer.write(data, buffer));
+        Assert.assertArrayEquals(expected, buffer.array());
+        try {
+            new JsonWriter().toBytes(UUID.randomUUID());
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+            // expected, no fallback
+        }
+    }
+
+    private static Object randomValue(Random random, int depth) {
+        switch (random.nextInt(depth > 3 ? 8 : 11)) {
+            case 0:
+                return null;
+            case 1:
+                return random.nextInt();
+            case 2:
+                return random.nextLong() >> random.nextInt(64);
+            case 3:
+                return random.nextBoolean() ? random.nextDouble() * 1e6 : (double) random.nextInt(1000);
+            case 4:
+                return random.nextBoolean();
+            case 5:
+                StringBuilder sb = new StringBuilder();
+                for (int i = random.nextInt(20); i > 0; i--) {
+                    sb.append((char) (random.nextBoolean() ? random.nextInt(128) : random.nextInt(0xD800)));
+                }
+                return sb.toString();
+            case 6:
+                return new BigDecimal(random.nextInt()).movePointLeft(random.nextInt(5));
+            case 7:
+                return random.nextFloat();
+            case 8:
+                JsonData data = new JsonData();
+                for (int i = random.nextInt(6); i > 0; i--) {
+                    String key = "k" + random.nextInt(8);
+                    if (random.nextBoolean()) {
+                        data.append(key, random.nextLong());
+                    } else {
+                        data.put(key, randomValue(random, depth + 1));
+                    }
+                }
+                return data;
+            case 9:
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    map.put("m\t" + i, randomValue(random, depth + 1));
+                }
+                return map;
+            default:
+                List<Object> list = new ArrayList<>();
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    list.add(randomValue(random, depth + 1));
+                }
+                return random.nextBoolean() ? list : new RestResponse<>(random.nextInt(3), "m", list);
+        }
+    }
+}
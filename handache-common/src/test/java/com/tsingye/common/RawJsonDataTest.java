@@ -0,0 +1,111 @@
+package com.tsingye.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * test cases for {@link RawJsonData}, compared with Jackson's untyped maps
+ */
+public class RawJsonDataTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final JsonWriter writer = new JsonWriter((value, out) -> mapper.writeValue(out, value));
+
+    private static final String JSON = " {\"id\" : 42, \"big\":12345678901, \"huge\":123456789012345678901234,"
+            + " \"ratio\":-1.5e-3, \"name\":\"a\\\"b\\u00e9\\n中\", \"ok\":true, \"none\":null,"
+            + " \"list\":[1, \"x\", [], {\"k\":2.50}], \"nested\":{\"a\":{\"b\":[false]}, \"c\":\"d\"}, \"empty\":{}}\n";
+
+    @Test
+    public void testSameAsJackson() throws Exception {
+        byte[] bytes = JSON.getBytes(StandardCharsets.UTF_8);
+        Map<?, ?> expected = mapper.readValue(bytes, LinkedHashMap.class);
+        Assert.assertEquals(expected, RawJsonData.of(bytes));
+        Assert.assertEquals(expected, RawJsonData.of(ByteBuffer.wrap(bytes)));
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 2);
+        direct.put((byte) ' ').put(bytes).flip();
+        direct.position(1);
+        Assert.assertEquals(expected, RawJsonData.of(direct));
+        Assert.assertEquals(1, direct.position());
+
+        RawJsonData data = RawJsonData.of(bytes);
+        Assert.assertEquals(42, data.getInt("id", 0));
+        Assert.assertEquals(12345678901L, data.getLong("big", 0L));
+        Assert.assertEquals(-1.5e-3, data.getDouble("ratio", 0D), 0D);
+        Assert.assertEquals("a\"bé\n中", data.getString("name", null));
+        Assert.assertEquals(-1, data.getInt("none", -1));
+        Assert.assertTrue(data.get("nested") instanceof RawJsonData);
+        Assert.assertEquals(expected, data);
+
+        for (String malformed : new String[]{"", "[]", "{", "{\"a\"}", "{\"a\":1,}", "{\"a\":01}", "{} x",
+                "{\"a\":tru}", "{\"a\":[1 2]}", "{\"a\":{\"b\":[1,,2]}}", "{\"a\":{\"b\" 1}}", "{\"a\":[tru]}",
+                "{\"a\":{\"x\":\"\\q\"}}", "{\"a\":\"\\q\"}", "{\"a\":[\"\\u12\"]}", "{\"a\":{\"b\":1,}}", "{\"a\":[1,]}",
+                "{\"a\":[{]}", "{\"a\":{\"b\":[}}", "{\"a\":\"x\ty\"}", "{\"a\":[01]}"}) {
+            try {
+                // rejected up front, not when the bad value is read
+                RawJsonData.of(malformed.getBytes(StandardCharsets.UTF_8));
+                Assert.fail(malformed);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testDeepNesting() {
+        StringBuilder sb = new StringBuilder("{\"a\":");
+        for (int i = 0; i < 100_000; i++) {
+            sb.append('[');
+        }
+        try {
+            RawJsonData.of(sb.toString().getBytes(StandardCharsets.UTF_8));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("deeper"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testWrite() throws Exception {
+        byte[] bytes = JSON.getBytes(StandardCharsets.UTF_8);
+        RawJsonData data = RawJsonData.of(bytes);
+        Assert.assertEquals(JSON.trim(), new String(writer.toBytes(data), StandardCharsets.UTF_8));
+        data.getInt("id", 0);
+        data.get("nested");
+        Assert.assertTrue(data.isUnmodified());
+        Assert.assertEquals(JSON.trim(), new String(writer.toBytes(data), StandardCharsets.UTF_8));
+
+        // a nested change is seen from the outside
+        ((RawJsonData) data.get("nested")).put("c", "e");
+        Assert.assertFalse(data.isUnmodified());
+        Map<String, Object> expected = mapper.readValue(bytes, LinkedHashMap.class);
+        ((Map<String, Object>) expected.get("nested")).put("c", "e");
+        // untouched values are still copied as they are
+        Assert.assertEquals(mapper.readTree(mapper.writeValueAsString(expected)), mapper.readTree(writer.toBytes(data)));
+        Assert.assertTrue(new String(writer.toBytes(data), StandardCharsets.UTF_8).contains("\"ratio\":-1.5e-3,"));
+
+        // values handed out may be changed
+        data = RawJsonData.of(bytes);
+        ((List<Object>) data.get("list")).add(3);
+        Assert.assertFalse(data.isUnmodified());
+
+        data = RawJsonData.of(bytes);
+        data.append("count", 7L);
+        data.remove("huge");
+        expected = mapper.readValue(bytes, LinkedHashMap.class);
+        expected.put("count", 7L);
+        expected.remove("huge");
+        Assert.assertEquals(expected, data);
+        Assert.assertEquals(mapper.readTree(mapper.writeValueAsString(expected)),
+                            mapper.readTree(writer.toBytes(data)));
+        Assert.assertEquals(expected, data.clone());
+    }
+}
@@ -0,0 +1,92 @@
+package com.tsingye.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * test cases for {@link BlockingQueueSplitter}
+ */
+public class BlockingQueueSplitterTest {
+
+    /**
+     * never produced, the items are in [0, count)
+     */
+    private static final Integer PILL = Integer.valueOf(Integer.MIN_VALUE);
+
+    private static BlockingQueue<Integer> queueOf(int count) {
+        BlockingQueue<Integer> queue = new LinkedBlockingQueue<>();
+        IntStream.range(0, count).forEach(queue::add);
+        return queue;
+    }
+
+    @Test
+    public void testBatchStreamEndsOnIdle() {
+        List<List<Integer>> batches = BlockingQueueSplitter.batchStream(queueOf(10), 4, 10, TimeUnit.MILLISECONDS)
+                                                           .collect(Collectors.toList());
+        Assert.assertEquals(3, batches.size());
+        Assert.assertEquals(4, batches.get(0).size());
+        Assert.assertEquals(2, batches.get(2).size());
+    }
+
+    @Test
+    public void testDrainingStreamKeepsOrder() {
+        List<Integer> actual = BlockingQueueSplitter.drainingStream(queueOf(1000), 64, 10, TimeUnit.MILLISECONDS)
+                                                    .collect(Collectors.toList());
+        Assert.assertEquals(IntStream.range(0, 1000).boxed().collect(Collectors.toList()), actual);
+    }
+
+    @Test
+    public void testPoisonPill() {
+        BlockingQueue<Integer> queue = queueOf(5);
+        queue.add(PILL);
+        queue.add(100);
+        long count = BlockingQueueSplitter.drainingStream(queue, 3, 1, TimeUnit.MINUTES, PILL, null).count();
+        Assert.assertEquals(5, count);
+    }
+
+    @Test(timeout = 5000L)
+    public void testStopSignal() throws Exception {
+        BlockingQueue<Integer> queue = new ArrayBlockingQueue<>(16);
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread producer = new Thread(() -> {
+            try {
+                queue.put(1);
+                queue.put(2);
+                Thread.sleep(100L);
+            } catch (InterruptedException ignored) {
+                // just exit
+            }
+            stop.set(true);
+        });
+        producer.start();
+        long count = BlockingQueueSplitter.drainingStream(queue, 8, 1, TimeUnit.HOURS, null, stop::get).count();
+        producer.join();
+        Assert.assertEquals(2, count);
+    }
+
+    @Test
+    public void testParallelDrainingStream() {
+        long sum = BlockingQueueSplitter.drainingStream(queueOf(100000), 256, 10, TimeUnit.MILLISECONDS,
+                                                        null, null, true, false)
+                                        .mapToLong(Integer::longValue)
+                                        .sum();
+        Assert.assertEquals(99999L * 100000L / 2, sum);
+    }
+
+    @Test
+    public void testParallelDrainingStreamKeepsOrder() {
+        List<Integer> actual = BlockingQueueSplitter.drainingStream(queueOf(10000), 100, 10, TimeUnit.MILLISECONDS,
+                                                                    null, null, true, true)
+                                                    .collect(Collectors.toList());
+        Assert.assertEquals(IntStream.range(0, 10000).boxed().collect(Collectors.toList()), actual);
+    }
+}
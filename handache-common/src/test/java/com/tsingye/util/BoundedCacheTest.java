@@ -0,0 +1,51 @@
+package com.tsingye.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * test cases for {@link BoundedCache}
+ */
+public class BoundedCacheTest {
+
+    @Test
+    public void testBoundAndStats() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(8);
+        cache.pin(-1, "pinned");
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(String.valueOf(i), cache.get(i, String::valueOf));
+            // keep 0 hot
+            Assert.assertEquals("0", cache.get(0, String::valueOf));
+        }
+        Assert.assertEquals(9, cache.size());
+        Assert.assertEquals("pinned", cache.getIfPresent(-1));
+        Assert.assertEquals("0", cache.getIfPresent(0));
+        BoundedCache.Stats stats = cache.stats();
+        // the first sweep finds all marked as new and takes 0 once, it is kept from then on
+        Assert.assertEquals(101L, stats.getMissCount());
+        Assert.assertEquals(99L, stats.getHitCount());
+        Assert.assertEquals(93L, stats.getEvictionCount());
+        Assert.assertEquals(0.495D, stats.getHitRate(), 1e-9D);
+    }
+
+    @Test
+    public void testClockHand() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(4);
+        for (int i = 0; i < 5; i++) {
+            cache.get(i, String::valueOf);
+        }
+        // all marked as new, the first round clears them and the second one takes the first
+        Assert.assertNull(cache.getIfPresent(0));
+        cache.get(1, String::valueOf);
+        cache.get(5, String::valueOf);
+        // the hand goes on from 1, which is marked again
+        Assert.assertNull(cache.getIfPresent(2));
+        cache.get(6, String::valueOf);
+        // not back to the head: 1 survives, 3 is next
+        Assert.assertNull(cache.getIfPresent(3));
+        for (int i : new int[]{1, 4, 5, 6}) {
+            Assert.assertEquals(String.valueOf(i), cache.getIfPresent(i));
+        }
+        Assert.assertEquals(3L, cache.stats().getEvictionCount());
+    }
+}
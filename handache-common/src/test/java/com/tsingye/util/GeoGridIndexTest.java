@@ -0,0 +1,98 @@
+package com.tsingye.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * test cases for {@link GeoGridIndex}, compared with brute force
+ */
+public class GeoGridIndexTest {
+
+    @Test
+    public void testQueriesMatchBruteForce() {
+        Random random = new Random(7L);
+        int size = 5000;
+        double[] lngs = new double[size];
+        double[] lats = new double[size];
+        GeoGridIndex<Integer> index = new GeoGridIndex<>(0.05D);
+        for (int i = 0; i < size; i++) {
+            // around Beijing, plus some near the date line and the pole
+            lngs[i] = i % 10 == 0 ? 179.9D + random.nextDouble() * 0.1D : 116.0D + random.nextDouble();
+            lats[i] = i % 50 == 0 ? 89.9D : 39.5D + random.nextDouble();
+            index.put(i, lngs[i], lats[i]);
+        }
+        Assert.assertEquals(size, index.size());
+        double[][] centers = {{116.39D, 39.9D}, {-179.99D, 39.9D}, {0.0D, 89.95D}, {116.5D, 40.0D}};
+        for (double[] center : centers) {
+            for (double radius : new double[]{500D, 5e3D, 50e3D}) {
+                Set<Integer> expected = IntStream.range(0, size)
+                                                 .filter(i -> MathUtils.calcDistance(center[0], center[1], lngs[i], lats[i]) <= radius)
+                                                 .boxed()
+                                                 .collect(Collectors.toSet());
+                Set<Integer> actual = index.withinRadius(center[0], center[1], radius)
+                                           .stream()
+                                           .map(GeoGridIndex.Neighbor::getItem)
+                                           .collect(Collectors.toSet());
+                Assert.assertEquals(Arrays.toString(center) + " " + radius, expected, actual);
+            }
+            List<GeoGridIndex.Neighbor<Integer>> nearest = index.nearest(center[0], center[1], 10);
+            double[] expected = IntStream.range(0, size)
+                                         .mapToDouble(i -> MathUtils.calcDistance(center[0], center[1], lngs[i], lats[i]))
+                                         .sorted()
+                                         .limit(10)
+                                         .toArray();
+            Assert.assertArrayEquals(expected, nearest.stream().mapToDouble(GeoGridIndex.Neighbor::getDistance).toArray(), 0.0D);
+        }
+    }
+
+    @Test
+    public void testDateLineWithUnevenCells() {
+        // 360 / 0.7 is not an integer, the last column goes beyond 180
+        GeoGridIndex<Integer> index = new GeoGridIndex<>(0.7D);
+        Random random = new Random(11L);
+        int size = 3000;
+        double[] lngs = new double[size];
+        double[] lats = new double[size];
+        for (int i = 0; i < size; i++) {
+            // enough buckets to probe cells instead of scanning all
+            lngs[i] = i == 0 ? -179.95D : random.nextDouble() * 360.0D - 180.0D;
+            lats[i] = i == 0 ? 10.0D : random.nextDouble() * 40.0D - 10.0D;
+            index.put(i, lngs[i], lats[i]);
+        }
+        double[][] centers = {{179.95D, 10.0D}, {-179.95D, 10.0D}, {179.5D, 5.0D}, {-179.9D, 20.0D}};
+        for (double[] center : centers) {
+            for (double radius : new double[]{11e3D, 100e3D}) {
+                Set<Integer> expected = IntStream.range(0, size)
+                                                 .filter(i -> MathUtils.calcDistance(center[0], center[1], lngs[i], lats[i]) <= radius)
+                                                 .boxed()
+                                                 .collect(Collectors.toSet());
+                Set<Integer> actual = index.withinRadius(center[0], center[1], radius)
+                                           .stream()
+                                           .map(GeoGridIndex.Neighbor::getItem)
+                                           .collect(Collectors.toSet());
+                Assert.assertEquals(Arrays.toString(center) + " " + radius, expected, actual);
+            }
+        }
+        Assert.assertEquals(Integer.valueOf(0), index.withinRadius(179.95D, 10.0D, 11e3D).get(0).getItem());
+    }
+
+    @Test
+    public void testMoveAndRemove() {
+        GeoGridIndex<String> index = new GeoGridIndex<>(0.01D);
+        index.put("a", 116.39D, 39.9D);
+        index.put("a", 121.47D, 31.23D);
+        Assert.assertEquals(1, index.size());
+        Assert.assertTrue(index.withinRadius(116.39D, 39.9D, 1e3D).isEmpty());
+        Assert.assertEquals("a", index.nearest(121.0D, 31.0D, 3).get(0).getItem());
+        Assert.assertTrue(index.remove("a"));
+        Assert.assertFalse(index.remove("a"));
+        Assert.assertTrue(index.nearest(121.0D, 31.0D, 3).isEmpty());
+    }
+}
@@ -3,10 +3,25 @@ package com.tsingye.util;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
 import static com.tsingye.util.MathUtils.calcDistance;
+import static com.tsingye.util.MathUtils.decodeHex;
+import static com.tsingye.util.MathUtils.encodeHex;
+import static com.tsingye.util.MathUtils.hexDecodingStream;
 import static com.tsingye.util.MathUtils.roundDown;
 import static com.tsingye.util.MathUtils.roundHalfUp;
 import static com.tsingye.util.MathUtils.roundUp;
+import static com.tsingye.util.MathUtils.toByteArray;
+import static com.tsingye.util.MathUtils.toHexString;
 
 /**
  * test cases for {@link MathUtils}
@@ -52,4 +67,247 @@ public class MathUtilsTest {
         Assert.assertEquals(16e3, actual, 1e3);
         System.out.println("actual = " + actual);
     }
+
+    @Test
+    public void testHexCodec() {
+        String hex = "fe13012501fa2e003f01011d0900000056b9591f45";
+        byte[] bytes = toByteArray(hex);
+        Assert.assertEquals(hex, toHexString(bytes));
+        Assert.assertArrayEquals(bytes, toByteArray(" 0x" + hex.toUpperCase() + "\n"));
+        Assert.assertEquals("fe", toHexString((byte) 0xFE));
+        Assert.assertEquals("0a", toHexString((byte) 0x0A));
+
+        char[] chars = new char[4 + 2 * bytes.length];
+        Assert.assertEquals(2 * bytes.length, encodeHex(bytes, 0, bytes.length, chars, 4));
+        byte[] decoded = new byte[bytes.length + 1];
+        Assert.assertEquals(bytes.length, decodeHex(chars, 4, 2 * bytes.length, decoded, 1));
+        Assert.assertEquals(hex, toHexString(Arrays.copyOfRange(decoded, 1, decoded.length)));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        decodeHex("xx" + hex, 2, hex.length(), buffer);
+        buffer.flip();
+        char[] encoded = new char[hex.length()];
+        encodeHex(buffer, encoded, 0);
+        Assert.assertEquals(hex, new String(encoded));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHexInvalid() {
+        toByteArray("0g");
+    }
+
+    @Test
+    public void testHexDecodingStream() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append(toHexString((byte) i)).append(i % 32 == 0 ? "\n" : "");
+        }
+        try (InputStream in = hexDecodingStream(new StringReader(sb.toString()))) {
+            byte[] buffer = new byte[777];
+            int total = 0;
+            int n;
+            while ((n = in.read(buffer, 0, buffer.length)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    Assert.assertEquals((byte) (total + i), buffer[i]);
+                }
+                total += n;
+            }
+            Assert.assertEquals(10000, total);
+        }
+    }
+
+    @Test
+    public void testPrimitiveCodec() {
+        Assert.assertArrayEquals(new byte[]{(byte) 0xFF, 0, 0, 1}, MathUtils.toByteArray(0xFF000001L));
+        Assert.assertArrayEquals(new byte[]{1, 0, 0, (byte) 0xFF}, MathUtils.toByteArrayLE(0xFF000001L));
+
+        byte[] frame = new byte[1 + 2 + 4 + 8];
+        int off = MathUtils.putUnsignedByte(frame, 0, 0xFE);
+        off = MathUtils.putUnsignedShortLE(frame, off, 0xABCD);
+        off = MathUtils.putUnsignedInt(frame, off, 0xFFFFFFFEL);
+        off = MathUtils.putLongLE(frame, off, -2L);
+        Assert.assertEquals(frame.length, off);
+        Assert.assertEquals(0xFE, MathUtils.getUnsignedByte(frame, 0));
+        Assert.assertEquals(0xABCD, MathUtils.getUnsignedShortLE(frame, 1));
+        Assert.assertEquals(0xFFFFFFFEL, MathUtils.getUnsignedInt(frame, 3));
+        Assert.assertEquals(-2L, MathUtils.getLongLE(frame, 7));
+        Assert.assertEquals((short) 0xCDAB, MathUtils.getShort(frame, 1));
+
+        long[] longs = {Long.MIN_VALUE, -1L, 0L, 0x0102030405060708L};
+        byte[] bytes = new byte[8 * longs.length];
+        MathUtils.putLongs(bytes, 0, longs, 0, longs.length);
+        Assert.assertEquals(0x01, bytes[24]);
+        long[] decoded = new long[longs.length];
+        MathUtils.getLongs(bytes, 0, decoded, 0, decoded.length);
+        Assert.assertArrayEquals(longs, decoded);
+
+        int[] ints = {Integer.MIN_VALUE, -1, 0, 0x01020304};
+        MathUtils.putIntsLE(bytes, 0, ints, 0, ints.length);
+        Assert.assertEquals(0x04, bytes[12]);
+        int[] decodedInts = new int[ints.length];
+        MathUtils.getIntsLE(bytes, 0, decodedInts, 0, ints.length);
+        Assert.assertArrayEquals(ints, decodedInts);
+
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        MathUtils.putInt(buffer, 0, 0x01020304);
+        Assert.assertEquals(0x01, buffer.get(0));
+        Assert.assertEquals(0x01020304, MathUtils.getInt(buffer, 0));
+        Assert.assertEquals(0x04030201L, MathUtils.getUnsignedIntLE(buffer, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutUnsignedIntOutOfRange() {
+        MathUtils.putUnsignedInt(new byte[4], 0, -1L);
+    }
+
+    @Test
+    public void testRoundSameAsBigDecimal() {
+        Random random = new Random(20170306L);
+        double[] specials = {2.675D, 1.005D, -1.005D, 0.125D, -0.125D, 5.055D, 0.5D, -0.5D, 1e-9D, -1e-9D,
+                0.1D + 0.2D, 116.391083D, 39.907333D, 1e14D + 0.5D, 4503599627370495.5D, -0.0D};
+        for (int level = 0; level <= 15; level++) {
+            for (double value : specials) {
+                assertSameRounding(value, level);
+            }
+            for (int i = 0; i < 5000; i++) {
+                double magnitude = Math.pow(10, random.nextInt(12) - 4);
+                double value = (random.nextDouble() - 0.5D) * magnitude;
+                assertSameRounding(value, level);
+                // values with few decimals, ties included
+                assertSameRounding(Math.round(value * 1000) / 1000.0D, level);
+            }
+        }
+        // 16+ significant digits, more than one decimal maps to the double
+        Assert.assertEquals(-558459.819517163D, roundHalfUp(-558459.8195171634D, 9), 0.0D);
+        Assert.assertEquals(544237.190951527D, roundHalfUp(544237.1909515274D, 9), 0.0D);
+        for (int level = 9; level <= 12; level++) {
+            for (int i = 0; i < 20000; i++) {
+                assertSameRounding((random.nextDouble() - 0.5D) * 2e6D, level);
+            }
+        }
+        double[] values = {5.011D, 5.055D, -5.099D};
+        MathUtils.roundHalfUp(values, 2);
+        Assert.assertArrayEquals(new double[]{5.01D, 5.06D, -5.10D}, values, 0.0D);
+    }
+
+    private static void assertSameRounding(double value, int level) {
+        String message = value + " @ " + level;
+        Assert.assertEquals(message, bigDecimal(value, level, RoundingMode.DOWN), roundDown(value, level), 0.0D);
+        Assert.assertEquals(message, bigDecimal(value, level, RoundingMode.UP), roundUp(value, level), 0.0D);
+        Assert.assertEquals(message, bigDecimal(value, level, RoundingMode.HALF_UP), roundHalfUp(value, level), 0.0D);
+    }
+
+    private static double bigDecimal(double value, int level, RoundingMode roundingMode) {
+        return BigDecimal.valueOf(value).setScale(level, roundingMode).doubleValue();
+    }
+
+    @Test
+    public void testBulkDistances() {
+        Random random = new Random(17L);
+        int size = 40000;
+        double[] lngs = new double[size];
+        double[] lats = new double[size];
+        for (int i = 0; i < size; i++) {
+            lngs[i] = 116.0D + random.nextDouble();
+            lats[i] = 39.5D + random.nextDouble();
+        }
+        MathUtils.RadianPoints points = MathUtils.toRadianPoints(lngs, lats);
+        double[] serial = new double[size];
+        double[] parallel = new double[size];
+        MathUtils.calcDistances(116.391083D, 39.907333D, points, serial, false);
+        MathUtils.calcDistances(116.391083D, 39.907333D, points, parallel, true);
+        double path = 0.0D;
+        for (int i = 0; i < size; i++) {
+            Assert.assertEquals(calcDistance(116.391083D, 39.907333D, lngs[i], lats[i]), serial[i], 1e-6D);
+            if (i > 0) {
+                path += calcDistance(lngs[i - 1], lats[i - 1], lngs[i], lats[i]);
+            }
+        }
+        Assert.assertArrayEquals(serial, parallel, 0.0D);
+        Assert.assertEquals(path, MathUtils.calcPathLength(points, true), 1e-3D);
+        Assert.assertEquals(path, MathUtils.calcPathLength(lngs, lats), 1e-3D);
+    }
+
+    @Test
+    public void testDistanceApproxErrorBound() {
+        Random random = new Random(42L);
+        for (int i = 0; i < 100000; i++) {
+            double lng1 = random.nextDouble() * 358.0D - 179.0D;
+            double lat1 = random.nextDouble() * 139.0D - 69.5D;
+            double lng2 = lng1 + (random.nextDouble() - 0.5D);
+            double lat2 = lat1 + (random.nextDouble() - 0.5D) * 0.9D;
+            double exact = calcDistance(lng1, lat1, lng2, lat2);
+            if (exact > 100e3D) {
+                continue;
+            }
+            Assert.assertEquals(exact, MathUtils.calcDistanceApprox(lng1, lat1, lng2, lat2), exact * 1e-3D);
+        }
+    }
+
+    @Test
+    public void testGeohash() {
+        Assert.assertEquals("wx4g0", MathUtils.geohashString(116.391083D, 39.907333D, 5));
+        Assert.assertEquals("ezs42", MathUtils.geohashString(-5.6D, 42.6D, 5));
+        long hash = MathUtils.geohash(116.391083D, 39.907333D, 40);
+        Assert.assertEquals(hash, MathUtils.geohashFromString(MathUtils.geohashToString(hash, 40)));
+        double[] bounds = MathUtils.geohashBounds(hash, 40);
+        Assert.assertTrue(bounds[0] <= 116.391083D && 116.391083D < bounds[2]);
+        Assert.assertTrue(bounds[1] <= 39.907333D && 39.907333D < bounds[3]);
+        // prefix of a coarser precision
+        Assert.assertEquals(MathUtils.geohash(116.391083D, 39.907333D, 25), hash >>> 15);
+        // odd bits
+        long odd = MathUtils.geohash(116.391083D, 39.907333D, 31);
+        Assert.assertEquals(hash >>> 9, odd);
+        double[] oddCenter = MathUtils.geohashCenter(odd, 31);
+        Assert.assertEquals(odd, MathUtils.geohash(oddCenter[0], oddCenter[1], 31));
+
+        long[] neighbors = MathUtils.geohashNeighbors(MathUtils.geohashFromString("ezs42"), 25);
+        Assert.assertEquals("ezs48", MathUtils.geohashToString(neighbors[0], 25));
+        Assert.assertEquals("ezs43", MathUtils.geohashToString(neighbors[2], 25));
+        Assert.assertEquals("ezs40", MathUtils.geohashToString(neighbors[4], 25));
+        Assert.assertEquals("ezefr", MathUtils.geohashToString(neighbors[6], 25));
+        // wraps at the date line, stops at the pole
+        long east = MathUtils.geohash(179.99D, 0.0D, 20);
+        Assert.assertEquals(MathUtils.geohash(-179.99D, 0.0D, 20), MathUtils.geohashNeighbor(east, 20, 1, 0));
+        Assert.assertEquals(-1L, MathUtils.geohashNeighbor(MathUtils.geohash(0.0D, 89.99D, 20), 20, 0, 1));
+
+        long[] cover = MathUtils.geohashCover(116.3D, 39.8D, 116.5D, 40.0D, 20);
+        for (int i = 0; i < 100; i++) {
+            double lng = 116.3D + i * 0.002D;
+            double lat = 39.8D + (99 - i) * 0.002D;
+            Assert.assertTrue(Arrays.binarySearch(cover, MathUtils.geohash(lng, lat, 20)) >= 0);
+        }
+        Assert.assertEquals(2, MathUtils.geohashCover(179.9D, 0.1D, -179.9D, 0.2D, 10).length);
+
+        long[] bulk = new long[2];
+        MathUtils.geohashes(new double[]{116.391083D, -5.6D}, new double[]{39.907333D, 42.6D}, 40, bulk);
+        Assert.assertEquals(hash, bulk[0]);
+    }
+
+    @Test
+    public void testZOrderAndHilbert() {
+        long key = MathUtils.zOrder(0x7FFFFFFF, 0x12345678);
+        Assert.assertEquals(0x7FFFFFFF, MathUtils.zOrderX(key));
+        Assert.assertEquals(0x12345678, MathUtils.zOrderY(key));
+        Assert.assertEquals(3L, MathUtils.zOrder(1, 1));
+        Assert.assertEquals(2L, MathUtils.zOrder(1, 0));
+
+        int order = 4;
+        double cellLng = 360.0D / (1 << order);
+        double cellLat = 180.0D / (1 << order);
+        double[] previous = null;
+        for (long index = 0; index < 1L << (2 * order); index++) {
+            double[] center = MathUtils.hilbertCenter(index, order);
+            Assert.assertEquals(index, MathUtils.hilbert(center[0], center[1], order));
+            if (previous != null) {
+                // consecutive cells are adjacent
+                double steps = Math.abs(center[0] - previous[0]) / cellLng + Math.abs(center[1] - previous[1]) / cellLat;
+                Assert.assertEquals(1.0D, steps, 1e-9D);
+            }
+            previous = center;
+        }
+        long[] bulk = new long[1];
+        MathUtils.hilberts(new double[]{116.391083D}, new double[]{39.907333D}, 20, bulk);
+        Assert.assertEquals(MathUtils.hilbert(116.391083D, 39.907333D, 20), bulk[0]);
+    }
 }
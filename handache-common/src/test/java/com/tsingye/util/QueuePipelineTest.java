@@ -0,0 +1,37 @@
+package com.tsingye.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * test cases for {@link QueuePipeline}
+ */
+public class QueuePipelineTest {
+
+    @Test(timeout = 10000L)
+    public void testStagesAndSink() throws Exception {
+        LinkedBlockingQueue<Integer> queue = new LinkedBlockingQueue<>();
+        AtomicLong sum = new AtomicLong();
+        QueuePipeline.Running running =
+                QueuePipeline.from(queue)
+                             .bufferSize(16)
+                             .map(i -> i % 2 == 0 ? null : (long) i, 3)
+                             .map(l -> l * 2, 2)
+                             .onError((element, e) -> Assert.fail(e.getMessage()))
+                             .to(sum::addAndGet, 2);
+        for (int i = 0; i < 10000; i++) {
+            queue.put(i);
+        }
+        while (running.processed() < 5000) {
+            Thread.sleep(10L);
+        }
+        running.stop();
+        Assert.assertTrue(running.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2L * 5000L * 5000L, sum.get());
+        Assert.assertEquals(0L, running.errors());
+    }
+}
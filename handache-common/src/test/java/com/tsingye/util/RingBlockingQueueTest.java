@@ -0,0 +1,87 @@
+package com.tsingye.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * test cases for {@link RingBlockingQueue}
+ */
+public class RingBlockingQueueTest {
+
+    @Test
+    public void testBounded() throws Exception {
+        RingBlockingQueue<Integer> queue = RingBlockingQueue.spsc(3, RingBlockingQueue.WaitStrategy.YIELDING);
+        Assert.assertEquals(4, queue.capacity());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(queue.offer(i));
+        }
+        Assert.assertFalse(queue.offer(4));
+        Assert.assertFalse(queue.offer(4, 1, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(4, queue.size());
+        Assert.assertEquals(Integer.valueOf(0), queue.peek());
+        Assert.assertEquals(Integer.valueOf(0), queue.poll());
+        List<Integer> drained = new ArrayList<>();
+        Assert.assertEquals(2, queue.drainTo(drained, 2));
+        Assert.assertEquals(1, queue.size());
+        Assert.assertEquals(Integer.valueOf(3), queue.take());
+        Assert.assertNull(queue.poll(1, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testSnapshotIterator() {
+        RingBlockingQueue<Integer> queue = RingBlockingQueue.mpsc(4, RingBlockingQueue.WaitStrategy.YIELDING);
+        Assert.assertEquals("[]", queue.toString());
+        for (int i = 0; i < 4; i++) {
+            queue.offer(i);
+        }
+        queue.poll();
+        // wraps around the ring
+        queue.offer(4);
+        Assert.assertEquals("[1, 2, 3, 4]", queue.toString());
+        Assert.assertTrue(queue.contains(3));
+        Assert.assertFalse(queue.contains(0));
+        Assert.assertTrue(queue.containsAll(Arrays.asList(1, 4)));
+        Assert.assertArrayEquals(new Object[]{1, 2, 3, 4}, queue.toArray());
+        Assert.assertArrayEquals(new Integer[]{1, 2, 3, 4}, queue.toArray(new Integer[0]));
+        try {
+            queue.remove((Object) 2);
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(4, queue.size());
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void testMultiProducers() throws Exception {
+        RingBlockingQueue<Long> queue = RingBlockingQueue.mpsc(64, RingBlockingQueue.WaitStrategy.PARKING);
+        int producers = 4;
+        long perProducer = 50000L;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (long i = 1; i <= perProducer; i++) {
+                        queue.put(i);
+                    }
+                } catch (InterruptedException ignored) {
+                    // just exit
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        long sum = BlockingQueueSplitter.drainingStream(queue, 32, 200, TimeUnit.MILLISECONDS)
+                                        .mapToLong(Long::longValue)
+                                        .sum();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(producers * perProducer * (perProducer + 1) / 2, sum);
+    }
+}
@@ -0,0 +1,167 @@
+package com.tsingye.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * test cases for {@link ThreeTenUtils}
+ */
+public class ThreeTenUtilsTest {
+
+    @Test
+    public void testOfPattern() {
+        Assert.assertSame(ThreeTenUtils.ofPattern("uuuu-MM-dd"), ThreeTenUtils.ofPattern("uuuu-MM-dd"));
+        ThreeTenUtils.ofPattern("uuuu-MM-dd'T'HH:mm");
+        long hits = ThreeTenUtils.formatterCacheStats().getHitCount();
+        Assert.assertEquals("2017-03-06T08:05",
+                ThreeTenUtils.format(LocalDateTime.of(2017, 3, 6, 8, 5), "uuuu-MM-dd'T'HH:mm"));
+        Assert.assertEquals(hits + 1, ThreeTenUtils.formatterCacheStats().getHitCount());
+        ThreeTenUtils.registerPattern("uuuuMMdd");
+        Assert.assertEquals("20170306", ThreeTenUtils.format(LocalDateTime.of(2017, 3, 6, 8, 5), "uuuuMMdd"));
+    }
+
+    private static final String[] PATTERNS = {
+            "u-M", "u-M-d", "H:m", "u-M-d H:m", "uuuu-MM", "uuuu-MM-dd", "HH:mm", "uuuu-MM-dd HH:mm",
+            "uuuuMMddHHmmss", "HH:mm:ss dd/MM/uuuu", "uuuu-MM-dd'T'HH:mm"
+    };
+
+    @Test
+    public void testFixedPatternsMatchFormatter() {
+        TimeZone timeZone = TimeZone.getDefault();
+        Random random = new Random(11L);
+        try {
+            for (String zone : new String[]{"Asia/Shanghai", "America/New_York", "UTC"}) {
+                TimeZone.setDefault(TimeZone.getTimeZone(zone));
+                long[] epochMillis = new long[2000];
+                for (int i = 0; i < epochMillis.length; i++) {
+                    // sorted within days, plus some far in the past and future
+                    epochMillis[i] = i % 100 == 0 ? random.nextLong() % 250_000_000_000_000L
+                            : 1_490_000_000_000L + i * 600_000L + random.nextInt(600_000);
+                }
+                for (String pattern : PATTERNS) {
+                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern);
+                    String[] bulk = ThreeTenUtils.format(epochMillis, pattern);
+                    StringBuilder sb = new StringBuilder();
+                    char[] chars = new char[64];
+                    for (int i = 0; i < epochMillis.length; i++) {
+                        LocalDateTime dateTime = ThreeTenUtils.localDateTimeOf(epochMillis[i]);
+                        String expected = dateTime.format(formatter);
+                        Assert.assertEquals(pattern, expected, ThreeTenUtils.format(epochMillis[i], pattern));
+                        Assert.assertEquals(pattern, expected, bulk[i]);
+                        Assert.assertEquals(pattern, expected, ThreeTenUtils.format(dateTime, pattern));
+                        sb.setLength(0);
+                        Assert.assertEquals(expected, ThreeTenUtils.formatTo(epochMillis[i], pattern, sb).toString());
+                        int end = ThreeTenUtils.formatTo(epochMillis[i], pattern, chars, 3);
+                        Assert.assertEquals(expected, new String(chars, 3, end - 3));
+                        if (pattern.contains("d") && pattern.contains("H")) {
+                            Assert.assertEquals(LocalDateTime.parse(expected, formatter),
+                                                ThreeTenUtils.parseDateTime(expected, pattern));
+                            Assert.assertEquals(ThreeTenUtils.toEpochMilli(LocalDateTime.parse(expected, formatter)),
+                                                ThreeTenUtils.parseEpochMilli(expected, pattern));
+                        } else if (pattern.contains("d")) {
+                            Assert.assertEquals(LocalDate.parse(expected, formatter),
+                                                ThreeTenUtils.parseDate(expected, pattern));
+                            Assert.assertEquals(ThreeTenUtils.toEpochMilli(LocalDate.parse(expected, formatter)),
+                                                ThreeTenUtils.parseEpochMilli(expected, pattern));
+                        }
+                    }
+                }
+            }
+        } finally {
+            TimeZone.setDefault(timeZone);
+        }
+    }
+
+    @Test
+    public void testFixedPatternParseEdgeCases() {
+        // resolved like the formatter does: the SMART resolver clamps day-of-month
+        Assert.assertEquals(LocalDate.of(2017, 2, 28), ThreeTenUtils.parseDate("2017-02-30", "uuuu-MM-dd"));
+        Assert.assertEquals(LocalDate.of(2016, 2, 29), ThreeTenUtils.parseDate("2016-2-29", "u-M-d"));
+        Assert.assertEquals(LocalDateTime.of(12345, 1, 2, 3, 4), ThreeTenUtils.parseDateTime("12345-1-2 3:4", "u-M-d H:m"));
+        String[] invalid = {"2017-13-01", "2017-1-01", "2017-01-01x", "2017-01-1", "+2017-01-01", ""};
+        for (String text : invalid) {
+            try {
+                ThreeTenUtils.parseDate(text, "uuuu-MM-dd");
+                Assert.fail(text);
+            } catch (DateTimeParseException ignored) {
+                // expected
+            }
+        }
+        long[] epochMillis = ThreeTenUtils.parseEpochMillis(new String[]{"2017-03-06 08:05", "2017-03-06 08:06"},
+                                                            "uuuu-MM-dd HH:mm");
+        Assert.assertEquals(60_000L, epochMillis[1] - epochMillis[0]);
+        Assert.assertEquals(ThreeTenUtils.toEpochMilli(LocalDateTime.of(2017, 3, 6, 8, 5)), epochMillis[0]);
+    }
+
+    @Test
+    public void testBucketsMatchZonedDateTime() {
+        Random random = new Random(17L);
+        for (String id : new String[]{"America/New_York", "Australia/Lord_Howe", "America/Sao_Paulo", "Asia/Shanghai"}) {
+            ZoneId zone = ZoneId.of(id);
+            long[] epochMillis = new long[5000];
+            for (int i = 0; i < epochMillis.length; i++) {
+                epochMillis[i] = 1_200_000_000_000L + i * 3_000_000L + random.nextInt(3_000_000);
+            }
+            for (TimeBucket bucket : TimeBucket.values()) {
+                long[] starts = new long[epochMillis.length];
+                long[] indices = new long[epochMillis.length];
+                ThreeTenUtils.bucketStarts(epochMillis, bucket, zone, starts);
+                ThreeTenUtils.bucketIndices(epochMillis, bucket, zone, indices);
+                for (int i = 0; i < epochMillis.length; i++) {
+                    LocalDateTime local = ThreeTenUtils.localDateTimeOf(epochMillis[i], zone);
+                    LocalDateTime truncated;
+                    switch (bucket) {
+                        case HOUR:
+                            truncated = local.truncatedTo(ChronoUnit.HOURS);
+                            break;
+                        case DAY:
+                            truncated = local.toLocalDate().atStartOfDay();
+                            break;
+                        case WEEK:
+                            truncated = local.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                                             .atStartOfDay();
+                            break;
+                        default:
+                            truncated = local.toLocalDate().withDayOfMonth(1).atStartOfDay();
+                            break;
+                    }
+                    long expected = truncated.atZone(zone).toInstant().toEpochMilli();
+                    String message = id + " " + bucket + " " + local;
+                    Assert.assertEquals(message, expected, ThreeTenUtils.bucketStart(epochMillis[i], bucket, zone));
+                    Assert.assertEquals(message, expected, starts[i]);
+                    Assert.assertEquals(message, ThreeTenUtils.bucketIndex(epochMillis[i], bucket, zone), indices[i]);
+                    Assert.assertEquals(message, expected, ThreeTenUtils.bucketStartOfIndex(indices[i], bucket, zone));
+                }
+                long[] between = ThreeTenUtils.bucketsBetween(new long[]{epochMillis[0], epochMillis[epochMillis.length - 1] + 1},
+                                                              bucket, zone);
+                // every bucket seen is enumerated, in strictly ascending order
+                Assert.assertEquals(starts[0], between[0]);
+                for (int i = 1; i < between.length; i++) {
+                    Assert.assertTrue(between[i - 1] < between[i]);
+                }
+                for (long start : starts) {
+                    Assert.assertTrue(id + " " + bucket, Arrays.binarySearch(between, start) >= 0);
+                }
+            }
+        }
+        // New York 2017-03-12 has 23 hours, 02:00 is skipped
+        ZoneId newYork = ZoneId.of("America/New_York");
+        long dayStart = ThreeTenUtils.toEpochMilli(LocalDate.of(2017, 3, 12), newYork);
+        Assert.assertEquals(23, ThreeTenUtils.bucketsBetween(new long[]{dayStart, dayStart + 23 * 3_600_000L},
+                                                             TimeBucket.HOUR, newYork).length);
+        Assert.assertEquals(1, ThreeTenUtils.bucketsBetween(new long[]{dayStart, dayStart + 23 * 3_600_000L},
+                                                            TimeBucket.DAY, newYork).length);
+    }
+}
@@ -0,0 +1,70 @@
+package com.tsingye.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Random;
+
+/**
+ * test cases for {@link ZoneOffsetConverter}, compared with {@link ZonedDateTime}
+ */
+public class ZoneOffsetConverterTest {
+
+    private static final String[] ZONES = {
+            "Asia/Shanghai", "America/New_York", "Europe/London", "Australia/Lord_Howe", "Asia/Kathmandu",
+            "America/Sao_Paulo", "Pacific/Apia", "UTC", "+05:30"
+    };
+
+    @Test
+    public void testMatchesZonedDateTime() {
+        Random random = new Random(13L);
+        int[] fields = new int[7];
+        for (String id : ZONES) {
+            ZoneId zone = ZoneId.of(id);
+            ZoneOffsetConverter converter = ZoneOffsetConverter.of(zone);
+            Assert.assertSame(converter, ZoneOffsetConverter.of(zone));
+            for (int i = 0; i < 20000; i++) {
+                // 1900 ~ 2200, denser around now
+                long epochMilli = i % 2 == 0 ? -2_208_988_800_000L + (long) (random.nextDouble() * 9_467_280_000_000L)
+                        : 1_400_000_000_000L + (long) (random.nextDouble() * 600_000_000_000L);
+                LocalDateTime expected = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), zone);
+                long localMillis = converter.toLocalMillis(epochMilli);
+                Assert.assertEquals(id, expected.toInstant(ZoneOffset.UTC).toEpochMilli(), localMillis);
+                Assert.assertEquals(id, expected, ThreeTenUtils.localDateTimeOf(epochMilli, zone));
+                converter.localFieldsOf(epochMilli, fields);
+                Assert.assertEquals(expected, LocalDateTime.of(fields[0], fields[1], fields[2], fields[3], fields[4],
+                                                               fields[5], fields[6] * 1_000_000));
+                // the local millis taken as another local time, may fall into a gap or an overlap
+                long local = localMillis + (random.nextInt(7200) - 3600) * 1000L;
+                LocalDateTime localDateTime = LocalDateTime.ofEpochSecond(Math.floorDiv(local, 1000L),
+                                                                          (int) Math.floorMod(local, 1000L) * 1_000_000,
+                                                                          ZoneOffset.UTC);
+                long expectedEpoch = localDateTime.atZone(zone).toInstant().toEpochMilli();
+                Assert.assertEquals(id + " " + localDateTime, expectedEpoch, converter.toEpochMilli(local));
+                Assert.assertEquals(expectedEpoch, ThreeTenUtils.toEpochMilli(localDateTime, zone));
+                Assert.assertEquals(localDateTime.atZone(zone).toInstant(), ThreeTenUtils.toInstant(localDateTime, zone));
+            }
+        }
+    }
+
+    @Test
+    public void testGapAndOverlap() {
+        ZoneId zone = ZoneId.of("America/New_York");
+        ZoneOffsetConverter converter = ZoneOffsetConverter.of(zone);
+        // 2017-03-12 02:30 does not exist, shifted to 03:30 EDT
+        Assert.assertEquals(ZonedDateTime.of(2017, 3, 12, 3, 30, 0, 0, zone).toInstant().toEpochMilli(),
+                            converter.toEpochMilli(2017, 3, 12, 2, 30, 0, 0));
+        // 2017-11-05 01:30 happens twice, the earlier one (EDT) wins
+        Assert.assertEquals(LocalDateTime.of(2017, 11, 5, 1, 30).toInstant(ZoneOffset.ofHours(-4)).toEpochMilli(),
+                            converter.toEpochMilli(2017, 11, 5, 1, 30, 0, 0));
+        long[] millis = {0L, 1_500_000_000_000L};
+        ThreeTenUtils.toLocalMillis(millis, zone, millis);
+        ThreeTenUtils.toEpochMillis(millis, zone, millis);
+        Assert.assertArrayEquals(new long[]{0L, 1_500_000_000_000L}, millis);
+    }
+}
@@ -0,0 +1,541 @@
+package com.tsingye.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.DBObject;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * buffers writes of one collection and sends them as bulk operations, instead of a round-trip per document.
+ * <p>A batch is flushed when it has {@link Config#batchSize(int)} operations, when it is about
+ * {@link Config#maxBytes(long)} big, or {@link Config#maxDelay(long, TimeUnit)} after its first operation,
+ * whichever comes first. The buffer is bounded by {@link Config#capacity(int)}: writers block once it is full.
+ * Each flush is reported to {@link Config#listener(Consumer)}, failures are logged anyway.</p>
+ * <p>One background thread does the flushing. Thread safe. Inserted entities are converted when buffered, their ids
+ * are not set back, give them ids beforehand if needed.</p>
+ * Get one by {@link MongoDao#bulkWriter(Class, Config)}.
+ */
+public class MongoBulkWriter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoBulkWriter.class);
+
+    /**
+     * how often a writer blocked on a full buffer checks whether the flusher is gone
+     */
+    private static final long OFFER_TIMEOUT_MILLIS = 100L;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final Class<?> clazz;
+
+    private final Config config;
+
+    private final BlockingQueue<Operation> queue;
+
+    private final Thread flusher;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private final Operation closeMarker = new Operation(Kind.CLOSE, null, null, null, 0L);
+
+    /**
+     * set when the flusher is done, whatever is buffered after is released by whoever sees it
+     */
+    private volatile boolean stopped;
+
+    MongoBulkWriter(MongoTemplate mongoTemplate, Class<?> clazz, Config config) {
+        this.mongoTemplate = mongoTemplate;
+        this.clazz = clazz;
+        this.config = config.copy();
+        this.queue = new ArrayBlockingQueue<>(this.config.capacity);
+        this.flusher = new Thread(this::run, "mongo-bulk-writer-" + mongoTemplate.getCollectionName(clazz));
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    //============= writes =============//
+
+    /**
+     * @param entity the entity to insert, or a {@link DBObject}
+     * @throws InterruptedException if interrupted while the buffer is full
+     */
+    public void insert(Object entity) throws InterruptedException {
+        DBObject document;
+        if (entity instanceof DBObject) {
+            document = (DBObject) entity;
+        } else {
+            document = new BasicDBObject();
+            mongoTemplate.getConverter().write(entity, document);
+        }
+        enqueue(new Operation(Kind.INSERT, document, null, null, estimateSize(document)));
+    }
+
+    public void insert(Collection<?> entities) throws InterruptedException {
+        for (Object entity : entities) {
+            insert(entity);
+        }
+    }
+
+    public void updateOne(Query query, Update update) throws InterruptedException {
+        enqueue(update(Kind.UPDATE_ONE, query, update));
+    }
+
+    public void updateMulti(Query query, Update update) throws InterruptedException {
+        enqueue(update(Kind.UPDATE_MULTI, query, update));
+    }
+
+    public void upsert(Query query, Update update) throws InterruptedException {
+        enqueue(update(Kind.UPSERT, query, update));
+    }
+
+    public void remove(Query query) throws InterruptedException {
+        enqueue(new Operation(Kind.REMOVE, null, query, null, estimateSize(query.getQueryObject())));
+    }
+
+    /**
+     * block until the operations buffered before are written
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        Operation marker = new Operation(Kind.FLUSH, null, null, null, 0L);
+        enqueue(marker);
+        marker.done.await();
+    }
+
+    /**
+     * @return count of operations buffered and not taken by the flusher yet
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    /**
+     * @return true once the flusher is done, after {@link #close()} or an error it is logged and stopped by. writes
+     * throw {@link IllegalStateException} then, flushes return at once
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * flush and stop, further writes throw {@link IllegalStateException}. writes racing with it are still written,
+     * as long as they are buffered before the flusher is done, or dropped with a warning
+     *
+     * @throws InterruptedException if interrupted while waiting for the flush
+     */
+    @Override
+    public void close() throws InterruptedException {
+        if (closed.compareAndSet(false, true)) {
+            put(closeMarker);
+        }
+        closeMarker.done.await();
+    }
+
+    private static Operation update(Kind kind, Query query, Update update) {
+        long size = estimateSize(query.getQueryObject()) + estimateSize(update.getUpdateObject());
+        return new Operation(kind, null, query, update, size);
+    }
+
+    private void enqueue(Operation operation) throws InterruptedException {
+        if (closed.get()) {
+            throw new IllegalStateException("the bulk writer is closed");
+        }
+        put(operation);
+    }
+
+    private void put(Operation operation) throws InterruptedException {
+        if (stopped && operation.done == null) {
+            throw new IllegalStateException("the bulk writer is stopped");
+        }
+        while (!queue.offer(operation, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (stopped) {
+                if (operation.done == null) {
+                    throw new IllegalStateException("the bulk writer is stopped");
+                }
+                operation.done.countDown();
+                return;
+            }
+        }
+        if (stopped) {
+            // may have come after the last drain
+            release();
+        }
+    }
+
+    //============= flusher =============//
+
+    private void run() {
+        try {
+            flushLoop();
+        } catch (RuntimeException | Error e) {
+            // logged here, not again by the uncaught handler
+            logger.error("bulk writer of {} stopped", clazz.getSimpleName(), e);
+        } finally {
+            stopped = true;
+            release();
+        }
+    }
+
+    private void flushLoop() {
+        List<Operation> batch = new ArrayList<>(config.batchSize);
+        long bytes = 0L;
+        long deadline = 0L;
+        while (true) {
+            Operation operation;
+            try {
+                if (batch.isEmpty()) {
+                    operation = queue.take();
+                } else {
+                    operation = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                write(batch);
+                return;
+            }
+            if (operation == null) {
+                // the max delay is reached
+                write(batch);
+                batch.clear();
+                bytes = 0L;
+                continue;
+            }
+            if (operation.kind == Kind.CLOSE) {
+                write(batch);
+                stopped = true;
+                writeRest();
+                operation.done.countDown();
+                return;
+            }
+            if (operation.kind == Kind.FLUSH) {
+                write(batch);
+                batch.clear();
+                bytes = 0L;
+                operation.done.countDown();
+                continue;
+            }
+            if (batch.isEmpty()) {
+                deadline = System.nanoTime() + config.maxDelayNanos;
+            }
+            batch.add(operation);
+            bytes += operation.size;
+            if (batch.size() >= config.batchSize || bytes >= config.maxBytes) {
+                write(batch);
+                batch.clear();
+                bytes = 0L;
+            }
+        }
+    }
+
+    /**
+     * write what raced with the close, release the markers
+     */
+    private void writeRest() {
+        List<Operation> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        List<Operation> batch = new ArrayList<>(Math.min(rest.size(), config.batchSize));
+        for (Operation operation : rest) {
+            if (operation.done != null) {
+                continue;
+            }
+            batch.add(operation);
+            if (batch.size() >= config.batchSize) {
+                write(batch);
+                batch.clear();
+            }
+        }
+        write(batch);
+        for (Operation operation : rest) {
+            if (operation.done != null) {
+                operation.done.countDown();
+            }
+        }
+    }
+
+    /**
+     * drop what is buffered after the flusher is done, release the markers
+     */
+    private void release() {
+        List<Operation> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        int dropped = 0;
+        for (Operation operation : rest) {
+            if (operation.done != null) {
+                operation.done.countDown();
+            } else {
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            logger.warn("{} operations into {} dropped, the bulk writer is stopped", dropped, clazz.getSimpleName());
+        }
+    }
+
+    private void write(List<Operation> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        FlushResult result;
+        try {
+            BulkOperations bulk = mongoTemplate.bulkOps(config.mode, clazz);
+            for (Operation operation : batch) {
+                operation.addTo(bulk);
+            }
+            result = new FlushResult(batch.size(), bulk.execute(), null);
+        } catch (RuntimeException e) {
+            logger.warn("bulk write of {} operations into {} failed", batch.size(), clazz.getSimpleName(), e);
+            result = new FlushResult(batch.size(), null, e);
+        }
+        if (config.listener != null) {
+            try {
+                config.listener.accept(result);
+            } catch (RuntimeException e) {
+                logger.warn("bulk write listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * a rough BSON size, without encoding
+     */
+    static long estimateSize(Object value) {
+        if (value == null) {
+            return 1L;
+        }
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() + 5L;
+        }
+        if (value instanceof Map) {
+            long size = 5L;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += String.valueOf(entry.getKey()).length() + 2L + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            long size = 5L;
+            for (Object element : (Collection<?>) value) {
+                size += 4L + estimateSize(element);
+            }
+            return size;
+        }
+        if (value instanceof DBObject) {
+            return estimateSize(((DBObject) value).toMap());
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length + 5L;
+        }
+        if (value instanceof ObjectId) {
+            return 12L;
+        }
+        return 8L;
+    }
+
+    private enum Kind {
+        INSERT, UPDATE_ONE, UPDATE_MULTI, UPSERT, REMOVE, FLUSH, CLOSE
+    }
+
+    private static final class Operation {
+
+        private final Kind kind;
+
+        private final DBObject document;
+
+        private final Query query;
+
+        private final Update update;
+
+        private final long size;
+
+        /**
+         * for the flush and close markers
+         */
+        private final CountDownLatch done;
+
+        Operation(Kind kind, DBObject document, Query query, Update update, long size) {
+            this.kind = kind;
+            this.document = document;
+            this.query = query;
+            this.update = update;
+            this.size = size;
+            this.done = kind == Kind.FLUSH || kind == Kind.CLOSE ? new CountDownLatch(1) : null;
+        }
+
+        void addTo(BulkOperations bulk) {
+            switch (kind) {
+                case INSERT:
+                    bulk.insert(document);
+                    break;
+                case UPDATE_ONE:
+                    bulk.updateOne(query, update);
+                    break;
+                case UPDATE_MULTI:
+                    bulk.updateMulti(query, update);
+                    break;
+                case UPSERT:
+                    bulk.upsert(query, update);
+                    break;
+                case REMOVE:
+                    bulk.remove(query);
+                    break;
+                default:
+                    throw new IllegalStateException("not a write: " + kind);
+            }
+        }
+    }
+
+    /**
+     * the outcome of one flush
+     */
+    public static final class FlushResult {
+
+        private final int operations;
+
+        private final BulkWriteResult result;
+
+        private final RuntimeException error;
+
+        FlushResult(int operations, BulkWriteResult result, RuntimeException error) {
+            this.operations = operations;
+            this.result = result;
+            this.error = error;
+        }
+
+        /**
+         * @return count of operations sent
+         */
+        public int getOperations() {
+            return operations;
+        }
+
+        /**
+         * @return the counts of the driver, null if failed
+         */
+        public BulkWriteResult getResult() {
+            return result;
+        }
+
+        /**
+         * @return why it failed, null if succeeded. in the ordered mode the operations before the failed one
+         * are written, in the unordered mode all the others are tried
+         */
+        public RuntimeException getError() {
+            return error;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+    }
+
+    /**
+     * settings of a {@link MongoBulkWriter}, copied when the writer is built
+     */
+    public static final class Config {
+
+        private BulkMode mode = BulkMode.UNORDERED;
+
+        private int batchSize = 1000;
+
+        private long maxBytes = 8L << 20;
+
+        private long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(100L);
+
+        private int capacity = 10_000;
+
+        private Consumer<FlushResult> listener;
+
+        /**
+         * @param ordered true to stop a batch at the first error, false (the default) to try all
+         */
+        public Config ordered(boolean ordered) {
+            this.mode = ordered ? BulkMode.ORDERED : BulkMode.UNORDERED;
+            return this;
+        }
+
+        /**
+         * @param batchSize operations per flush at most, 1000 by default
+         */
+        public Config batchSize(int batchSize) {
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("batchSize " + batchSize + " should be positive!");
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param maxBytes about the bytes per flush at most, 8MB by default
+         */
+        public Config maxBytes(long maxBytes) {
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("maxBytes " + maxBytes + " should be positive!");
+            }
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @param maxDelay how long an operation waits for its batch at most, 100ms by default
+         */
+        public Config maxDelay(long maxDelay, TimeUnit unit) {
+            if (maxDelay < 0) {
+                throw new IllegalArgumentException("maxDelay " + maxDelay + " should not be negative!");
+            }
+            this.maxDelayNanos = unit.toNanos(maxDelay);
+            return this;
+        }
+
+        /**
+         * @param capacity operations buffered at most before writers block, 10000 by default
+         */
+        public Config capacity(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("capacity " + capacity + " should be positive!");
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param listener called by the flusher thread after each flush, nullable
+         */
+        public Config listener(Consumer<FlushResult> listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        Consumer<FlushResult> listener() {
+            return listener;
+        }
+
+        Config copy() {
+            Config copy = new Config();
+            copy.mode = mode;
+            copy.batchSize = batchSize;
+            copy.maxBytes = maxBytes;
+            copy.maxDelayNanos = maxDelayNanos;
+            copy.capacity = capacity;
+            copy.listener = listener;
+            return copy;
+        }
+    }
+}
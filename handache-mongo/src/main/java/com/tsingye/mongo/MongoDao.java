@@ -1,9 +1,14 @@
 package com.tsingye.mongo;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.Mongo;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
 import com.mongodb.WriteResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,6 +18,7 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.aggregation.AggregationResults;
 import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.NearQuery;
 import org.springframework.data.mongodb.core.query.Query;
@@ -22,13 +28,25 @@ import org.springframework.data.util.StreamUtils;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -40,13 +58,29 @@ import java.util.stream.StreamSupport;
 @Component("mongoDao")
 public class MongoDao {
 
+    /**
+     * ids per {@code $in} query of {@link MongoDao#getModels(Collection, Class)}
+     */
+    static final int DEFAULT_CHUNK_SIZE = 500;
+
     private final MongoTemplate mongoTemplate;
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    private final Map<Class<?>, MongoEntityCache<?>> caches = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, MongoIdCoalescer<?>> coalescers = new ConcurrentHashMap<>();
+
+    /**
+     * runs the blocking queries of {@link MongoDao#getModels(Collection, Class)} and of the coalescers, off the
+     * common pool
+     */
+    private volatile Executor batchExecutor;
+
     @Autowired
     public MongoDao(MongoTemplate mongoTemplate) {
         this.mongoTemplate = mongoTemplate;
+        this.batchExecutor = newBatchExecutor(connectionsPerHost(mongoTemplate));
         logger.info("initialized mongoDao with mongoTemplate {}", mongoTemplate);
     }
 
@@ -54,10 +88,259 @@ public class MongoDao {
         return mongoTemplate;
     }
 
+    /**
+     * @param batchExecutor runs the chunks of {@link MongoDao#getModels(Collection, Class)} and the batches of
+     *                      coalescers without their own executor. By default a pool of daemon threads, as many as
+     *                      the connections per host of the mongo client at most, a task finding them all busy runs
+     *                      in the submitting thread
+     */
+    public void setBatchExecutor(Executor batchExecutor) {
+        if (batchExecutor == null) {
+            throw new IllegalArgumentException("batchExecutor should not be null!");
+        }
+        this.batchExecutor = batchExecutor;
+    }
+
+    /**
+     * @param threads threads at most, more would only wait for a connection
+     */
+    private static Executor newBatchExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread thread = new Thread(r, "mongo-batch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                                                             new SynchronousQueue<>(), threadFactory,
+                                                             new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static int connectionsPerHost(MongoTemplate mongoTemplate) {
+        Mongo mongo = mongoTemplate.getDb().getMongo();
+        if (mongo instanceof MongoClient) {
+            return ((MongoClient) mongo).getMongoClientOptions().getConnectionsPerHost();
+        }
+        return MongoClientOptions.builder().build().getConnectionsPerHost();
+    }
+
+    //====== cache ======//
+
+    /**
+     * Cache {@link MongoDao#getModel(Object, Class)} and {@link MongoDao#getModel(String, Object, Class)} of the
+     * class from now on, replacing its former cache if any. An entity is kept as its {@code DBObject} and converted
+     * on each hit, so every read gets an instance of its own that it may change.
+     *
+     * @param clazz  the entityType to cache, exactly, not its subclasses
+     * @param config the eviction settings
+     * @param <T>    the entityType
+     * @return the new cache, for its stats
+     */
+    public <T> MongoEntityCache<T> enableCache(Class<T> clazz, MongoEntityCache.Config config) {
+        MongoConverter converter = mongoTemplate.getConverter();
+        MongoEntityCache<T> cache = new MongoEntityCache<>(config, (idKey, id) -> findModel(idKey, id, clazz),
+                                                           entity -> {
+                                                               DBObject dbObject = new BasicDBObject();
+                                                               converter.write(entity, dbObject);
+                                                               return dbObject;
+                                                           },
+                                                           dbObject -> converter.read(clazz, (DBObject) dbObject));
+        caches.put(clazz, cache);
+        return cache;
+    }
+
+    public <T> MongoEntityCache<T> enableCache(Class<T> clazz) {
+        return enableCache(clazz, new MongoEntityCache.Config());
+    }
+
+    public void disableCache(Class<?> clazz) {
+        caches.remove(clazz);
+    }
+
+    /**
+     * @param clazz the entityType
+     * @param <T>   the entityType
+     * @return the cache of the class, or null if not cached
+     */
+    @SuppressWarnings("unchecked")
+    public <T> MongoEntityCache<T> getCache(Class<T> clazz) {
+        return (MongoEntityCache<T>) caches.get(clazz);
+    }
+
+    private <T> T findModel(String idKey, Object id, Class<T> clazz) {
+        if (MongoEntityCache.ID_KEY.equals(idKey)) {
+            return findById(id, clazz);
+        }
+        return mongoTemplate.findOne(Query.query(Criteria.where(idKey).is(id)), clazz);
+    }
+
+    private void invalidate(Class<?> clazz, Query query) {
+        MongoEntityCache<?> cache = caches.get(clazz);
+        if (cache != null) {
+            cache.invalidate(query.getQueryObject());
+        }
+    }
+
+    private void invalidate(Object entity) {
+        MongoEntityCache<?> cache = caches.get(entity.getClass());
+        if (cache != null) {
+            cache.invalidate(idOf(entity));
+        }
+    }
+
+    private Object idOf(Object entity) {
+        MongoPersistentEntity<?> persistentEntity = mongoTemplate.getConverter()
+                                                                 .getMappingContext()
+                                                                 .getPersistentEntity(entity.getClass());
+        return persistentEntity == null ? null : persistentEntity.getIdentifierAccessor(entity).getIdentifier();
+    }
+
+    //====== coalescing ======//
+
+    /**
+     * Batch concurrent {@link MongoDao#getModel(Object, Class)} of the class into {@code $in} queries from now on,
+     * replacing its former settings if any. With a cache, the misses of it are batched.
+     *
+     * @param clazz  the entityType to batch
+     * @param config the batching settings
+     * @param <T>    the entityType
+     * @return the new coalescer
+     */
+    public <T> MongoIdCoalescer<T> enableCoalescing(Class<T> clazz, MongoIdCoalescer.Config config) {
+        MongoIdCoalescer<T> coalescer = new MongoIdCoalescer<>(config, ids -> getModels(ids, clazz),
+                                                               batchExecutor);
+        coalescers.put(clazz, coalescer);
+        return coalescer;
+    }
+
+    public <T> MongoIdCoalescer<T> enableCoalescing(Class<T> clazz) {
+        return enableCoalescing(clazz, new MongoIdCoalescer.Config());
+    }
+
+    public void disableCoalescing(Class<?> clazz) {
+        coalescers.remove(clazz);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T findById(Object id, Class<T> clazz) {
+        MongoIdCoalescer<T> coalescer = (MongoIdCoalescer<T>) coalescers.get(clazz);
+        if (coalescer != null) {
+            return coalescer.get(id);
+        }
+        return mongoTemplate.findById(id, clazz);
+    }
+
     //====== methods below ======//
 
     public <T> T getModel(Object id, Class<T> clazz) {
-        return mongoTemplate.findById(id, clazz);
+        MongoEntityCache<T> cache = getCache(clazz);
+        if (cache != null) {
+            return cache.get(MongoEntityCache.ID_KEY, id);
+        }
+        return findById(id, clazz);
+    }
+
+    /**
+     * Get the entities of the ids by {@code $in} queries of {@value DEFAULT_CHUNK_SIZE} ids, run in parallel on the
+     * batch executor.
+     *
+     * @param ids   the ids, duplicates and nulls are skipped
+     * @param clazz the entityType you queried
+     * @param <T>   return type
+     * @return the ids found to their entities, in the order of the ids
+     */
+    public <T> Map<Object, T> getModels(Collection<?> ids, Class<T> clazz) {
+        return getModels(ids, DEFAULT_CHUNK_SIZE, clazz);
+    }
+
+    /**
+     * @param ids       the ids, duplicates and nulls are skipped
+     * @param chunkSize ids per {@code $in} query
+     * @param clazz     the entityType you queried
+     * @param <T>       return type
+     * @return the ids found to their entities, in the order of the ids
+     * @see MongoDao#getModels(Collection, Class)
+     */
+    public <T> Map<Object, T> getModels(Collection<?> ids, int chunkSize, Class<T> clazz) {
+        return getModels(ids, chunkSize, batchExecutor, clazz);
+    }
+
+    /**
+     * @param ids       the ids, duplicates and nulls are skipped
+     * @param chunkSize ids per {@code $in} query
+     * @param executor  runs the chunks but the first, which runs in the calling thread
+     * @param clazz     the entityType you queried
+     * @param <T>       return type
+     * @return the ids found to their entities, in the order of the ids
+     * @see MongoDao#getModels(Collection, Class)
+     */
+    public <T> Map<Object, T> getModels(Collection<?> ids, int chunkSize, Executor executor, Class<T> clazz) {
+        if (ids == null) {
+            throw new IllegalArgumentException("ids should not be null!");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize " + chunkSize + " should be positive!");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor should not be null!");
+        }
+        // normalized id to the id as given
+        Map<Object, Object> distinct = new LinkedHashMap<>();
+        for (Object id : ids) {
+            if (id != null) {
+                distinct.putIfAbsent(MongoEntityCache.normalizeId(id), id);
+            }
+        }
+        Map<Object, T> found = new ConcurrentHashMap<>();
+        // queried as given, spring converts them as for findById
+        List<List<Object>> chunks = Lists.partition(new ArrayList<>(distinct.values()), chunkSize);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(chunks.size());
+        for (int i = 1; i < chunks.size(); i++) {
+            List<Object> chunk = chunks.get(i);
+            futures.add(CompletableFuture.runAsync(() -> findChunk(chunk, clazz, found), executor));
+        }
+        if (!chunks.isEmpty()) {
+            findChunk(chunks.get(0), clazz, found);
+        }
+        try {
+            futures.forEach(CompletableFuture::join);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        Map<Object, T> models = new LinkedHashMap<>();
+        distinct.forEach((key, id) -> {
+            T entity = found.get(key);
+            if (entity != null) {
+                models.put(id, entity);
+            }
+        });
+        return models;
+    }
+
+    private <T> void findChunk(List<Object> chunk, Class<T> clazz, Map<Object, T> found) {
+        for (T entity : mongoTemplate.find(Query.query(Criteria.where("id").in(chunk)), clazz)) {
+            Object id = idOf(entity);
+            if (id != null) {
+                found.put(MongoEntityCache.normalizeId(id), entity);
+            }
+        }
+    }
+
+    /**
+     * Like {@link MongoDao#getModels(Collection, Class)}, as a list.
+     *
+     * @param ids   the ids, duplicates and nulls are skipped
+     * @param clazz the entityType you queried
+     * @param <T>   return type
+     * @return the entities found, in the order of the ids
+     */
+    public <T> List<T> getModelList(Collection<?> ids, Class<T> clazz) {
+        return new ArrayList<>(getModels(ids, clazz).values());
     }
 
     public <T> T getModel(Query query, Class<T> clazz) {
@@ -65,11 +348,18 @@ public class MongoDao {
     }
 
     public <T> T getModel(String idKey, Object id, Class<T> clazz) {
+        MongoEntityCache<T> cache = getCache(clazz);
+        if (cache != null) {
+            return cache.get(idKey, id);
+        }
         Query query = Query.query(Criteria.where(idKey).is(id));
         return mongoTemplate.findOne(query, clazz);
     }
 
     public <T, U> U getModel(String idKey, Object id, Function<T, U> converter, Class<T> clazz, String... fields) {
+        if ((fields == null || fields.length == 0) && getCache(clazz) != null) {
+            return converter.apply(getModel(idKey, id, clazz));
+        }
         Criteria criteria = Criteria.where(idKey).is(id);
         Query query = Query.query(criteria);
         if (fields != null && fields.length > 0) {
@@ -96,6 +386,22 @@ public class MongoDao {
         return buildStream2(query, parallel, clazz);
     }
 
+    /**
+     * Stream through a {@link DBCursor} of the given batch size, converting each {@link DBObject} to the entity.
+     *
+     * @param query     what and how do you want to query
+     * @param parallel  if {@code true} then the returned stream is a parallel
+     *                  stream; if {@code false} the returned stream is a sequential
+     *                  stream.
+     * @param batchSize documents per round-trip, 0 for the server's default
+     * @param clazz     the entityType you queried
+     * @param <T>       return type
+     * @return a new sequential or parallel {@code Stream}, close it to close the cursor
+     */
+    public <T> Stream<T> stream(Query query, boolean parallel, int batchSize, Class<T> clazz) {
+        return buildCursorStream(query, parallel, batchSize, clazz);
+    }
+
     /**
      * This geo query works, but it has some limits. I would like I or someone could figure out it.
      *
@@ -125,10 +431,18 @@ public class MongoDao {
      */
     @Deprecated
     private <T> Stream<T> buildStream1(Query query, boolean parallel, Class<T> clazz) {
+        return buildCursorStream(query, parallel, 0, clazz);
+    }
+
+    private <T> Stream<T> buildCursorStream(Query query, boolean parallel, int batchSize, Class<T> clazz) {
         DBCursor cursor = mongoTemplate.execute(clazz,
                 collection -> collection.find(query.getQueryObject(), query.getFieldsObject()));
         cursor = prepareCursor(cursor, query);
+        if (batchSize > 0) {
+            cursor.batchSize(batchSize);
+        }
         MongoConverter converter = mongoTemplate.getConverter();
+        DBCursor cursorToClose = cursor;
         return StreamSupport.stream(cursor.spliterator(), parallel)
                             .map(o -> {
                                 try {
@@ -138,7 +452,8 @@ public class MongoDao {
                                     return null;
                                 }
                             })
-                            .filter(Objects::nonNull);
+                            .filter(Objects::nonNull)
+                            .onClose(cursorToClose::close);
     }
 
     private DBCursor prepareCursor(DBCursor cursor, Query query) {
@@ -194,22 +509,61 @@ public class MongoDao {
 
     public void updateFirst(Query query, Update update, Class<?> clazz) {
         mongoTemplate.updateFirst(query, update, clazz);
+        invalidate(clazz, query);
     }
 
     public void updateMulti(Query query, Update update, Class<?> clazz) {
         mongoTemplate.updateMulti(query, update, clazz);
+        invalidate(clazz, query);
     }
 
     public void upsert(Query query, Update update, Class<?> clazz) {
         mongoTemplate.upsert(query, update, clazz);
+        invalidate(clazz, query);
     }
 
     public void save(Object objectToSave) {
         mongoTemplate.save(objectToSave);
+        // after saving, a new entity has its id now
+        invalidate(objectToSave);
     }
 
     public void insert(Collection<?> batchToSave, Class<?> clazz) {
         mongoTemplate.insert(batchToSave, clazz);
+        if (caches.containsKey(clazz)) {
+            // cached misses of the ids
+            batchToSave.forEach(this::invalidate);
+        }
+    }
+
+    /**
+     * @param clazz  the entityType to write
+     * @param config the batching settings
+     * @return a new bulk writer, close it when done
+     */
+    public MongoBulkWriter bulkWriter(Class<?> clazz, MongoBulkWriter.Config config) {
+        if (caches.containsKey(clazz)) {
+            // the writes are not tracked one by one, drop the whole cache after each flush
+            Consumer<MongoBulkWriter.FlushResult> listener = config.listener();
+            config = config.copy().listener(result -> {
+                MongoEntityCache<?> cache = caches.get(clazz);
+                if (cache != null) {
+                    cache.invalidateAll();
+                }
+                if (listener != null) {
+                    listener.accept(result);
+                }
+            });
+        }
+        return new MongoBulkWriter(mongoTemplate, clazz, config);
+    }
+
+    /**
+     * @param clazz the entityType to write
+     * @return a new unordered bulk writer of the default settings, close it when done
+     */
+    public MongoBulkWriter bulkWriter(Class<?> clazz) {
+        return bulkWriter(clazz, new MongoBulkWriter.Config());
     }
 
     public DBCollection getCollection(Class<?> clazz) {
@@ -218,11 +572,15 @@ public class MongoDao {
     }
 
     public WriteResult remove(Object objectToRemove) {
-        return mongoTemplate.remove(objectToRemove);
+        WriteResult result = mongoTemplate.remove(objectToRemove);
+        invalidate(objectToRemove);
+        return result;
     }
 
     public WriteResult remove(Query query, Class<?> clazz) {
-        return mongoTemplate.remove(query, clazz);
+        WriteResult result = mongoTemplate.remove(query, clazz);
+        invalidate(clazz, query);
+        return result;
     }
 
     public List<?> distinct(String fieldName, Class<?> clazz) {
@@ -243,4 +601,44 @@ public class MongoDao {
                 collection -> collection.findOne(query.getQueryObject(), query.getFieldsObject()));
     }
 
+    /**
+     * Like {@link MongoDao#getDBObject(Query, Class)}, but nothing is decoded until read.
+     *
+     * @param query what and how do you want to query, the fields of it is the projection
+     * @param clazz the entityType you queried
+     * @return a read-only view over the BSON bytes, or null if none
+     */
+    public RawBsonData getRawData(Query query, Class<?> clazz) {
+        DBCursor cursor = rawCursor(query, clazz).limit(-1);
+        try {
+            return cursor.hasNext() ? (RawBsonData) cursor.next() : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Stream documents as they are, for read-and-forward: no entity nor {@link DBObject} is built, and each one
+     * can be written out as BSON or JSON straight from its bytes.
+     *
+     * @param query    what and how do you want to query, the fields of it is the projection
+     * @param parallel if {@code true} then the returned stream is a parallel
+     *                 stream; if {@code false} the returned stream is a sequential
+     *                 stream.
+     * @param clazz    the entityType you queried
+     * @return a new sequential or parallel {@code Stream}, close it to close the cursor
+     */
+    public Stream<RawBsonData> streamRaw(Query query, boolean parallel, Class<?> clazz) {
+        DBCursor cursor = rawCursor(query, clazz);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.NONNULL), parallel)
+                            .map(o -> (RawBsonData) o)
+                            .onClose(cursor::close);
+    }
+
+    private DBCursor rawCursor(Query query, Class<?> clazz) {
+        DBCursor cursor = mongoTemplate.execute(clazz,
+                collection -> collection.find(query.getQueryObject(), query.getFieldsObject()));
+        return prepareCursor(cursor, query).setDecoderFactory(RawBsonData.DECODER_FACTORY);
+    }
+
 }
@@ -0,0 +1,358 @@
+package com.tsingye.mongo;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.mongodb.DBObject;
+import org.bson.types.ObjectId;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * a read-through cache of one entity class in front of {@link MongoDao#getModel(Object, Class)} and
+ * {@link MongoDao#getModel(String, Object, Class)}, keyed by the id key and the id.
+ * <p>Entries are evicted by {@link Config#maximumSize(long)} and {@link Config#expireAfterWrite(long, TimeUnit)}.
+ * Misses are cached too for {@link Config#expireMissesAfter(long, TimeUnit)}. Concurrent reads of the same key
+ * share one query.</p>
+ * <p>It keeps a copy of each entity and hands out a new copy on every read, those of {@link MongoDao} are kept as
+ * their {@code DBObject} and converted on each hit. So a caller may change what it got, the cache and the other
+ * readers do not see it.</p>
+ * <p>Writes through {@link MongoDao} invalidate it: a write of a known id drops the entry of that id and outdates all
+ * entries of other id keys, any other write drops everything of the class. A read racing a write is not kept. Writes
+ * that bypass {@link MongoDao} are seen after the expiry only.</p>
+ * Get one by {@link MongoDao#enableCache(Class, Config)}.
+ */
+public class MongoEntityCache<T> {
+
+    static final String ID_KEY = "_id";
+
+    private final LoadingCache<Key, Entry> cache;
+
+    private final long missTtlNanos;
+
+    /**
+     * makes the copy kept of a loaded entity
+     */
+    private final Function<? super T, ?> toCached;
+
+    /**
+     * makes the copy handed out of a kept one
+     */
+    private final Function<Object, ? extends T> fromCached;
+
+    /**
+     * entries being loaded and not stored yet, so a write meanwhile can mark them stale
+     */
+    private final Set<Entry> loading = ConcurrentHashMap.newKeySet();
+
+    /**
+     * bumped by every write of a known id, entries of other id keys loaded before it are outdated. so a write does
+     * not have to find them
+     */
+    private final AtomicLong otherKeysGeneration = new AtomicLong();
+
+    /**
+     * for immutable entities, handed out as they are
+     */
+    MongoEntityCache(Config config, BiFunction<String, Object, T> loader) {
+        this(config, loader, Function.identity(), value -> {
+            @SuppressWarnings("unchecked")
+            T entity = (T) value;
+            return entity;
+        });
+    }
+
+    /**
+     * @param loader     loads the entity of the id key and id, null if none
+     * @param toCached   makes the copy kept of a loaded entity
+     * @param fromCached makes the copy handed out of a kept one, on every hit
+     */
+    MongoEntityCache(Config config, BiFunction<String, Object, T> loader, Function<? super T, ?> toCached,
+                     Function<Object, ? extends T> fromCached) {
+        this.missTtlNanos = config.missTtlNanos;
+        this.toCached = toCached;
+        this.fromCached = fromCached;
+        this.cache = CacheBuilder.newBuilder()
+                                 .maximumSize(config.maximumSize)
+                                 .expireAfterWrite(config.ttlNanos, TimeUnit.NANOSECONDS)
+                                 .recordStats()
+                                 .build(new CacheLoader<Key, Entry>() {
+                                     @Override
+                                     public Entry load(Key key) {
+                                         return loadEntry(key, loader);
+                                     }
+                                 });
+    }
+
+    /**
+     * @param idKey the id key, {@code id} and {@code _id} are the same
+     * @param id    the id
+     * @return a copy of the entity of its own, or null if none
+     */
+    public T get(String idKey, Object id) {
+        Key key = new Key(idKey, id);
+        Entry entry = getEntry(key);
+        if (entry != null && (entry.isExpired() || isOutdated(entry))) {
+            cache.asMap().remove(key, entry);
+            entry = getEntry(key);
+        }
+        if (entry == null) {
+            return null;
+        }
+        if (entry.stale) {
+            // as fresh as the write it raced with, just not kept
+            cache.asMap().remove(key, entry);
+        }
+        return entry.value == null ? null : fromCached.apply(entry.value);
+    }
+
+    /**
+     * drop the entry of the id and outdate all entries of other id keys, they are dropped when read
+     *
+     * @param id the id of the written entity, null if unknown
+     */
+    public void invalidate(Object id) {
+        if (id == null) {
+            invalidateAll();
+            return;
+        }
+        otherKeysGeneration.incrementAndGet();
+        Key key = new Key(ID_KEY, id);
+        for (Entry entry : loading) {
+            if (entry.key.equals(key)) {
+                entry.stale = true;
+            }
+        }
+        cache.invalidate(key);
+    }
+
+    /**
+     * drop the entries a write of the query may affect
+     *
+     * @param queryObject the query of the write
+     */
+    public void invalidate(DBObject queryObject) {
+        invalidate(idOf(queryObject));
+    }
+
+    public void invalidateAll() {
+        for (Entry entry : loading) {
+            entry.stale = true;
+        }
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return count of entries, misses included
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return hits, misses, loads and evictions so far. cached misses are hits
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public double hitRate() {
+        return cache.stats().hitRate();
+    }
+
+    private boolean isOutdated(Entry entry) {
+        return !ID_KEY.equals(entry.key.idKey) && entry.generation != otherKeysGeneration.get();
+    }
+
+    private Entry getEntry(Key key) {
+        try {
+            Entry entry = cache.getUnchecked(key);
+            // stored by now, a write from here on drops it
+            loading.remove(entry);
+            return entry;
+        } catch (InvalidCacheLoadException e) {
+            // a miss, not cached
+            return null;
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private Entry loadEntry(Key key, BiFunction<String, Object, T> loader) {
+        // before the query, a write meanwhile outdates it
+        Entry entry = new Entry(key, otherKeysGeneration.get());
+        loading.add(entry);
+        try {
+            T value = loader.apply(key.idKey, key.id);
+            entry.value = value == null ? null : toCached.apply(value);
+        } catch (RuntimeException e) {
+            loading.remove(entry);
+            throw e;
+        }
+        if (entry.value == null) {
+            if (missTtlNanos <= 0) {
+                loading.remove(entry);
+                return null;
+            }
+            entry.expiresAt = System.nanoTime() + missTtlNanos;
+        }
+        return entry;
+    }
+
+    /**
+     * @return the id if the query selects by id equality, null otherwise
+     */
+    static Object idOf(DBObject queryObject) {
+        if (queryObject == null) {
+            return null;
+        }
+        Object id = queryObject.containsField(ID_KEY) ? queryObject.get(ID_KEY) : queryObject.get("id");
+        if (id instanceof DBObject || id instanceof Pattern) {
+            // operators
+            return null;
+        }
+        return id;
+    }
+
+    /**
+     * @return the id as it matches the entity: spring stores an ObjectId-like String id as an ObjectId, and mongo
+     * matches an integer of any width, so 1 finds the entity of id 1L
+     */
+    static Object normalizeId(Object id) {
+        if (id instanceof ObjectId) {
+            return ((ObjectId) id).toHexString();
+        }
+        if (id instanceof Integer || id instanceof Short || id instanceof Byte) {
+            return ((Number) id).longValue();
+        }
+        return id;
+    }
+
+    private static final class Key {
+
+        private final String idKey;
+
+        /**
+         * as given, for the query
+         */
+        private final Object id;
+
+        /**
+         * for equality, only ids of {@code _id} are normalized as spring converts them back
+         */
+        private final Object match;
+
+        Key(String idKey, Object id) {
+            this.idKey = "id".equals(idKey) ? ID_KEY : idKey;
+            this.id = id;
+            this.match = ID_KEY.equals(this.idKey) ? normalizeId(id) : id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return idKey.equals(key.idKey) && Objects.equals(match, key.match);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * idKey.hashCode() + Objects.hashCode(match);
+        }
+    }
+
+    private static final class Entry {
+
+        private final Key key;
+
+        /**
+         * of the entries of other id keys when loaded
+         */
+        private final long generation;
+
+        /**
+         * the copy kept
+         */
+        private Object value;
+
+        /**
+         * for a cached miss
+         */
+        private long expiresAt;
+
+        private volatile boolean stale;
+
+        Entry(Key key, long generation) {
+            this.key = key;
+            this.generation = generation;
+        }
+
+        boolean isExpired() {
+            return value == null && System.nanoTime() - expiresAt > 0;
+        }
+    }
+
+    /**
+     * settings of a {@link MongoEntityCache}
+     */
+    public static final class Config {
+
+        private long maximumSize = 10_000L;
+
+        private long ttlNanos = TimeUnit.MINUTES.toNanos(5L);
+
+        private long missTtlNanos = TimeUnit.SECONDS.toNanos(10L);
+
+        /**
+         * @param maximumSize entries at most, misses included, 10000 by default
+         */
+        public Config maximumSize(long maximumSize) {
+            if (maximumSize <= 0) {
+                throw new IllegalArgumentException("maximumSize " + maximumSize + " should be positive!");
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * @param ttl how long an entity is kept after loaded, 5 minutes by default
+         */
+        public Config expireAfterWrite(long ttl, TimeUnit unit) {
+            if (ttl <= 0) {
+                throw new IllegalArgumentException("ttl " + ttl + " should be positive!");
+            }
+            this.ttlNanos = unit.toNanos(ttl);
+            return this;
+        }
+
+        /**
+         * @param ttl how long a miss is kept, at most the ttl of entities, 0 to not cache misses, 10 seconds by
+         *            default
+         */
+        public Config expireMissesAfter(long ttl, TimeUnit unit) {
+            if (ttl < 0) {
+                throw new IllegalArgumentException("ttl " + ttl + " should not be negative!");
+            }
+            this.missTtlNanos = unit.toNanos(ttl);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.tsingye.mongo;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * batches concurrent single-id reads of one entity class into one {@code $in} query, like a data loader.
+ * <p>The first read of a batch waits {@link Config#window(long, TimeUnit)} for others to join, a batch of
+ * {@link Config#maxBatchSize(int)} ids is queried at once by the read filling it. Reads of the same id in a batch
+ * share the result. It trades up to a window of latency for round-trips, so it pays under fan-out only.</p>
+ * Get one by {@link MongoDao#enableCoalescing(Class, Config)}.
+ */
+public class MongoIdCoalescer<T> {
+
+    private static final ScheduledExecutorService TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "mongo-id-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Function<Collection<Object>, Map<Object, T>> batchLoader;
+
+    private final long windowNanos;
+
+    private final int maxBatchSize;
+
+    private final Executor executor;
+
+    /**
+     * normalized id to its result, guarded by this
+     */
+    private Map<Object, CompletableFuture<T>> pending = new LinkedHashMap<>();
+
+    /**
+     * @param config          the batching settings
+     * @param batchLoader     loads the entities of the ids, keyed by the ids as given
+     * @param defaultExecutor loads the batches due, if the config has no executor
+     */
+    MongoIdCoalescer(Config config, Function<Collection<Object>, Map<Object, T>> batchLoader,
+                     Executor defaultExecutor) {
+        this.batchLoader = batchLoader;
+        this.windowNanos = config.windowNanos;
+        this.maxBatchSize = config.maxBatchSize;
+        this.executor = config.executor != null ? config.executor : defaultExecutor;
+    }
+
+    /**
+     * @param id the id
+     * @return the entity, or null if none
+     */
+    public T get(Object id) {
+        Object key = MongoEntityCache.normalizeId(id);
+        CompletableFuture<T> future;
+        Map<Object, CompletableFuture<T>> full = null;
+        synchronized (this) {
+            future = pending.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                Map<Object, CompletableFuture<T>> batch = pending;
+                if (batch.isEmpty()) {
+                    TIMER.schedule(() -> flush(batch), windowNanos, TimeUnit.NANOSECONDS);
+                }
+                batch.put(key, future);
+                if (batch.size() >= maxBatchSize) {
+                    full = batch;
+                    pending = new LinkedHashMap<>();
+                }
+            }
+        }
+        if (full != null) {
+            // this thread waits anyway
+            load(full);
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void flush(Map<Object, CompletableFuture<T>> batch) {
+        synchronized (this) {
+            if (pending != batch) {
+                // filled up and loaded already
+                return;
+            }
+            pending = new LinkedHashMap<>();
+        }
+        // keep the timer thread free for the other batches, unless the executor is saturated and runs it here
+        try {
+            executor.execute(() -> load(batch));
+        } catch (RuntimeException e) {
+            // rejected
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    private void load(Map<Object, CompletableFuture<T>> batch) {
+        try {
+            Map<Object, T> found = batchLoader.apply(batch.keySet());
+            batch.forEach((key, future) -> future.complete(found.get(key)));
+        } catch (RuntimeException | Error e) {
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * settings of a {@link MongoIdCoalescer}
+     */
+    public static final class Config {
+
+        private long windowNanos = TimeUnit.MILLISECONDS.toNanos(2L);
+
+        private int maxBatchSize = MongoDao.DEFAULT_CHUNK_SIZE;
+
+        private Executor executor;
+
+        /**
+         * @param window how long the first read of a batch waits for others, 2ms by default
+         */
+        public Config window(long window, TimeUnit unit) {
+            if (window < 0) {
+                throw new IllegalArgumentException("window " + window + " should not be negative!");
+            }
+            this.windowNanos = unit.toNanos(window);
+            return this;
+        }
+
+        /**
+         * @param maxBatchSize ids per query at most, 500 by default
+         */
+        public Config maxBatchSize(int maxBatchSize) {
+            if (maxBatchSize <= 0) {
+                throw new IllegalArgumentException("maxBatchSize " + maxBatchSize + " should be positive!");
+            }
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * @param executor loads the batches due by the window, the batch executor of the dao by default. a full
+         *                 batch is loaded by the read filling it
+         */
+        public Config executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+    }
+}
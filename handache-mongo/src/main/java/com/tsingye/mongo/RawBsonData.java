@@ -0,0 +1,220 @@
+package com.tsingye.mongo;
+
+import com.mongodb.DBCallback;
+import com.mongodb.DBCollection;
+import com.mongodb.DBDecoderFactory;
+import com.mongodb.LazyDBCallback;
+import com.mongodb.LazyDBDecoder;
+import com.mongodb.LazyDBObject;
+import org.bson.BsonBinaryReader;
+import org.bson.LazyBSONCallback;
+import org.bson.json.JsonWriter;
+import org.bson.json.JsonWriterSettings;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * a read-only {@link Map} view over the raw BSON bytes of a document, as read by
+ * {@link MongoDao#getRawData(org.springframework.data.mongodb.core.query.Query, Class)} and
+ * {@link MongoDao#streamRaw(org.springframework.data.mongodb.core.query.Query, boolean, Class)}.
+ * <p>Nothing is decoded until asked for: a value is decoded from the bytes on each {@link #get(Object)}, nested
+ * documents are views again. It can be copied into a {@code JsonData} or any other map, or written out as BSON or
+ * JSON straight from the bytes.</p>
+ */
+public class RawBsonData extends LazyDBObject implements Map<String, Object> {
+
+    /**
+     * decodes documents into {@link RawBsonData}, for {@link com.mongodb.DBCursor#setDecoderFactory(DBDecoderFactory)}
+     */
+    public static final DBDecoderFactory DECODER_FACTORY = Decoder::new;
+
+    private static final byte[] DB_REF_KEY = {'$', 'r', 'e', 'f', 0};
+
+    public RawBsonData(byte[] bytes) {
+        this(bytes, 0, new Callback(null));
+    }
+
+    RawBsonData(byte[] bytes, int offset, LazyBSONCallback callback) {
+        super(bytes, offset, callback);
+    }
+
+    //============= typed getters, as JsonData's =============//
+
+    public String getString(String key, String defaultValue) {
+        Object o = get(key);
+        return o == null ? defaultValue : o.toString();
+    }
+
+    /**
+     * @throws ClassCastException if the value is not an int32, nothing is narrowed
+     */
+    public int getInt(String key, int defaultValue) {
+        Object o = get(key);
+        return o == null ? defaultValue : (Integer) o;
+    }
+
+    /**
+     * an int32 is widened
+     *
+     * @throws ClassCastException if the value is not an int32 or int64
+     */
+    public long getLong(String key, long defaultValue) {
+        Object o = get(key);
+        if (o == null) {
+            return defaultValue;
+        }
+        return o instanceof Integer ? (Integer) o : (Long) o;
+    }
+
+    /**
+     * any other number is converted
+     *
+     * @throws ClassCastException if the value is not a number
+     */
+    public double getDouble(String key, double defaultValue) {
+        Object o = get(key);
+        return o == null ? defaultValue : ((Number) o).doubleValue();
+    }
+
+    //============= encode =============//
+
+    /**
+     * @return a read-only buffer over the BSON bytes of this document, not copied
+     */
+    public ByteBuffer toByteBuffer() {
+        ByteBuffer buffer = ByteBuffer.wrap(getBytes(), getOffset(), getBSONSize()).slice();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * write as JSON straight from the bytes
+     *
+     * @param writer   where to write
+     * @param settings the JSON mode and so on
+     */
+    public void writeJson(Writer writer, JsonWriterSettings settings) {
+        try (BsonBinaryReader reader = new BsonBinaryReader(toByteBuffer())) {
+            new JsonWriter(writer, settings).pipe(reader);
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the JSON in strict mode
+     */
+    public String toJson() {
+        StringWriter writer = new StringWriter(getBSONSize() + (getBSONSize() >> 1));
+        writeJson(writer, new JsonWriterSettings());
+        return writer.toString();
+    }
+
+    //============= Map =============//
+
+    @Override
+    public int size() {
+        return keySet().size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && containsField((String) key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return values().contains(value);
+    }
+
+    @Override
+    public Object get(Object key) {
+        return key instanceof String ? get((String) key) : null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        throw new UnsupportedOperationException("Object is read only");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Object is read only");
+    }
+
+    @Override
+    public Collection<Object> values() {
+        Set<Map.Entry<String, Object>> entries = entrySet();
+        Collection<Object> values = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Object> entry : entries) {
+            values.add(entry.getValue());
+        }
+        return values;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        return o instanceof Map && entrySet().equals(((Map<?, ?>) o).entrySet());
+    }
+
+    @Override
+    public int hashCode() {
+        return entrySet().hashCode();
+    }
+
+    /**
+     * makes nested documents {@link RawBsonData} too
+     */
+    private static final class Callback extends LazyDBCallback {
+
+        Callback(DBCollection collection) {
+            super(collection);
+        }
+
+        @Override
+        public Object createObject(byte[] bytes, int offset) {
+            if (isDBRef(bytes, offset)) {
+                return super.createObject(bytes, offset);
+            }
+            return new RawBsonData(bytes, offset, this);
+        }
+
+        /**
+         * @return true if the first key is $ref, the rest is checked by {@link LazyDBCallback}
+         */
+        private static boolean isDBRef(byte[] bytes, int offset) {
+            // int32 size, then the type of the first element
+            int name = offset + 5;
+            if (bytes.length < name + DB_REF_KEY.length) {
+                return false;
+            }
+            for (int i = 0; i < DB_REF_KEY.length; i++) {
+                if (bytes[name + i] != DB_REF_KEY[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Decoder extends LazyDBDecoder {
+
+        @Override
+        public DBCallback getDBCallback(DBCollection collection) {
+            return new Callback(collection);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.tsingye.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.MongoClient;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * the writer's life cycle, against bulk operations that write nothing, no mongod needed
+ */
+public class MongoBulkWriterTest {
+
+    private static MongoClient client;
+
+    private static MongoTemplate mongoTemplate;
+
+    private static final AtomicInteger executed = new AtomicInteger();
+
+    @BeforeClass
+    public static void setUp() {
+        // connects lazily, never used
+        client = new MongoClient();
+        mongoTemplate = new MongoTemplate(new SimpleMongoDbFactory(client, "anyTest")) {
+            @Override
+            public BulkOperations bulkOps(BulkOperations.BulkMode mode, Class<?> entityClass) {
+                return (BulkOperations) Proxy.newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[]{BulkOperations.class}, (proxy, method, args) -> {
+                            if ("execute".equals(method.getName())) {
+                                executed.incrementAndGet();
+                                return null;
+                            }
+                            return proxy;
+                        });
+            }
+        };
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        client.close();
+    }
+
+    @Test(timeout = 10_000L)
+    public void testConcurrentClose() throws Exception {
+        MongoBulkWriter writer = new MongoBulkWriter(mongoTemplate, TestEntity.class, new MongoBulkWriter.Config());
+        writer.insert(new BasicDBObject("_id", 1));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?> close1 = executor.submit(() -> {
+                writer.close();
+                return null;
+            });
+            Future<?> close2 = executor.submit(() -> {
+                writer.close();
+                return null;
+            });
+            Future<?> flush = executor.submit(() -> {
+                try {
+                    writer.flush();
+                } catch (IllegalStateException e) {
+                    // closed already
+                }
+                return null;
+            });
+            close1.get();
+            close2.get();
+            flush.get();
+        } finally {
+            executor.shutdown();
+        }
+        try {
+            writer.insert(new BasicDBObject("_id", 2));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(0, writer.pending());
+        }
+    }
+
+    @Test(timeout = 10_000L)
+    public void testFlusherError() throws Exception {
+        MongoBulkWriter.Config config = new MongoBulkWriter.Config().batchSize(1).capacity(1).listener(result -> {
+            throw new AssertionError("listener failed");
+        });
+        MongoBulkWriter writer = new MongoBulkWriter(mongoTemplate, TestEntity.class, config);
+        writer.insert(new BasicDBObject("_id", 1));
+        while (!writer.isStopped()) {
+            Thread.sleep(10L);
+        }
+        // the flusher is gone, nothing blocks and nothing is buffered
+        try {
+            writer.insert(new BasicDBObject("_id", 2));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("the bulk writer is stopped", e.getMessage());
+        }
+        writer.flush();
+        writer.close();
+        Assert.assertEquals(0, writer.pending());
+    }
+
+    @Test(timeout = 10_000L)
+    public void testFlush() throws Exception {
+        int before = executed.get();
+        try (MongoBulkWriter writer = new MongoBulkWriter(mongoTemplate, TestEntity.class,
+                new MongoBulkWriter.Config().batchSize(2).maxDelay(1L, TimeUnit.HOURS))) {
+            for (int i = 0; i < 5; i++) {
+                writer.insert(new BasicDBObject("_id", i));
+            }
+            writer.flush();
+            Assert.assertEquals(before + 3, executed.get());
+        }
+    }
+}
@@ -15,6 +15,13 @@ import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
 /**
  * simple test?
  * Created by tsingye on 16-12-20.
@@ -68,6 +75,66 @@ public class MongoDaoTest {
         Assert.assertTrue(result.wasAcknowledged());
     }
 
+    @Test
+    public void testBulkWriter() throws Exception {
+        List<MongoBulkWriter.FlushResult> results = new CopyOnWriteArrayList<>();
+        MongoBulkWriter.Config config = new MongoBulkWriter.Config().batchSize(10)
+                                                                    .maxDelay(50, TimeUnit.MILLISECONDS)
+                                                                    .listener(results::add);
+        try (MongoBulkWriter writer = mongoDao.bulkWriter(TestEntity.class, config)) {
+            for (int i = 0; i < 25; i++) {
+                TestEntity entity = new TestEntity();
+                entity.setId("bulk" + i);
+                entity.setName(mockName);
+                entity.setAge(i);
+                writer.insert(entity);
+            }
+            writer.flush();
+            Assert.assertEquals(3, results.size());
+            Assert.assertEquals(25, mongoDao.count(Query.query(Criteria.where("name").is(mockName)), TestEntity.class));
+            writer.updateMulti(Query.query(Criteria.where("age").lt(5)), new Update().set("sex", true));
+            writer.remove(Query.query(Criteria.where("age").gte(20)));
+        }
+        Assert.assertTrue(results.stream().allMatch(MongoBulkWriter.FlushResult::isSuccessful));
+        Assert.assertEquals(20, mongoDao.count(Query.query(Criteria.where("name").is(mockName)), TestEntity.class));
+        Assert.assertEquals(5, mongoDao.count(Query.query(Criteria.where("sex").is(true)), TestEntity.class));
+        mongoDao.remove(Query.query(Criteria.where("name").is(mockName)), TestEntity.class);
+    }
+
+    @Test
+    public void testGetModels() {
+        List<TestEntity> entities = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            TestEntity entity = new TestEntity();
+            entity.setId("models" + i);
+            entity.setName(mockName);
+            entity.setAge(i);
+            entities.add(entity);
+        }
+        mongoDao.insert(entities, TestEntity.class);
+        List<String> ids = Arrays.asList("models3", "models0", "none", "models3", "models1");
+        Map<Object, TestEntity> models = mongoDao.getModels(ids, 2, TestEntity.class);
+        Assert.assertEquals(Arrays.asList("models3", "models0", "models1"), new ArrayList<>(models.keySet()));
+        Assert.assertEquals(3, models.get("models3").getAge());
+        Assert.assertEquals(3, mongoDao.getModelList(ids, TestEntity.class).size());
+
+        mongoDao.enableCoalescing(TestEntity.class);
+        Assert.assertEquals(4, mongoDao.getModel("models4", TestEntity.class).getAge());
+        Assert.assertNull(mongoDao.getModel("none", TestEntity.class));
+        mongoDao.disableCoalescing(TestEntity.class);
+        mongoDao.remove(Query.query(Criteria.where("name").is(mockName)), TestEntity.class);
+
+        // Integer ids of Long id fields
+        for (long i = 0; i < 3; i++) {
+            LongIdEntity entity = new LongIdEntity();
+            entity.setId(i);
+            mongoDao.save(entity);
+        }
+        Map<Object, LongIdEntity> byLong = mongoDao.getModels(Arrays.asList(2, 0, 5), LongIdEntity.class);
+        Assert.assertEquals(Arrays.asList(2, 0), new ArrayList<>(byLong.keySet()));
+        Assert.assertEquals(Long.valueOf(2L), byLong.get(2).getId());
+    }
+
     @AfterClass
     public static void tearDown() {
         mongoTemplate.getDb().dropDatabase();
@@ -132,3 +199,21 @@ class TestEntity {
         this.remark = remark;
     }
 }
+
+/**
+ * an entity of a Long id
+ */
+@Document(collection = "longIdEntity")
+class LongIdEntity {
+
+    @Id
+    private Long id;
+
+    Long getId() {
+        return id;
+    }
+
+    void setId(Long id) {
+        this.id = id;
+    }
+}
@@ -0,0 +1,204 @@
+package com.tsingye.mongo;
+
+import com.mongodb.BasicDBObject;
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * the cache alone, loading from a counter instead of mongo
+ */
+public class MongoEntityCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private MongoEntityCache<String> newCache(MongoEntityCache.Config config) {
+        return new MongoEntityCache<>(config, (idKey, id) -> {
+            loads.incrementAndGet();
+            return "none".equals(id) ? null : idKey + "=" + id + "#" + loads.get();
+        });
+    }
+
+    @Test
+    public void testReadThrough() {
+        MongoEntityCache<String> cache = newCache(new MongoEntityCache.Config());
+        Assert.assertEquals("_id=a#1", cache.get("_id", "a"));
+        Assert.assertEquals("_id=a#1", cache.get("id", "a"));
+        Assert.assertEquals("name=a#2", cache.get("name", "a"));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(1, cache.stats().hitCount());
+        Assert.assertEquals(1.0 / 3, cache.hitRate(), 1e-9);
+    }
+
+    @Test
+    public void testObjectId() {
+        MongoEntityCache<String> cache = newCache(new MongoEntityCache.Config());
+        ObjectId id = new ObjectId();
+        cache.get("_id", id);
+        cache.get("_id", id.toHexString());
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testObjectIdOfOtherKey() {
+        List<Object> loaded = new ArrayList<>();
+        MongoEntityCache<String> cache = new MongoEntityCache<>(new MongoEntityCache.Config(), (idKey, id) -> {
+            loaded.add(id);
+            return id instanceof ObjectId ? "found" : null;
+        });
+        ObjectId ownerId = new ObjectId();
+        Assert.assertEquals("found", cache.get("ownerId", ownerId));
+        Assert.assertSame(ownerId, loaded.get(0));
+        Assert.assertNull(cache.get("ownerId", ownerId.toHexString()));
+        Assert.assertEquals(2, loaded.size());
+    }
+
+    @Test
+    public void testMisses() throws Exception {
+        MongoEntityCache<String> cache = newCache(new MongoEntityCache.Config()
+                                                          .expireMissesAfter(50, TimeUnit.MILLISECONDS));
+        Assert.assertNull(cache.get("_id", "none"));
+        Assert.assertNull(cache.get("_id", "none"));
+        Assert.assertEquals(1, loads.get());
+        Thread.sleep(100);
+        Assert.assertNull(cache.get("_id", "none"));
+        Assert.assertEquals(2, loads.get());
+
+        MongoEntityCache<String> uncached = newCache(new MongoEntityCache.Config()
+                                                             .expireMissesAfter(0, TimeUnit.SECONDS));
+        Assert.assertNull(uncached.get("_id", "none"));
+        Assert.assertNull(uncached.get("_id", "none"));
+        Assert.assertEquals(4, loads.get());
+        Assert.assertEquals(0, uncached.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        MongoEntityCache<String> cache = newCache(new MongoEntityCache.Config());
+        cache.get("_id", "a");
+        cache.get("_id", "b");
+        cache.get("name", "a");
+        cache.invalidate("a");
+        // the other id keys are outdated, not dropped
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("_id=b#2", cache.get("_id", "b"));
+        Assert.assertEquals("name=a#4", cache.get("name", "a"));
+        Assert.assertEquals("name=a#4", cache.get("name", "a"));
+        Assert.assertEquals(4, loads.get());
+
+        cache.invalidate(new BasicDBObject("id", "b").append("age", 1));
+        Assert.assertEquals(1, cache.size());
+        cache.invalidateAll();
+        Assert.assertEquals(0, cache.size());
+
+        cache.get("_id", "a");
+        cache.get("_id", "b");
+        cache.invalidate(new BasicDBObject("_id", new BasicDBObject("$in", new String[]{"a"})));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCopies() {
+        MongoEntityCache<List<String>> cache = new MongoEntityCache<>(new MongoEntityCache.Config(), (idKey, id) -> {
+            List<String> entity = new ArrayList<>();
+            entity.add("loaded");
+            return entity;
+        }, ArrayList::new, cached -> new ArrayList<>((List<String>) cached));
+        List<String> first = cache.get("_id", "a");
+        first.clear();
+        List<String> second = cache.get("_id", "a");
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(1, second.size());
+        Assert.assertEquals(1, cache.stats().hitCount());
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        MongoEntityCache<String> cache = new MongoEntityCache<>(new MongoEntityCache.Config(), (idKey, id) -> {
+            loads.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "v";
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> cache.get("_id", "a")));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> future : futures) {
+                Assert.assertEquals("v", future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testWriteDuringLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        MongoEntityCache<String> cache = new MongoEntityCache<>(new MongoEntityCache.Config(), (idKey, id) -> {
+            if (loads.incrementAndGet() == 1) {
+                loading.countDown();
+                try {
+                    written.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "old";
+            }
+            return "new";
+        });
+        AtomicReference<String> read = new AtomicReference<>();
+        Thread reader = new Thread(() -> read.set(cache.get("_id", "a")));
+        reader.start();
+        loading.await();
+        cache.invalidate("a");
+        written.countDown();
+        reader.join();
+        Assert.assertEquals("old", read.get());
+        Assert.assertEquals("new", cache.get("_id", "a"));
+    }
+
+    @Test
+    public void testNormalizeId() {
+        ObjectId id = new ObjectId();
+        Assert.assertEquals(id.toHexString(), MongoEntityCache.normalizeId(id));
+        Assert.assertEquals(1L, MongoEntityCache.normalizeId(1));
+        Assert.assertEquals(1L, MongoEntityCache.normalizeId((short) 1));
+        Assert.assertEquals(1L, MongoEntityCache.normalizeId(1L));
+        Assert.assertEquals("1", MongoEntityCache.normalizeId("1"));
+
+        MongoEntityCache<String> cache = newCache(new MongoEntityCache.Config());
+        cache.get("_id", 1);
+        cache.get("_id", 1L);
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testIdOf() {
+        Assert.assertEquals("a", MongoEntityCache.idOf(new BasicDBObject("_id", "a")));
+        Assert.assertEquals("a", MongoEntityCache.idOf(new BasicDBObject("id", "a").append("name", "x")));
+        Assert.assertNull(MongoEntityCache.idOf(new BasicDBObject("name", "x")));
+        Assert.assertNull(MongoEntityCache.idOf(new BasicDBObject("_id", new BasicDBObject("$gt", "a"))));
+    }
+}
@@ -0,0 +1,100 @@
+package com.tsingye.mongo;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * the coalescer alone, loading from a function instead of mongo
+ */
+public class MongoIdCoalescerTest {
+
+    private static final Executor EXECUTOR = Executors.newCachedThreadPool();
+
+    private final List<List<Object>> batches = new CopyOnWriteArrayList<>();
+
+    private MongoIdCoalescer<String> newCoalescer(MongoIdCoalescer.Config config) {
+        return new MongoIdCoalescer<>(config, (Collection<Object> ids) -> {
+            batches.add(new ArrayList<>(ids));
+            return ids.stream()
+                      .filter(id -> !"none".equals(id))
+                      .collect(Collectors.toMap(id -> id, id -> "v" + id));
+        }, EXECUTOR);
+    }
+
+    @Test
+    public void testBatching() throws Exception {
+        MongoIdCoalescer<String> coalescer = newCoalescer(new MongoIdCoalescer.Config()
+                                                                  .window(100, TimeUnit.MILLISECONDS));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String id = i == 7 ? "none" : String.valueOf(i % 4);
+                futures.add(executor.submit(() -> coalescer.get(id)));
+            }
+            for (int i = 0; i < 7; i++) {
+                Assert.assertEquals("v" + i % 4, futures.get(i).get());
+            }
+            Assert.assertNull(futures.get(7).get());
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(1, batches.size());
+        Assert.assertEquals(5, batches.get(0).size());
+    }
+
+    @Test
+    public void testMaxBatchSize() {
+        MongoIdCoalescer<String> coalescer = newCoalescer(new MongoIdCoalescer.Config()
+                                                                  .window(1, TimeUnit.HOURS)
+                                                                  .maxBatchSize(1));
+        Assert.assertEquals("va", coalescer.get("a"));
+        Assert.assertEquals("vb", coalescer.get("b"));
+        Assert.assertEquals(2, batches.size());
+    }
+
+    @Test
+    public void testError() {
+        MongoIdCoalescer<String> coalescer = new MongoIdCoalescer<>(new MongoIdCoalescer.Config(), ids -> {
+            throw new IllegalStateException("down");
+        }, EXECUTOR);
+        try {
+            coalescer.get("a");
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("down", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSequential() {
+        MongoIdCoalescer<String> coalescer = newCoalescer(new MongoIdCoalescer.Config().window(0, TimeUnit.SECONDS));
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("v" + i, coalescer.get(String.valueOf(i)));
+        }
+        Assert.assertEquals(3, batches.size());
+    }
+
+    @Test
+    public void testExecutor() {
+        AtomicInteger executed = new AtomicInteger();
+        MongoIdCoalescer<String> coalescer = newCoalescer(new MongoIdCoalescer.Config().executor(task -> {
+            executed.incrementAndGet();
+            EXECUTOR.execute(task);
+        }));
+        Assert.assertEquals("va", coalescer.get("a"));
+        Assert.assertEquals(1, executed.get());
+    }
+}
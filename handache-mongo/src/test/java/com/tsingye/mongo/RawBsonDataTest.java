@@ -0,0 +1,81 @@
+package com.tsingye.mongo;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.DBRef;
+import com.mongodb.util.JSON;
+import org.bson.BasicBSONEncoder;
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * test cases for {@link RawBsonData}, no mongod needed
+ */
+public class RawBsonDataTest {
+
+    @Test
+    public void testView() {
+        BasicDBList list = new BasicDBList();
+        list.add(1);
+        list.add("two");
+        DBObject document = new BasicDBObject("_id", new ObjectId("58a0f1b2c3d4e5f601234567"))
+                .append("name", "中文")
+                .append("age", 17)
+                .append("count", 12345678901L)
+                .append("ratio", 0.25D)
+                .append("at", new Date(1_490_000_000_000L))
+                .append("list", list)
+                .append("nested", new BasicDBObject("a", new BasicDBObject("b", true)))
+                .append("ref", new DBRef("other", 7));
+        byte[] bytes = new BasicBSONEncoder().encode(document);
+        DBObject decoded = RawBsonData.DECODER_FACTORY.create().decode(bytes, (DBCollection) null);
+        Assert.assertTrue(decoded instanceof RawBsonData);
+        RawBsonData data = (RawBsonData) decoded;
+
+        Assert.assertEquals(document.keySet(), data.keySet());
+        Assert.assertEquals(9, data.size());
+        Assert.assertEquals("中文", data.getString("name", null));
+        Assert.assertEquals(17, data.getInt("age", 0));
+        Assert.assertEquals(12345678901L, data.getLong("count", 0L));
+        Assert.assertEquals(0.25D, data.getDouble("ratio", 0D), 0D);
+        Assert.assertEquals(-1, data.getInt("none", -1));
+        Assert.assertEquals(17L, data.getLong("age", 0L));
+        Assert.assertEquals(17D, data.getDouble("age", 0D), 0D);
+        try {
+            data.getInt("count", 0);
+            Assert.fail("an int64 should not be narrowed");
+        } catch (ClassCastException e) {
+            // as JsonData
+        }
+        Assert.assertEquals(document.get("at"), data.get("at"));
+        Assert.assertEquals(list, data.get("list"));
+        Assert.assertTrue(data.get("nested") instanceof RawBsonData);
+        Assert.assertEquals(true, ((RawBsonData) ((RawBsonData) data.get("nested")).get("a")).get("b"));
+        Assert.assertEquals(new DBRef("other", 7), data.get("ref"));
+
+        Map<String, Object> copy = new LinkedHashMap<>(data);
+        Assert.assertEquals(copy, data);
+        Assert.assertEquals(data, copy);
+        Assert.assertEquals(copy.hashCode(), data.hashCode());
+
+        ByteBuffer buffer = data.toByteBuffer();
+        Assert.assertTrue(buffer.isReadOnly());
+        Assert.assertEquals(ByteBuffer.wrap(bytes), buffer);
+        Assert.assertEquals(JSON.parse(JSON.serialize(document)), JSON.parse(data.toJson()));
+
+        try {
+            data.put("age", 18);
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // read only
+        }
+    }
+}